@@ -0,0 +1,160 @@
+package org.apache.lucene.analysis.lemmatizer.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.WhitespaceTokenizer;
+import org.apache.lucene.analysis.lemmatizer.DictionaryLemmatizerFilter;
+import org.apache.lucene.analysis.lemmatizer.DictionaryLemmatizerFilterFactory;
+import org.apache.lucene.analysis.lemmatizer.benchmarks.SyntheticDictionary.Distribution;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of a {@link DictionaryLemmatizerFilter} behind a whitespace
+ * tokenizer, in tokens per second, with and without a fallback stemmer.
+ * <p>
+ * Each operation analyzes a document of {@value #TOKENS} tokens, a given ratio
+ * of them found in the dictionary. The factory is shared by all the benchmark
+ * threads, each of them reusing its own token stream, as Solr does.
+ * </p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterBenchmark {
+
+  static final int TOKENS = 1024;
+
+  /** The factory and the documents, shared by the threads. */
+  @State(Scope.Benchmark)
+  public static class Analysis {
+
+    @Param({ "100000" })
+    public int dictionarySize;
+
+    @Param({ "heap", "directMemory" })
+    public String backend;
+
+    @Param({ "none", "EnglishMinimalStemmer", "SnowballStemmer|language=English" })
+    public String fallBackStemmer;
+
+    @Param({ "0", "10000" })
+    public int stemmerCacheSize;
+
+    @Param({ "0.9", "0.5" })
+    public double hitRatio;
+
+    @Param({ "ZIPF" })
+    public Distribution distribution;
+
+    private SyntheticDictionary synthetic;
+    private DictionaryLemmatizerFilterFactory factory;
+    private String[] documents;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+      synthetic = SyntheticDictionary.create(dictionarySize, 42);
+      final Map<String, String> args = new HashMap<String, String>();
+      if (!"heap".equals(backend)) {
+        args.put(backend, "true");
+      }
+      if (!"none".equals(fallBackStemmer)) {
+        args.put("fallBackStemmer", fallBackStemmer);
+        if (stemmerCacheSize > 0) {
+          args.put("stemmerCacheSize", Integer.toString(stemmerCacheSize));
+        }
+      }
+      factory = synthetic.newFactory(args);
+      documents = new String[16];
+      for (int i = 0; i < documents.length; i++) {
+        documents[i] = String.join(" ", synthetic.tokens(TOKENS, hitRatio, distribution, i));
+      }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+      factory.release();
+      synthetic.delete();
+    }
+  }
+
+  /** The token stream of a thread, reused for every document. */
+  @State(Scope.Thread)
+  public static class Stream {
+    private Tokenizer tokenizer;
+    private TokenStream stream;
+    private String[] documents;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp(final Analysis analysis) {
+      tokenizer = new WhitespaceTokenizer();
+      stream = analysis.factory.create(tokenizer);
+      documents = analysis.documents;
+    }
+
+    int analyze() throws IOException {
+      tokenizer.setReader(new StringReader(documents[next++ & (documents.length - 1)]));
+      stream.reset();
+      int count = 0;
+      while (stream.incrementToken()) {
+        count++;
+      }
+      stream.end();
+      stream.close();
+      return count;
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(TOKENS)
+  public int analyze(final Stream stream) throws IOException {
+    return stream.analyze();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(TOKENS)
+  @Threads(4)
+  public int analyzeConcurrent(final Stream stream) throws IOException {
+    return stream.analyze();
+  }
+
+}
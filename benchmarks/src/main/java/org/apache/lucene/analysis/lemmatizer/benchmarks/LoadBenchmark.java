@@ -0,0 +1,138 @@
+package org.apache.lucene.analysis.lemmatizer.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.analysis.lemmatizer.DictionaryLemmatizerFilterFactory;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time {@link DictionaryLemmatizerFilterFactory#inform} takes to load a
+ * dictionary, and the memory the loaded dictionary retains, on the heap and
+ * off heap, for every dictionary backend.
+ * <p>
+ * Every invocation loads the dictionary again, the factory being released
+ * before the next one so that the shared registry does not hand it back. The
+ * retained memory is the difference of the used memory after a full
+ * collection, before and after the load, reported as secondary results.
+ * </p>
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx4g", "-XX:MaxDirectMemorySize=4g" })
+@State(Scope.Benchmark)
+public class LoadBenchmark {
+
+  @Param({ "100000", "1000000" })
+  public int dictionarySize;
+
+  @Param({ "heap", "fst", "directMemory" })
+  public String backend;
+
+  @Param({ "1", "4" })
+  public int loadThreads;
+
+  private SyntheticDictionary synthetic;
+  private Map<String, String> args;
+  private DictionaryLemmatizerFilterFactory factory;
+  private long heapBefore;
+  private long directBefore;
+
+  /** Memory retained by the dictionary loaded by the last invocation. */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Retained {
+    public long retainedHeapBytes;
+    public long retainedDirectBytes;
+  }
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    synthetic = SyntheticDictionary.create(dictionarySize, 42);
+    args = new HashMap<String, String>();
+    if (!"heap".equals(backend)) {
+      args.put(backend, "true");
+    }
+    args.put("loadThreads", Integer.toString(loadThreads));
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    synthetic.delete();
+  }
+
+  @Setup(Level.Invocation)
+  public void measureBefore() {
+    heapBefore = usedHeap();
+    directBefore = usedDirect();
+  }
+
+  @TearDown(Level.Invocation)
+  public void measureAfter(final Retained retained) {
+    retained.retainedHeapBytes = usedHeap() - heapBefore;
+    retained.retainedDirectBytes = usedDirect() - directBefore;
+    factory.release();
+    factory = null;
+  }
+
+  @Benchmark
+  public DictionaryLemmatizerFilterFactory inform(final Retained retained) throws IOException {
+    factory = synthetic.newFactory(args);
+    return factory;
+  }
+
+  private static long usedHeap() {
+    final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return memory.getHeapMemoryUsage().getUsed();
+  }
+
+  private static long usedDirect() {
+    for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+      if ("direct".equals(pool.getName())) {
+        return pool.getMemoryUsed();
+      }
+    }
+    return 0;
+  }
+
+}
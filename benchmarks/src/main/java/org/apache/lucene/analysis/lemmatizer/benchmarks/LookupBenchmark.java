@@ -0,0 +1,152 @@
+package org.apache.lucene.analysis.lemmatizer.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.analysis.lemmatizer.DictionaryLemmatizer;
+import org.apache.lucene.analysis.lemmatizer.DictionaryLemmatizerFilterFactory;
+import org.apache.lucene.analysis.lemmatizer.benchmarks.SyntheticDictionary.Distribution;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of a single {@link DictionaryLemmatizer} lookup, for words found in the
+ * dictionary and for missing words, on every dictionary backend.
+ * <p>
+ * The dictionary is shared by all the benchmark threads, each of them looking
+ * up with its own lemmatizer, as the filters do.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LookupBenchmark {
+
+  /** The dictionary, shared by the threads. */
+  @State(Scope.Benchmark)
+  public static class Dictionary {
+
+    @Param({ "10000", "1000000" })
+    public int dictionarySize;
+
+    @Param({ "heap", "fst", "directMemory" })
+    public String backend;
+
+    @Param({ "UNIFORM", "ZIPF" })
+    public Distribution distribution;
+
+    private SyntheticDictionary synthetic;
+    private DictionaryLemmatizerFilterFactory factory;
+    private String[] hits;
+    private String[] misses;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+      synthetic = SyntheticDictionary.create(dictionarySize, 42);
+      factory = synthetic.newFactory("heap".equals(backend) ? Collections.<String, String> emptyMap()
+          : Collections.singletonMap(backend, "true"));
+      hits = synthetic.tokens(1 << 16, 1, distribution, 1);
+      misses = synthetic.tokens(1 << 16, 0, distribution, 2);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+      factory.release();
+      synthetic.delete();
+    }
+  }
+
+  /** The lemmatizer of a thread and its position in the tokens. */
+  @State(Scope.Thread)
+  public static class Lookup {
+    private DictionaryLemmatizer lemmatizer;
+    private char[][] hits;
+    private char[][] misses;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp(final Dictionary dictionary) {
+      lemmatizer = new DictionaryLemmatizer(dictionary.factory.getDictionary());
+      hits = toChars(dictionary.hits);
+      misses = toChars(dictionary.misses);
+    }
+
+    int lookup(final char[][] words) {
+      final char[] word = words[next++ & (words.length - 1)];
+      return lemmatizer.lookup(word, 0, word.length);
+    }
+
+    private static char[][] toChars(final String[] tokens) {
+      final char[][] chars = new char[tokens.length][];
+      for (int i = 0; i < tokens.length; i++) {
+        chars[i] = tokens[i].toCharArray();
+      }
+      return chars;
+    }
+  }
+
+  @Benchmark
+  public int hit(final Lookup lookup) {
+    return lookup.lookup(lookup.hits);
+  }
+
+  @Benchmark
+  public int miss(final Lookup lookup) {
+    return lookup.lookup(lookup.misses);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public int hitConcurrent(final Lookup lookup) {
+    return lookup.lookup(lookup.hits);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public int missConcurrent(final Lookup lookup) {
+    return lookup.lookup(lookup.misses);
+  }
+
+  /**
+   * Looks up and copies the lemmas of a word, as
+   * {@link DictionaryLemmatizer#lemmatize(char[], int, int)} does.
+   */
+  @Benchmark
+  public String[] lemmatize(final Lookup lookup) {
+    final char[] word = lookup.hits[lookup.next++ & (lookup.hits.length - 1)];
+    return lookup.lemmatizer.lemmatize(word, 0, word.length);
+  }
+
+}
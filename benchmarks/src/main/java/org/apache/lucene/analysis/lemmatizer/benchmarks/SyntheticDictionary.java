@@ -0,0 +1,193 @@
+package org.apache.lucene.analysis.lemmatizer.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.lucene.analysis.lemmatizer.DictionaryLemmatizerFilterFactory;
+import org.apache.lucene.analysis.util.ClasspathResourceLoader;
+import org.apache.lucene.analysis.util.FilesystemResourceLoader;
+import org.apache.lucene.util.IOUtils;
+
+/**
+ * Generated dictionary of a given number of words, written in the tab
+ * separated format to a temporary directory, and the tokens to look up in it.
+ * <p>
+ * Words are made of the letters a to y and grouped by three under a lemma, the
+ * first of them. Found words are drawn from the two others, as words equal to
+ * their lemma are not stored. Missing words contain a z, so they are never
+ * found. The same size and seed
+ * always give the same dictionary and tokens.
+ * </p>
+ */
+final class SyntheticDictionary {
+
+  /** File name of the dictionary in its directory. */
+  static final String FILE_NAME = "dictionary.txt";
+
+  private static final int WORDS_PER_LEMMA = 3;
+  private static final String[] WORD_CLASSES = { "subst", "verb", "adj" };
+
+  private final Path directory;
+  private final String[] words;
+
+  /*
+   * The words are the ones found in the dictionary.
+   */
+  private SyntheticDictionary(final Path directory, final String[] words) {
+    this.directory = directory;
+    this.words = words;
+  }
+
+  /**
+   * Writes a dictionary of the given number of words to a new temporary
+   * directory.
+   */
+  static SyntheticDictionary create(final int size, final long seed) throws IOException {
+    final Random random = new Random(seed);
+    final Map<String, Boolean> unique = new HashMap<String, Boolean>(size * 2);
+    final String[] words = new String[size];
+    for (int i = 0; i < size;) {
+      final String word = word(random, 'a', 'y');
+      if (unique.put(word, Boolean.TRUE) == null) {
+        words[i++] = word;
+      }
+    }
+    final Path directory = Files.createTempDirectory("lemmatizer-bench");
+    try (BufferedWriter writer = Files.newBufferedWriter(directory.resolve(FILE_NAME), StandardCharsets.UTF_8)) {
+      for (int i = 0; i < size; i++) {
+        final String lemma = words[i - i % WORDS_PER_LEMMA];
+        writer.write(lemma);
+        writer.write('\t');
+        writer.write(words[i]);
+        writer.write('\t');
+        writer.write(WORD_CLASSES[i % WORD_CLASSES.length]);
+        writer.write('\n');
+      }
+    }
+    final String[] inflected = new String[size - (size + WORDS_PER_LEMMA - 1) / WORDS_PER_LEMMA];
+    for (int i = 0, j = 0; i < size; i++) {
+      if (i % WORDS_PER_LEMMA != 0) {
+        inflected[j++] = words[i];
+      }
+    }
+    return new SyntheticDictionary(directory, inflected);
+  }
+
+  /**
+   * Returns the arguments of a factory reading this dictionary.
+   */
+  Map<String, String> factoryArgs() {
+    final Map<String, String> args = new HashMap<String, String>();
+    args.put("dictionaries", FILE_NAME);
+    args.put("lemmaPos", "0");
+    args.put("wordPos", "1");
+    args.put("minLength", "1");
+    return args;
+  }
+
+  /**
+   * Creates and informs a factory reading this dictionary, with extra
+   * arguments.
+   */
+  DictionaryLemmatizerFilterFactory newFactory(final Map<String, String> extraArgs) throws IOException {
+    final Map<String, String> args = factoryArgs();
+    args.putAll(extraArgs);
+    final DictionaryLemmatizerFilterFactory factory = new DictionaryLemmatizerFilterFactory(args);
+    factory.inform(new FilesystemResourceLoader(directory, new ClasspathResourceLoader(getClass())));
+    return factory;
+  }
+
+  /**
+   * Returns tokens drawn from the dictionary words, a given ratio of them
+   * replaced by missing words.
+   *
+   * @param count number of tokens
+   * @param hitRatio ratio of the tokens found in the dictionary
+   * @param distribution how the words are drawn
+   * @param seed seed of the drawing
+   */
+  String[] tokens(final int count, final double hitRatio, final Distribution distribution, final long seed) {
+    final Random random = new Random(seed);
+    final double[] cumulative = distribution == Distribution.ZIPF ? zipf(words.length) : null;
+    final String[] tokens = new String[count];
+    for (int i = 0; i < count; i++) {
+      if (random.nextDouble() < hitRatio) {
+        final int index;
+        if (cumulative == null) {
+          index = random.nextInt(words.length);
+        } else {
+          final int found = Arrays.binarySearch(cumulative, random.nextDouble());
+          index = Math.min(found < 0 ? -found - 1 : found, words.length - 1);
+        }
+        tokens[i] = words[index];
+      } else {
+        tokens[i] = word(random, 'a', 'z') + "z";
+      }
+    }
+    return tokens;
+  }
+
+  /**
+   * Deletes the dictionary and its directory.
+   */
+  void delete() throws IOException {
+    IOUtils.rm(directory);
+  }
+
+  /** How tokens are drawn from the dictionary words. */
+  enum Distribution {
+    /** Every word is equally likely. */
+    UNIFORM,
+    /** The n-th word is n times less likely than the first, like in text. */
+    ZIPF
+  }
+
+  /*
+   * Cumulative probabilities of the words under a Zipf law of exponent 1.
+   */
+  private static double[] zipf(final int size) {
+    final double[] cumulative = new double[size];
+    double sum = 0;
+    for (int i = 0; i < size; i++) {
+      sum += 1.0 / (i + 1);
+      cumulative[i] = sum;
+    }
+    for (int i = 0; i < size; i++) {
+      cumulative[i] /= sum;
+    }
+    return cumulative;
+  }
+
+  private static String word(final Random random, final char first, final char last) {
+    final char[] chars = new char[4 + random.nextInt(8)];
+    for (int i = 0; i < chars.length; i++) {
+      chars[i] = (char) (first + random.nextInt(last - first + 1));
+    }
+    return new String(chars);
+  }
+
+}
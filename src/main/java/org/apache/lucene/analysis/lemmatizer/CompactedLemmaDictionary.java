@@ -0,0 +1,110 @@
+package org.apache.lucene.analysis.lemmatizer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Map;
+
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+
+/**
+ * Dictionary built with the entries of an overlay, remembering the lemmas the
+ * overlay replaced so that removing an entry from the overlay later on does
+ * not require a rebuild. Lookups go straight to the built dictionary.
+ */
+final class CompactedLemmaDictionary extends LemmaDictionary {
+
+  private final LemmaDictionary dictionary;
+  private final Map<String, String[]> compacted;
+  private final Map<String, String[]> overridden;
+
+  /**
+   * @param dictionary the dictionary built with the overlay
+   * @param compacted the overlay entries built in
+   * @param overridden the lemmas the sources give to the overlay words
+   */
+  CompactedLemmaDictionary(final LemmaDictionary dictionary, final Map<String, String[]> compacted,
+      final Map<String, String[]> overridden) {
+    this.dictionary = dictionary;
+    this.compacted = compacted;
+    this.overridden = overridden;
+    setFolding(dictionary.getFolding());
+    setWordClasses(dictionary.getWordClasses());
+    setWordFilter(dictionary.getWordFilter());
+  }
+
+  @Override
+  public Reader getReader() {
+    return dictionary.getReader();
+  }
+
+  @Override
+  public void visitWords(final WordVisitor visitor) {
+    dictionary.visitWords(visitor);
+  }
+
+  @Override
+  public int lemmaCount() {
+    return dictionary.lemmaCount();
+  }
+
+  @Override
+  public String lemma(final int id) {
+    return dictionary.lemma(id);
+  }
+
+  @Override
+  public int lemmaTag(final int id) {
+    return dictionary.lemmaTag(id);
+  }
+
+  @Override
+  public void copyLemma(final int id, final CharTermAttribute termAtt) {
+    dictionary.copyLemma(id, termAtt);
+  }
+
+  @Override
+  public void copyBareLemma(final int id, final CharTermAttribute termAtt) {
+    dictionary.copyBareLemma(id, termAtt);
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    // the remembered entries are few, as managed entries are
+    return dictionary.ramBytesUsed();
+  }
+
+  @Override
+  public long offHeapBytesUsed() {
+    return dictionary.offHeapBytesUsed();
+  }
+
+  /** Returns the overlay entries built in. */
+  Map<String, String[]> compacted() {
+    return compacted;
+  }
+
+  /**
+   * Returns the lemmas the sources give to a word of the overlay, an empty
+   * array if none.
+   */
+  String[] overridden(final String word) {
+    final String[] lemmas = overridden.get(getFolding().isNone() ? word : getFolding().newFolder().fold(word));
+    return lemmas != null ? lemmas : new String[0];
+  }
+
+}
@@ -0,0 +1,340 @@
+package org.apache.lucene.analysis.lemmatizer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import org.apache.lucene.analysis.tokenattributes.CharTermAttributeImpl;
+import org.apache.lucene.analysis.util.CharArrayMap;
+import org.apache.lucene.util.ArrayUtil;
+
+/**
+ * Splits words missing from a {@link LemmaDictionary} into parts that are
+ * words or lemmas of the dictionary, such as German and Norwegian compounds,
+ * and gives the lemmas of the parts.
+ * <p>
+ * Words are split from the left, longest known part first, backtracking when
+ * the rest of the word can't be split. Positions from which the rest can't be
+ * split are remembered during a split, so that a word costs at most a lookup
+ * per pair of positions. A linking element, such as the German
+ * <code>s</code> of <code>Arbeitsmarkt</code>, may follow any part but the
+ * last one. Parts are looked up among the words of the dictionary, then among
+ * its lemmas, without their tags, since words having themselves as only lemma
+ * are not stored. The index of the lemmas is built on first use.
+ * </p>
+ * <p>
+ * A decompounder is shared by the filters of a factory. The decompositions,
+ * and the words that are no compound, are cached, the cache being dropped
+ * when the filters move to another dictionary. The index of the lemmas is kept
+ * as long as the base of an {@link OverlayLemmaDictionary} stays the same, so
+ * that managed updates only index the lemmas of the overlay. Each filter
+ * splits words through its own {@link Splitter}.
+ * </p>
+ */
+public final class Decompounder {
+
+  private static final int[] NO_COMPOUND = new int[0];
+
+  private final int minSubwordLength;
+  private final char[][] links;
+  private final int cacheSize;
+  private volatile Index index;
+  private volatile Decompositions decompositions;
+
+  /**
+   * Creates a new Decompounder
+   *
+   * @param minSubwordLength minimum length of a part
+   * @param links linking elements allowed between two parts, may be empty
+   * @param cacheSize number of decompositions cached, 0 disables the cache
+   */
+  public Decompounder(final int minSubwordLength, final String[] links, final int cacheSize) {
+    if (minSubwordLength < 1) {
+      throw new IllegalArgumentException("Minimum subword length must be positive: " + minSubwordLength);
+    }
+    if (cacheSize < 0) {
+      throw new IllegalArgumentException("Cache size must not be negative: " + cacheSize);
+    }
+    this.minSubwordLength = minSubwordLength;
+    this.links = new char[links.length][];
+    for (int i = 0; i < links.length; i++) {
+      this.links[i] = links[i].toCharArray();
+    }
+    this.cacheSize = cacheSize;
+  }
+
+  /**
+   * Returns a new splitter of the words of a dictionary. Splitters must not be
+   * shared between threads.
+   */
+  public Splitter newSplitter(final LemmaDictionary dictionary) {
+    return new Splitter(decompositions(dictionary));
+  }
+
+  /** Returns the cache of the decompositions of the current dictionary, or null. */
+  public TermCache<int[]> getCache() {
+    final Decompositions current = decompositions;
+    return current == null ? null : current.cache;
+  }
+
+  private Decompositions decompositions(final LemmaDictionary dictionary) {
+    Decompositions current = decompositions;
+    if (current == null || current.dictionary != dictionary) {
+      synchronized (this) {
+        current = decompositions;
+        if (current == null || current.dictionary != dictionary) {
+          final LemmaDictionary base = dictionary instanceof OverlayLemmaDictionary
+              ? ((OverlayLemmaDictionary) dictionary).getBase() : dictionary;
+          if (index == null || index.dictionary != base) {
+            index = new Index(base);
+          }
+          current = new Decompositions(dictionary, index, cacheSize);
+          decompositions = current;
+        }
+      }
+    }
+    return current;
+  }
+
+  /*
+   * Maps the lemmas of a dictionary with ids in the given range, without their
+   * tags and folded as its words are, to their ids. The first id of equal
+   * lemmas is kept.
+   */
+  private static CharArrayMap<int[]> indexLemmas(final LemmaDictionary dictionary, final int from, final int to) {
+    final CharArrayMap<int[]> lemmas = new CharArrayMap<int[]>(to - from, false);
+    final CharTermAttributeImpl scratch = new CharTermAttributeImpl();
+    final WordFolding.Folder folder = dictionary.getFolding().isNone() ? null : dictionary.getFolding()
+        .newFolder();
+    for (int id = from; id < to; id++) {
+      // the bare form, as the filters output it
+      dictionary.copyBareLemma(id, scratch);
+      final char[] lemma;
+      if (folder != null) {
+        lemma = Arrays.copyOf(folder.buffer(), folder.fold(scratch.buffer(), 0, scratch.length()));
+      } else {
+        lemma = Arrays.copyOf(scratch.buffer(), scratch.length());
+      }
+      if (!lemmas.containsKey(lemma)) {
+        lemmas.put(lemma, new int[] { id });
+      }
+    }
+    return lemmas;
+  }
+
+  /*
+   * The lemmas of a dictionary, or of the base of an overlay.
+   */
+  private static final class Index {
+    private final LemmaDictionary dictionary;
+    private final CharArrayMap<int[]> lemmas;
+
+    Index(final LemmaDictionary dictionary) {
+      this.dictionary = dictionary;
+      lemmas = indexLemmas(dictionary, 0, dictionary.lemmaCount());
+    }
+  }
+
+  /*
+   * The decompositions found in a dictionary, with the lemmas of its overlay,
+   * if any, those of its base being indexed apart.
+   */
+  private static final class Decompositions {
+    private final LemmaDictionary dictionary;
+    private final Index index;
+    private final CharArrayMap<int[]> overlayLemmas;
+    private final TermCache<int[]> cache;
+
+    Decompositions(final LemmaDictionary dictionary, final Index index, final int cacheSize) {
+      this.dictionary = dictionary;
+      this.index = index;
+      final int baseCount = index.dictionary.lemmaCount();
+      overlayLemmas = dictionary == index.dictionary ? null : indexLemmas(dictionary, baseCount, dictionary
+          .lemmaCount());
+      cache = cacheSize > 0 ? new TermCache<int[]>(cacheSize) : null;
+    }
+
+    /*
+     * Returns the ids of a lemma, or null if it is not a lemma of the
+     * dictionary.
+     */
+    int[] lemma(final char[] word, final int offset, final int length) {
+      final int[] ids = index.lemmas.get(word, offset, length);
+      return ids != null || overlayLemmas == null ? ids : overlayLemmas.get(word, offset, length);
+    }
+  }
+
+  /**
+   * Splits words with a {@link LemmaDictionary.Reader} and scratch arrays of
+   * its own.
+   */
+  public final class Splitter {
+    private final Decompositions decompositions;
+    private final LemmaDictionary.Reader reader;
+    private final WordFolding.Folder folder;
+    private final WordFilter wordFilter;
+    // positions from which the rest of the current word can't be split
+    private final BitSet failed = new BitSet();
+    private char[] word = new char[64];
+    private int length;
+    // bounds of the parts of the current split
+    private int parts;
+    private int[] starts = new int[8];
+    private int[] ends = new int[8];
+    private int[] ids = NO_COMPOUND;
+
+    private Splitter(final Decompositions decompositions) {
+      this.decompositions = decompositions;
+      final LemmaDictionary dictionary = decompositions.dictionary;
+      reader = dictionary.getReader();
+      wordFilter = dictionary.getWordFilter();
+      folder = dictionary.getFolding().isNone() ? null : dictionary.getFolding().newFolder();
+    }
+
+    /**
+     * Splits the word held in a term buffer. The lemmas of the parts are then
+     * available through {@link #lemmaIds()} until the next split.
+     *
+     * @return the number of lemmas of the parts, 0 if the word is no compound
+     */
+    public int split(final char[] buffer, final int offset, final int length) {
+      if (folder != null) {
+        this.length = folder.fold(buffer, offset, length);
+        word = ArrayUtil.grow(word, this.length);
+        System.arraycopy(folder.buffer(), 0, word, 0, this.length);
+      } else {
+        this.length = length;
+        word = ArrayUtil.grow(word, length);
+        System.arraycopy(buffer, offset, word, 0, length);
+      }
+      if (this.length < 2 * minSubwordLength) {
+        return 0;
+      }
+      if (decompositions.cache != null) {
+        final int[] cached = decompositions.cache.get(word, 0, this.length);
+        if (cached != null) {
+          ids = cached;
+          return cached.length;
+        }
+      }
+      failed.clear();
+      final int[] found = split(0, 0) ? collect() : NO_COMPOUND;
+      if (decompositions.cache != null) {
+        decompositions.cache.put(Arrays.copyOf(word, this.length), found);
+      }
+      ids = found;
+      return found.length;
+    }
+
+    /**
+     * Returns the ids of the lemmas of the parts found by the last
+     * {@link #split(char[], int, int)}, in the order of the parts. The array
+     * may be shared and must not be modified.
+     */
+    public int[] lemmaIds() {
+      return ids;
+    }
+
+    /*
+     * Splits the word from the given position, the first parts being known.
+     */
+    private boolean split(final int start, final int part) {
+      if (start == length) {
+        parts = part;
+        return part > 1;
+      }
+      if (failed.get(start)) {
+        return false;
+      }
+      if (starts.length == part) {
+        starts = ArrayUtil.grow(starts, part + 1);
+        ends = ArrayUtil.grow(ends, part + 1);
+      }
+      for (int end = part == 0 ? length - minSubwordLength : length; end - start >= minSubwordLength; end--) {
+        if (end < length && length - end < minSubwordLength) {
+          continue;
+        }
+        if (!known(start, end)) {
+          continue;
+        }
+        starts[part] = start;
+        ends[part] = end;
+        if (split(end, part + 1)) {
+          return true;
+        }
+        for (char[] link : links) {
+          if (length - end - link.length >= minSubwordLength && linksAt(link, end) && split(end + link.length,
+              part + 1)) {
+            return true;
+          }
+        }
+      }
+      // the parts before do not matter, the rest fails from any of them
+      failed.set(start);
+      return false;
+    }
+
+    private boolean known(final int start, final int end) {
+      final int partLength = end - start;
+      return (wordFilter.mayContain(word, start, partLength) && reader.lookup(word, start, partLength) > 0)
+          || decompositions.lemma(word, start, partLength) != null;
+    }
+
+    private boolean linksAt(final char[] link, final int position) {
+      for (int i = 0; i < link.length; i++) {
+        if (word[position + i] != link[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /*
+     * Collects the distinct lemmas of the parts of the last split.
+     */
+    private int[] collect() {
+      int[] collected = new int[8];
+      int count = 0;
+      for (int part = 0; part < parts; part++) {
+        final int start = starts[part];
+        final int end = ends[part];
+        final int found = reader.lookup(word, start, end - start);
+        final int[] partIds = found > 0 ? reader.lemmaIds() : decompositions.lemma(word, start, end - start);
+        final int partCount = found > 0 ? found : 1;
+        for (int i = 0; i < partCount; i++) {
+          if (!contains(collected, count, partIds[i])) {
+            collected = ArrayUtil.grow(collected, count + 1);
+            collected[count++] = partIds[i];
+          }
+        }
+      }
+      return Arrays.copyOf(collected, count);
+    }
+
+    private boolean contains(final int[] array, final int count, final int value) {
+      for (int i = 0; i < count; i++) {
+        if (array[i] == value) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+}
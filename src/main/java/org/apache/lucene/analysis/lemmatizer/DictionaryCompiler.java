@@ -0,0 +1,148 @@
+package org.apache.lucene.analysis.lemmatizer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.util.IOUtils;
+
+/**
+ * Command line tool compiling tab separated dictionaries into the binary
+ * format read by {@link FlatLemmaDictionary}, so that cores load them without
+ * parsing. Arguments are the parameters of
+ * {@link DictionaryLemmatizerFilterFactory}, given as <code>name=value</code>
+ * pairs, plus the <code>output</code> file:
+ * 
+ * <pre>
+ * java -cp solr-lemmatizer.jar:... org.apache.lucene.analysis.lemmatizer.DictionaryCompiler \
+ *     dictionaries=dic1.txt.gz,dic2.txt lemmaPos=0 wordPos=1 output=dictionary.lemdict
+ * </pre>
+ * 
+ * The compiled file is then referenced alone by the <code>dictionaries</code>
+ * parameter of the factory. With <code>shards=&lt;n&gt;</code>, the output is the
+ * manifest of a {@link ShardedLemmaDictionary}, its shards being written next
+ * to it.
+ */
+public class DictionaryCompiler {
+
+  private static final String PARAM_OUTPUT = "output";
+  private static final String PARAM_SHARDS = "shards";
+
+  private DictionaryCompiler() {}
+
+  public static void main(final String[] args) throws IOException {
+    final Map<String, String> params = new HashMap<String, String>();
+    for (String arg : args) {
+      final int eq = arg.indexOf('=');
+      if (eq <= 0) {
+        usage("Invalid argument: " + arg);
+        return;
+      }
+      params.put(arg.substring(0, eq), arg.substring(eq + 1));
+    }
+    final String output = params.remove(PARAM_OUTPUT);
+    final String shards = params.remove(PARAM_SHARDS);
+    final String dictionaries = params.get("dictionaries");
+    if (output == null || dictionaries == null) {
+      usage("Parameters dictionaries and " + PARAM_OUTPUT + " are required");
+      return;
+    }
+    final int shardCount = shards == null ? 0 : parseShardCount(shards);
+    if (shards != null && (shardCount < 1 || !output.endsWith(ShardedLemmaDictionary.EXTENSION))) {
+      usage("Parameter " + PARAM_SHARDS + " requires a positive count and a manifest as " + PARAM_OUTPUT);
+      return;
+    }
+    if (dictionaries.contains(FlatLemmaDictionary.EXTENSION)
+        || dictionaries.contains(ShardedLemmaDictionary.EXTENSION)) {
+      usage("Dictionaries are already compiled: " + dictionaries);
+      return;
+    }
+
+    final long start = System.nanoTime();
+    final DictionaryLemmatizerFilterFactory factory = new DictionaryLemmatizerFilterFactory(params);
+    final LemmaDictionaryBuilder builder = factory.newBuilder();
+    final List<String> files = Arrays.asList(dictionaries.split(","));
+    final List<InputStream> inputStreams = new ArrayList<InputStream>();
+    try {
+      for (String file : files) {
+        inputStreams.add(Files.newInputStream(Paths.get(file)));
+      }
+      builder.add(files, inputStreams, factory.getLoadThreads());
+    } finally {
+      IOUtils.close(inputStreams);
+    }
+    final Map<String, String> metadata = builder.metadata();
+    metadata.put("dictionaries", dictionaries);
+    final Path outputPath = Paths.get(output);
+    final Map<String, ByteBuffer> compiled;
+    if (shards != null) {
+      compiled = builder.buildSharded(outputPath.getFileName().toString(), shardCount, metadata);
+    } else {
+      compiled = Collections.singletonMap(output, builder.buildFlat(metadata));
+    }
+    long length = 0;
+    for (Map.Entry<String, ByteBuffer> file : compiled.entrySet()) {
+      final ByteBuffer buffer = file.getValue();
+      length += buffer.remaining();
+      try (FileChannel channel = FileChannel.open(outputPath.resolveSibling(file.getKey()),
+          StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+        while (buffer.hasRemaining()) {
+          channel.write(buffer);
+        }
+      }
+    }
+    System.out.println("Compiled " + dictionaries + " into " + output + (shards != null ? " and " + shards
+        + " shards" : "") + " (" + length + " bytes) in " + (System.nanoTime() - start) / 1000000 + " ms");
+    for (DictionaryLoadReport.Source source : builder.report().getSources()) {
+      System.out.println("  " + source);
+    }
+  }
+
+  private static int parseShardCount(final String shards) {
+    try {
+      return Integer.parseInt(shards);
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  private static void usage(final String message) {
+    System.err.println(message);
+    System.err.println("Usage: java " + DictionaryCompiler.class.getName()
+        + " dictionaries=<file>[,<file>...] lemmaPos=<n> wordPos=<n> [wordClassPos=<n>]"
+        + " [wordClasses=<class>,...] [reduceTo=<class>,...] [minLength=<n>] [storePosTag=true]"
+        + " [caseInsensitive=true] [foldAccents=true] [bloomFilterBits=<n>]"
+        + " [charset=<charset>] [loadThreads=<n>] " + PARAM_OUTPUT + "=<file>" + FlatLemmaDictionary.EXTENSION
+        + " | " + PARAM_SHARDS + "=<n> " + PARAM_OUTPUT + "=<file>" + ShardedLemmaDictionary.EXTENSION);
+    System.exit(1);
+  }
+
+}
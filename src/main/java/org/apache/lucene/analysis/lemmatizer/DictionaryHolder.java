@@ -0,0 +1,154 @@
+package org.apache.lucene.analysis.lemmatizer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Holds the current dictionary of {@link DictionaryLemmatizerFilter}s, so that
+ * it can be replaced while they are in use. Filters pick the current dictionary
+ * up when they are reset, a token stream never sees two dictionaries.
+ * <p>
+ * A dictionary loaded in the background is published once loaded, until then
+ * the {@link Policy} of the holder tells the filters what to do.
+ * </p>
+ */
+public final class DictionaryHolder {
+
+  /** What the filters do while the dictionary is not loaded. */
+  public enum Policy {
+    /** Wait for the dictionary, and fail once the timeout is over. */
+    BLOCK,
+    /**
+     * Go on without the dictionary, every word being missing from it: words
+     * are stemmed by the fallback stemmer, if any, or left untouched.
+     */
+    FALLBACK,
+    /** Fail right away. */
+    FAIL;
+
+    /**
+     * Returns the policy with the provided name, in any case.
+     * 
+     * @throws IllegalArgumentException if there is no such policy
+     */
+    public static Policy forName(final String name) {
+      return valueOf(name.toUpperCase(Locale.ROOT));
+    }
+  }
+
+  private volatile LemmaDictionary dictionary;
+  private volatile Throwable failure;
+  private final Policy policy;
+  private final long timeoutMillis;
+
+  public DictionaryHolder(final LemmaDictionary dictionary) {
+    this(dictionary, Policy.FAIL, 0);
+  }
+
+  /**
+   * Creates a holder whose dictionary may not be loaded yet.
+   * 
+   * @param dictionary the dictionary, or null until loaded
+   * @param policy what the filters do while the dictionary is not loaded
+   * @param timeoutMillis how long the filters wait for the dictionary with
+   *          {@link Policy#BLOCK}
+   */
+  public DictionaryHolder(final LemmaDictionary dictionary, final Policy policy, final long timeoutMillis) {
+    this.dictionary = dictionary;
+    this.policy = policy;
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  /** Returns the current dictionary, or null if not loaded yet. */
+  public LemmaDictionary get() {
+    return dictionary;
+  }
+
+  /**
+   * Returns the current dictionary for a filter being reset, applying the
+   * policy of the holder if it is not loaded yet.
+   * 
+   * @return the dictionary, or null if the filter is to go on without it
+   * @throws IOException if the filter is to fail
+   */
+  public LemmaDictionary acquire() throws IOException {
+    LemmaDictionary current = dictionary;
+    if (current != null || policy == Policy.FALLBACK) {
+      return current;
+    }
+    if (policy == Policy.BLOCK && failure == null) {
+      final long deadline = System.nanoTime() + timeoutMillis * 1000000;
+      synchronized (this) {
+        long remaining;
+        while ((current = dictionary) == null && failure == null && (remaining = deadline - System.nanoTime()) > 0) {
+          try {
+            wait(remaining / 1000000, (int) (remaining % 1000000));
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the dictionary", e);
+          }
+        }
+      }
+      if (current != null) {
+        return current;
+      }
+    }
+    final Throwable cause = failure;
+    if (cause != null) {
+      throw new IOException("The dictionary failed to load", cause);
+    }
+    throw new IOException(policy == Policy.BLOCK ? "The dictionary is not loaded after " + timeoutMillis + " ms"
+        : "The dictionary is not loaded yet");
+  }
+
+  /**
+   * Returns whether a dictionary is published, the health of a dictionary
+   * loaded in the background.
+   */
+  public boolean isReady() {
+    return dictionary != null;
+  }
+
+  /**
+   * Returns why the dictionary failed to load in the background, or null.
+   */
+  public Throwable getFailure() {
+    return failure;
+  }
+
+  /** Publishes a new dictionary to the filters. */
+  public void set(final LemmaDictionary dictionary) {
+    synchronized (this) {
+      this.dictionary = dictionary;
+      failure = null;
+      notifyAll();
+    }
+  }
+
+  /*
+   * Records why the dictionary failed to load, waking the waiting filters up.
+   * The previous dictionary, if any, is kept.
+   */
+  synchronized void fail(final Throwable failure) {
+    this.failure = failure;
+    notifyAll();
+  }
+
+}
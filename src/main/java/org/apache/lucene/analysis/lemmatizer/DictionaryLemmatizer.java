@@ -19,12 +19,18 @@ package org.apache.lucene.analysis.lemmatizer;
 
 import java.util.Map;
 
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+
 /**
- * Lemmatizer which looks up lemmas from a dictionary
+ * Lemmatizer which looks up lemmas from a dictionary. A lemmatizer holds a
+ * {@link LemmaDictionary.Reader} and must not be shared between threads.
  */
 public class DictionaryLemmatizer {
 
-  private final Map<String, String[]> wordlist;
+  private final LemmaDictionary dictionary;
+  private final LemmaDictionary.Reader reader;
+  private final WordFolding.Folder folder;
+  private final WordFilter wordFilter;
 
   /**
    * Creates a new DictionaryLemmatizer
@@ -32,7 +38,20 @@ public class DictionaryLemmatizer {
    * @param wordlist a Hashmap containing all the words with their lemmas
    */
   public DictionaryLemmatizer(final Map<String, String[]> wordlist) {
-    this.wordlist = wordlist;
+    this(HeapLemmaDictionary.copyOf(wordlist));
+  }
+
+  /**
+   * Creates a new DictionaryLemmatizer
+   * 
+   * @param dictionary the dictionary containing all the words with their lemmas
+   */
+  public DictionaryLemmatizer(final LemmaDictionary dictionary) {
+    this.dictionary = dictionary;
+    this.reader = dictionary.getReader();
+    final WordFolding folding = dictionary.getFolding();
+    this.folder = folding.isNone() ? null : folding.newFolder();
+    this.wordFilter = dictionary.getWordFilter();
   }
 
   /**
@@ -42,7 +61,79 @@ public class DictionaryLemmatizer {
    * @return a list of lemmas for the word
    */
   public String[] lemmatize(final String word) {
-    return wordlist.get(word);
+    return lemmatize(word.toCharArray(), 0, word.length());
+  }
+
+  /**
+   * Find the lemma(s) of the word held in a term buffer.
+   * 
+   * @param buffer buffer holding the word
+   * @param offset offset of the word in the buffer
+   * @param length length of the word
+   * @return a list of lemmas for the word
+   */
+  public String[] lemmatize(final char[] buffer, final int offset, final int length) {
+    final int count = lookup(buffer, offset, length);
+    if (count == 0) {
+      return null;
+    }
+    final String[] lemmas = new String[count];
+    for (int i = 0; i < count; i++) {
+      lemmas[i] = lemma(i);
+    }
+    return lemmas;
+  }
+
+  /**
+   * Looks up the word held in a term buffer without allocating. The lemmas are
+   * then available through {@link #lemma(int)} until the next lookup. The word
+   * is folded as the dictionary words were, into a buffer of the lemmatizer,
+   * and only looked up if the {@link WordFilter} of the dictionary lets it
+   * through.
+   * 
+   * @param buffer buffer holding the word
+   * @param offset offset of the word in the buffer
+   * @param length length of the word
+   * @return the number of lemmas of the word, 0 if the word is unknown
+   */
+  public int lookup(final char[] buffer, final int offset, final int length) {
+    if (folder != null) {
+      final int folded = folder.fold(buffer, offset, length);
+      if (!wordFilter.mayContain(folder.buffer(), 0, folded)) {
+        return 0;
+      }
+      return reader.lookup(folder.buffer(), 0, folded);
+    }
+    if (!wordFilter.mayContain(buffer, offset, length)) {
+      return 0;
+    }
+    return reader.lookup(buffer, offset, length);
+  }
+
+  /**
+   * Returns the lemma at the provided index in the result of the last
+   * {@link #lookup}.
+   */
+  public String lemma(final int index) {
+    return dictionary.lemma(reader.lemmaIds()[index]);
+  }
+
+  /**
+   * Returns the ids of the lemmas found by the last {@link #lookup}, in the
+   * dictionary. Only the first ids, up to the returned count, are meaningful.
+   * The array belongs to the dictionary and must not be modified.
+   */
+  public int[] lemmaIds() {
+    return reader.lemmaIds();
+  }
+
+  /**
+   * Replaces the content of a term attribute with the lemma at the provided
+   * index in the result of the last {@link #lookup}, straight from the lemma
+   * storage of the dictionary.
+   */
+  public void copyLemma(final int index, final CharTermAttribute termAtt) {
+    dictionary.copyLemma(reader.lemmaIds()[index], termAtt);
   }
 
 }
@@ -18,44 +18,22 @@ package org.apache.lucene.analysis.lemmatizer;
  */
 
 import java.io.IOException;
-import java.util.LinkedList;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
 import java.util.Map;
-import java.util.Queue;
+import java.util.Set;
 
 import org.apache.lucene.analysis.TokenFilter;
 import org.apache.lucene.analysis.TokenStream;
-import org.apache.lucene.analysis.ar.ArabicStemmer;
-import org.apache.lucene.analysis.bg.BulgarianStemmer;
-import org.apache.lucene.analysis.ckb.SoraniStemmer;
-import org.apache.lucene.analysis.cz.CzechStemmer;
-import org.apache.lucene.analysis.de.GermanLightStemmer;
-import org.apache.lucene.analysis.de.GermanMinimalStemmer;
-import org.apache.lucene.analysis.el.GreekStemmer;
-import org.apache.lucene.analysis.en.EnglishMinimalStemmer;
-import org.apache.lucene.analysis.es.SpanishLightStemmer;
-import org.apache.lucene.analysis.fi.FinnishLightStemmer;
-import org.apache.lucene.analysis.fr.FrenchLightStemmer;
-import org.apache.lucene.analysis.fr.FrenchMinimalStemmer;
-import org.apache.lucene.analysis.gl.GalicianMinimalStemmer;
-import org.apache.lucene.analysis.gl.GalicianStemmer;
-import org.apache.lucene.analysis.hi.HindiStemmer;
-import org.apache.lucene.analysis.hu.HungarianLightStemmer;
-import org.apache.lucene.analysis.id.IndonesianStemmer;
-import org.apache.lucene.analysis.it.ItalianLightStemmer;
-import org.apache.lucene.analysis.lv.LatvianStemmer;
-import org.apache.lucene.analysis.no.NorwegianLightStemmer;
-import org.apache.lucene.analysis.no.NorwegianMinimalStemmer;
-import org.apache.lucene.analysis.pt.PortugueseLightStemmer;
-import org.apache.lucene.analysis.pt.PortugueseMinimalStemmer;
-import org.apache.lucene.analysis.pt.PortugueseStemmer;
-import org.apache.lucene.analysis.ru.RussianLightStemmer;
-import org.apache.lucene.analysis.sv.SwedishLightStemmer;
 import org.apache.lucene.analysis.miscellaneous.SetKeywordMarkerFilter;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.FlagsAttribute;
 import org.apache.lucene.analysis.tokenattributes.KeywordAttribute;
+import org.apache.lucene.analysis.tokenattributes.PayloadAttribute;
 import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
 import org.apache.lucene.util.AttributeSource;
-import org.tartarus.snowball.SnowballProgram;
+import org.apache.lucene.util.BytesRef;
 
 /**
  * A {@link TokenFilter} that applies {@link DictionaryLemmatizer} to lemmatize
@@ -63,135 +41,188 @@ import org.tartarus.snowball.SnowballProgram;
  * <p>
  * To prevent terms from being lemmatized, use an instance of
  * {@link SetKeywordMarkerFilter} or a custom {@link TokenFilter} that sets the
- * {@link KeywordAttribute} before this {@link TokenStream}.
+ * {@link KeywordAttribute} before this {@link TokenStream}. Tokens of some
+ * types, such as the numbers and URLs of a tokenizer, can be skipped as well.
+ * </p>
+ * <p>
+ * Words the {@link WordFilter} of the dictionary rejects are not looked up,
+ * they are handled as any word missing from the dictionary.
+ * </p>
+ * <p>
+ * While a dictionary loaded in the background is not ready, words may be
+ * handled as missing from it, without splitting compounds: see
+ * {@link DictionaryHolder.Policy#FALLBACK}.
+ * </p>
+ * <p>
+ * A filter may hold several {@link Language}s, picked for every token stream
+ * by its {@link LanguageAttribute} on the first token, so that a single field
+ * type lemmatizes texts of several languages with their own dictionaries.
  * </p>
  */
 public final class DictionaryLemmatizerFilter extends TokenFilter {
-  private final DictionaryLemmatizer lemmatizer;
+  // settings and state of the current language
+  private Language language;
+  private DictionaryHolder holder;
+  private DictionaryLemmatizer lemmatizer;
+  private LemmaDictionary dictionary;
   private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
   private final KeywordAttribute keywordAttr = addAttribute(KeywordAttribute.class);
   private final PositionIncrementAttribute positionAttr = addAttribute(PositionIncrementAttribute.class);
-  private final Queue<String> terms = new LinkedList<String>();
-  private final Object fallbackStemmer;
-  private String stemmerName;
+  private FallbackStemmer fallbackStemmer;
+  private TermCache<char[]> stemCache;
+  private LemmatizerMetrics metrics;
+  private Decompounder decompounder;
+  private Decompounder.Splitter splitter;
+  private final Language defaultLanguage;
+  private final Map<String, Language> languages;
+  private final LanguageAttribute languageAttr;
+  private boolean selectLanguage;
+  private final PosTagFormat posTagFormat;
+  private final Set<String> skipTypes;
+  // only the attributes in use are added
+  private final PayloadAttribute payloadAttr;
+  private final FlagsAttribute flagsAttr;
+  private final TypeAttribute typeAttr;
+  private final BytesRef[] payloads;
+  // lemmas of the last word not output yet, ids of the lemmatizer or splitter,
+  // which are not used again before they are all output
+  private int[] lemmaIds;
+  private int nextLemma;
+  private int lemmaCount;
   private AttributeSource.State current = null;
+  // counted locally, added to the metrics at the end of every document
+  private long tokenCount;
+  private long keywordCount;
+  private long hitCount;
+  private long missCount;
+  private long stemCount;
+  private long extraLemmaCount;
+  private long decompoundedCount;
+
+  /**
+   * Creates a DictionaryLemmatizerFilter outputting possible lemmas.
+   * 
+   * @param input TokenStream whose tokens will be lemmatized
+   * @param wordlist a Hashmap containing all the words with their lemmas
+   * @param fallbackStemmer stemmer applied to the words missing from the
+   *          wordlist, or null
+   */
+  public DictionaryLemmatizerFilter(final TokenStream input, final Map<String, String[]> wordlist,
+      final FallbackStemmer fallbackStemmer) {
+    this(input, new Language(new DictionaryHolder(HeapLemmaDictionary.copyOf(wordlist)), fallbackStemmer, null,
+        null, null), null, PosTagFormat.SUFFIX, null);
+  }
 
   /**
    * Creates a DictionaryLemmatizerFilter outputting possible lemmas.
    * 
    * @param input TokenStream whose tokens will be lemmatized
    * @param wordlist a Hashmap containing all the words with their lemmas
+   * @param fallbackStemmer Lucene stemmer, such as a Snowball stemmer, applied
+   *          to the words missing from the wordlist, or null. The filter stems
+   *          with a new stemmer of the same class.
+   * @param stemmerName the name the stemmer was configured with
+   * @throws IllegalArgumentException if the stemmer is unknown
+   * @deprecated use
+   *             {@link #DictionaryLemmatizerFilter(TokenStream, Map, FallbackStemmer)}
+   *             with a stemmer of {@link FallbackStemmers#forName(String, Map)}
+   */
+  @Deprecated
+  public DictionaryLemmatizerFilter(final TokenStream input, final Map<String, String[]> wordlist,
+      final Object fallbackStemmer, final String stemmerName) {
+    this(input, wordlist, FallbackStemmers.forStemmer(fallbackStemmer, stemmerName));
+  }
+
+  /**
+   * Creates a DictionaryLemmatizerFilter picking the dictionary, fallback
+   * stemmer and decompounder of every token stream by its
+   * {@link LanguageAttribute}, read on its first token. Streams of no language,
+   * or of a language missing from the provided ones, use the default
+   * language.
+   * 
+   * @param input TokenStream whose tokens will be lemmatized
+   * @param defaultLanguage the default language
+   * @param languages the other languages by name, or null. Languages belong to
+   *          this filter.
+   * @param posTagFormat how the tags of the lemmas are output
+   * @param skipTypes types of the tokens left untouched, as keywords are, or
+   *          null
    */
-  public DictionaryLemmatizerFilter(final TokenStream input, final Map<String, String[]> wordlist, Object fallbackStemmer, String stemmerName) {
+  public DictionaryLemmatizerFilter(final TokenStream input, final Language defaultLanguage,
+      final Map<String, Language> languages, final PosTagFormat posTagFormat, final Set<String> skipTypes) {
     super(input);
-    lemmatizer = new DictionaryLemmatizer(wordlist);
-    this.fallbackStemmer = fallbackStemmer;
-    this.stemmerName = stemmerName;
+    this.defaultLanguage = defaultLanguage;
+    this.languages = languages == null || languages.isEmpty() ? null : languages;
+    languageAttr = this.languages == null ? null : addAttribute(LanguageAttribute.class);
+    use(defaultLanguage);
+    this.posTagFormat = posTagFormat;
+    this.skipTypes = skipTypes == null || skipTypes.isEmpty() ? null : skipTypes;
+    payloadAttr = posTagFormat == PosTagFormat.PAYLOAD ? addAttribute(PayloadAttribute.class) : null;
+    flagsAttr = posTagFormat == PosTagFormat.FLAGS ? addAttribute(FlagsAttribute.class) : null;
+    typeAttr = posTagFormat == PosTagFormat.TYPE || this.skipTypes != null ? addAttribute(TypeAttribute.class)
+        : null;
+    payloads = posTagFormat == PosTagFormat.PAYLOAD ? new BytesRef[PosTagFormat.PAYLOAD.maxWordClasses()] : null;
   }
 
   @Override
   public boolean incrementToken() throws IOException {
-    if (!terms.isEmpty()) {
-      if (createToken(terms.poll(), current)) {
-        return true;
-      }
+    try {
+      return next();
+    } catch (UncheckedIOException e) {
+      // a shard of a sharded dictionary failed to load
+      throw e.getCause();
+    }
+  }
+
+  private boolean next() throws IOException {
+    if (nextLemma < lemmaCount) {
+      // other lemmas of the last word, at its position
+      restoreState(current);
+      copyLemma(lemmaIds[nextLemma++]);
+      positionAttr.setPositionIncrement(0);
+      return true;
     }
     if (input.incrementToken()) {
+      if (selectLanguage) {
+        selectLanguage();
+      }
+      tokenCount++;
+      if (skipTypes != null && skipTypes.contains(typeAttr.type())) {
+        return true;
+      }
       if (!keywordAttr.isKeyword()) {
-        char[] buffer = termAtt.buffer();
-        final String tokenTerm = new String(buffer, 0, termAtt.length());
-
-        final String[] values = lemmatizer.lemmatize(tokenTerm);
-        if (values != null) {
+        if (lemmatizer == null) {
+          // the dictionary is not loaded yet, every word is missing from it
+          missCount++;
+          if (fallbackStemmer != null) {
+            stem();
+          }
+          return true;
+        }
+        final int count = lemmatizer.lookup(termAtt.buffer(), 0, termAtt.length());
+        if (count > 0) {
+          hitCount++;
+          if (count > 1) {
+            // the state is only needed to output the other lemmas
+            current = captureState();
+            lemmaIds = lemmatizer.lemmaIds();
+            nextLemma = 1;
+            lemmaCount = count;
+            extraLemmaCount += count - 1;
+          }
           // Replace first token with the lemma:
-          termAtt.setEmpty().append(values[0]);
-          if (values.length > 1) {
-            // Queue remaining lemmas for later processing
-            for (int i = 1; i < values.length; i++) {
-              terms.add(values[i]);
-            }
+          copyLemma(lemmatizer.lemmaIds()[0]);
+        } else {
+          missCount++;
+          if (decompounder != null) {
+            decompound();
           }
-        } else if (fallbackStemmer != null) {
-          if (fallbackStemmer instanceof SnowballProgram) {
-            char termBuffer[] = termAtt.buffer();
-            final int length = termAtt.length();
-
-            SnowballProgram snowball = (SnowballProgram) fallbackStemmer;
-            snowball.setCurrent(buffer, termAtt.length());
-            snowball.stem();
-
-            final char finalTerm[] = snowball.getCurrentBuffer();
-            final int newLength = snowball.getCurrentBufferLength();
-            if (finalTerm != termBuffer)
-              termAtt.copyBuffer(finalTerm, 0, newLength);
-            else
-              termAtt.setLength(newLength);
-
-          } else {
-            int len = 0;
-            //String newTerm = null;
-            if (fallbackStemmer instanceof ArabicStemmer) {
-              len = ((ArabicStemmer) fallbackStemmer).stem(buffer, termAtt.length());
-            } else if (fallbackStemmer instanceof BulgarianStemmer) {
-              len = ((BulgarianStemmer) fallbackStemmer).stem(buffer, termAtt.length());
-            } else if (fallbackStemmer instanceof CzechStemmer) {
-              len = ((CzechStemmer) fallbackStemmer).stem(buffer, termAtt.length());
-            } else if (fallbackStemmer instanceof EnglishMinimalStemmer) {
-              len = ((EnglishMinimalStemmer) fallbackStemmer).stem(buffer, termAtt.length());
-            } else if (fallbackStemmer instanceof FinnishLightStemmer) {
-              len = ((FinnishLightStemmer) fallbackStemmer).stem(buffer, termAtt.length());
-            } else if (fallbackStemmer instanceof FrenchLightStemmer) {
-              len = ((FrenchLightStemmer) fallbackStemmer).stem(buffer, termAtt.length());
-            } else if (fallbackStemmer instanceof FrenchMinimalStemmer) {
-              len = ((FrenchMinimalStemmer) fallbackStemmer).stem(buffer, termAtt.length());
-            } else if (fallbackStemmer instanceof GalicianMinimalStemmer) {
-              len = ((GalicianMinimalStemmer) fallbackStemmer).stem(buffer, termAtt.length());
-            } else if (fallbackStemmer instanceof GalicianStemmer) {
-              len = ((GalicianStemmer) fallbackStemmer).stem(buffer, termAtt.length());
-            } else if (fallbackStemmer instanceof GermanLightStemmer) {
-              len = ((GermanLightStemmer) fallbackStemmer).stem(buffer, termAtt.length());
-            } else if (fallbackStemmer instanceof GermanMinimalStemmer) {
-              len = ((GermanMinimalStemmer) fallbackStemmer).stem(buffer, termAtt.length());
-            } else if (fallbackStemmer instanceof GreekStemmer) {
-              len = ((GreekStemmer) fallbackStemmer).stem(buffer, termAtt.length());
-            } else if (fallbackStemmer instanceof HindiStemmer) {
-              len = ((HindiStemmer) fallbackStemmer).stem(buffer, termAtt.length());
-            } else if (fallbackStemmer instanceof HungarianLightStemmer) {
-              len = ((HungarianLightStemmer) fallbackStemmer).stem(buffer, termAtt.length());
-            } else if (fallbackStemmer instanceof IndonesianStemmer) {
-              if ("IndonesianLightStemmer".equals(stemmerName))
-                len = ((IndonesianStemmer) fallbackStemmer).stem(buffer, termAtt.length(), true);
-              else
-                len = ((IndonesianStemmer) fallbackStemmer).stem(buffer, termAtt.length(), false);
-            } else if (fallbackStemmer instanceof ItalianLightStemmer) {
-              len = ((ItalianLightStemmer) fallbackStemmer).stem(buffer, termAtt.length());
-            } else if (fallbackStemmer instanceof LatvianStemmer) {
-              len = ((LatvianStemmer) fallbackStemmer).stem(buffer, termAtt.length());
-            } else if (fallbackStemmer instanceof NorwegianLightStemmer) {
-              len = ((NorwegianLightStemmer) fallbackStemmer).stem(buffer, termAtt.length());
-            } else if (fallbackStemmer instanceof NorwegianMinimalStemmer) {
-              len = ((NorwegianMinimalStemmer) fallbackStemmer).stem(buffer, termAtt.length());
-            } else if (fallbackStemmer instanceof PortugueseLightStemmer) {
-              len = ((PortugueseLightStemmer) fallbackStemmer).stem(buffer, termAtt.length());
-            } else if (fallbackStemmer instanceof PortugueseMinimalStemmer) {
-              len = ((PortugueseMinimalStemmer) fallbackStemmer).stem(buffer, termAtt.length());
-            } else if (fallbackStemmer instanceof PortugueseStemmer) {
-              len = ((PortugueseStemmer) fallbackStemmer).stem(buffer, termAtt.length());
-            } else if (fallbackStemmer instanceof RussianLightStemmer) {
-              len = ((RussianLightStemmer) fallbackStemmer).stem(buffer, termAtt.length());
-            } else if (fallbackStemmer instanceof SoraniStemmer) {
-              len = ((SoraniStemmer) fallbackStemmer).stem(buffer, termAtt.length());
-            } else if (fallbackStemmer instanceof SpanishLightStemmer) {
-              len = ((SpanishLightStemmer) fallbackStemmer).stem(buffer, termAtt.length());
-            } else if (fallbackStemmer instanceof SwedishLightStemmer) {
-              len = ((SwedishLightStemmer) fallbackStemmer).stem(buffer, termAtt.length());
-            }
-            if (len > 0) {
-              termAtt.setEmpty().append(tokenTerm.substring(0, len));
-            }
+          if (fallbackStemmer != null) {
+            stem();
           }
         }
-        current = captureState();
+      } else {
+        keywordCount++;
       }
       return true;
     } else {
@@ -199,17 +230,179 @@ public final class DictionaryLemmatizerFilter extends TokenFilter {
     }
   }
 
-  protected boolean createToken(final String token, final AttributeSource.State current) {
-    restoreState(current);
-    termAtt.setEmpty().append(token);
-    positionAttr.setPositionIncrement(0);
-    return true;
+  /*
+   * Replaces the term with a lemma, its tag output in the format of the filter.
+   */
+  private void copyLemma(final int id) {
+    if (posTagFormat == PosTagFormat.SUFFIX) {
+      dictionary.copyLemma(id, termAtt);
+      return;
+    }
+    dictionary.copyBareLemma(id, termAtt);
+    final int tag = dictionary.lemmaTag(id);
+    if (tag < 0) {
+      return;
+    }
+    switch (posTagFormat) {
+      case PAYLOAD:
+        // one payload per tag, never modified once set
+        if (payloads[tag] == null) {
+          payloads[tag] = new BytesRef(new byte[] { (byte) tag });
+        }
+        payloadAttr.setPayload(payloads[tag]);
+        break;
+      case FLAGS:
+        flagsAttr.setFlags(flagsAttr.getFlags() | 1 << tag);
+        break;
+      case TYPE:
+        final String[] wordClasses = dictionary.getWordClasses();
+        typeAttr.setType(wordClasses != null && tag < wordClasses.length ? wordClasses[tag] : Integer.toString(
+            tag));
+        break;
+      default:
+        break;
+    }
+  }
+
+  /*
+   * Switches to the language of the token stream, once its first token is
+   * read: the attribute may be set along with it.
+   */
+  private void selectLanguage() throws IOException {
+    selectLanguage = false;
+    final String name = languageAttr.getLanguage();
+    final Language next = name == null ? defaultLanguage : languages.getOrDefault(name, defaultLanguage);
+    if (next != language) {
+      use(next);
+    }
+    acquire();
+  }
+
+  /*
+   * Switches to a language, keeping the state of the current one with it.
+   */
+  private void use(final Language next) {
+    if (language != null) {
+      language.dictionary = dictionary;
+      language.lemmatizer = lemmatizer;
+      language.splitter = splitter;
+    }
+    language = next;
+    holder = next.holder;
+    fallbackStemmer = next.fallbackStemmer;
+    stemCache = next.stemCache;
+    metrics = next.metrics;
+    decompounder = next.decompounder;
+    dictionary = next.dictionary;
+    lemmatizer = next.lemmatizer;
+    splitter = next.splitter;
+  }
+
+  /*
+   * Picks the current dictionary of the holder up.
+   */
+  private void acquire() throws IOException {
+    final LemmaDictionary latest = holder.acquire();
+    if (latest != dictionary) {
+      dictionary = latest;
+      lemmatizer = latest == null ? null : new DictionaryLemmatizer(latest);
+      splitter = null;
+    }
+  }
+
+  private void decompound() {
+    if (splitter == null) {
+      // the lemmas of the dictionary are indexed on the first split
+      splitter = decompounder.newSplitter(dictionary);
+    }
+    final int count = splitter.split(termAtt.buffer(), 0, termAtt.length());
+    if (count > 0) {
+      current = captureState();
+      lemmaIds = splitter.lemmaIds();
+      nextLemma = 0;
+      lemmaCount = count;
+      decompoundedCount++;
+      extraLemmaCount += count;
+    }
+  }
+
+  private void stem() {
+    if (stemCache == null) {
+      fallbackStemmer.stem(termAtt);
+      stemCount++;
+      return;
+    }
+    final char[] stem = stemCache.get(termAtt.buffer(), 0, termAtt.length());
+    if (stem != null) {
+      termAtt.copyBuffer(stem, 0, stem.length);
+    } else {
+      final char[] word = Arrays.copyOf(termAtt.buffer(), termAtt.length());
+      fallbackStemmer.stem(termAtt);
+      stemCount++;
+      stemCache.put(word, Arrays.copyOf(termAtt.buffer(), termAtt.length()));
+    }
+  }
+
+  @Override
+  public void end() throws IOException {
+    super.end();
+    if (metrics != null) {
+      metrics.add(tokenCount, keywordCount, hitCount, missCount, stemCount, extraLemmaCount, decompoundedCount);
+    }
+    tokenCount = keywordCount = hitCount = missCount = stemCount = extraLemmaCount = decompoundedCount = 0;
   }
 
   @Override
   public void reset() throws IOException {
     super.reset();
     current = null;
+    nextLemma = lemmaCount = 0;
+    if (languages != null) {
+      // the language is only known once the first token is read
+      selectLanguage = true;
+    } else {
+      acquire();
+    }
+  }
+
+  /**
+   * The dictionary, fallback stemmer and decompounder of a language, among
+   * the languages of a filter. A language keeps the state of the filter for
+   * it while another one is used, and belongs to a single filter, as its
+   * stemmer does.
+   */
+  public static final class Language {
+    private final DictionaryHolder holder;
+    private final FallbackStemmer fallbackStemmer;
+    private final TermCache<char[]> stemCache;
+    private final LemmatizerMetrics metrics;
+    private final Decompounder decompounder;
+    private LemmaDictionary dictionary;
+    private DictionaryLemmatizer lemmatizer;
+    private Decompounder.Splitter splitter;
+
+    /**
+     * Creates a language.
+     * 
+     * @param holder holder of the dictionary of the language
+     * @param fallbackStemmer stemmer applied to the words missing from the
+     *          dictionary, or null
+     * @param stemCache cache of the stems of the words missing from the
+     *          dictionary, or null
+     * @param metrics metrics the counts of the language are added to, or null
+     * @param decompounder decompounder of the words missing from the
+     *          dictionary, or null
+     */
+    public Language(final DictionaryHolder holder, final FallbackStemmer fallbackStemmer,
+        final TermCache<char[]> stemCache, final LemmatizerMetrics metrics, final Decompounder decompounder) {
+      this.holder = holder;
+      this.fallbackStemmer = fallbackStemmer;
+      this.stemCache = stemCache;
+      this.metrics = metrics;
+      this.decompounder = decompounder;
+      dictionary = holder.get();
+      lemmatizer = dictionary == null ? null : new DictionaryLemmatizer(dictionary);
+    }
   }
 
 }
\ No newline at end of file
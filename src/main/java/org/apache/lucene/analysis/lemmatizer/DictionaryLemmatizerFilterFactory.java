@@ -17,62 +17,48 @@ package org.apache.lucene.analysis.lemmatizer;
  * limitations under the License.
  */
 
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
 
 import org.apache.lucene.analysis.TokenStream;
-import org.apache.lucene.analysis.ar.ArabicStemmer;
-import org.apache.lucene.analysis.bg.BulgarianStemmer;
-import org.apache.lucene.analysis.ckb.SoraniStemmer;
-import org.apache.lucene.analysis.cz.CzechStemmer;
-import org.apache.lucene.analysis.de.GermanLightStemmer;
-import org.apache.lucene.analysis.de.GermanMinimalStemmer;
-import org.apache.lucene.analysis.de.GermanStemmer;
-import org.apache.lucene.analysis.el.GreekStemmer;
-import org.apache.lucene.analysis.en.EnglishMinimalStemmer;
-import org.apache.lucene.analysis.es.SpanishLightStemmer;
-import org.apache.lucene.analysis.fi.FinnishLightStemmer;
-import org.apache.lucene.analysis.fr.FrenchLightStemmer;
-import org.apache.lucene.analysis.fr.FrenchMinimalStemmer;
-import org.apache.lucene.analysis.gl.GalicianMinimalStemmer;
-import org.apache.lucene.analysis.gl.GalicianStemmer;
-import org.apache.lucene.analysis.hi.HindiStemmer;
-import org.apache.lucene.analysis.hu.HungarianLightStemmer;
-import org.apache.lucene.analysis.id.IndonesianStemmer;
-import org.apache.lucene.analysis.it.ItalianLightStemmer;
-import org.apache.lucene.analysis.lv.LatvianStemmer;
-import org.apache.lucene.analysis.no.NorwegianLightStemmer;
-import org.apache.lucene.analysis.no.NorwegianMinimalStemmer;
-import org.apache.lucene.analysis.pt.PortugueseLightStemmer;
-import org.apache.lucene.analysis.pt.PortugueseMinimalStemmer;
-import org.apache.lucene.analysis.pt.PortugueseStemmer;
-import org.apache.lucene.analysis.ru.RussianLightStemmer;
-import org.apache.lucene.analysis.sv.SwedishLightStemmer;
 import org.apache.lucene.analysis.util.ResourceLoader;
 import org.apache.lucene.analysis.util.ResourceLoaderAware;
 import org.apache.lucene.analysis.util.TokenFilterFactory;
-import org.apache.lucene.util.IOUtils;
-import org.mapdb.DB;
-import org.mapdb.DBMaker;
-import org.tartarus.snowball.SnowballProgram;
+import org.apache.solr.cloud.ZkSolrResourceLoader;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.core.SolrInfoMBean;
+import org.apache.solr.core.SolrResourceLoader;
+import org.apache.solr.rest.ManagedResource;
+import org.apache.solr.rest.ManagedResourceObserver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Factory for {@link DictionaryLemmatizerFilter}. Minimal configuration
@@ -86,13 +72,21 @@ import org.tartarus.snowball.SnowballProgram;
  * </pre>
  */
 public class DictionaryLemmatizerFilterFactory extends TokenFilterFactory implements
-    ResourceLoaderAware {
+    ResourceLoaderAware, ManagedResourceObserver, SolrInfoMBean {
 
-  private Map<String, Set<String>> unnormalizedWordlist = null;
-  private Map<String, String[]> normalizedWordlist = null;
+  private static final Logger log = LoggerFactory.getLogger(DictionaryLemmatizerFilterFactory.class);
 
-  private Reader reader = null;
-  private BufferedReader br = null;
+  private final DictionaryHolder dictionary;
+  private volatile DictionaryLoadReport loadReport = null;
+  private String registryKey = null;
+  private String sourceKey = null;
+  private String sourceStamp = null;
+  private DictionaryReloader reloader = null;
+  private Future<?> asyncLoader = null;
+  private ResourceLoader resourceLoader = null;
+  // dictionary loaded from the resources, and overlay of the managed entries
+  private volatile LemmaDictionary base = null;
+  private Map<String, String[]> overlay = Collections.emptyMap();
 
   private static final String PARAM_WORD_CLASSES = "wordClasses";
   private static final String PARAM_CHARSET = "charset";
@@ -102,9 +96,41 @@ public class DictionaryLemmatizerFilterFactory extends TokenFilterFactory implem
   private static final String PARAM_WORD_CLASS_POS = "wordClassPos";
   private static final String PARAM_REDUCE_TO = "reduceTo";
   private static final String PARAM_STORE_POS_TAG = "storePosTag";
+  private static final String PARAM_POS_TAG_FORMAT = "posTagFormat";
   private static final String PARAM_DICTIONARIES = "dictionaries";
   private static final String PARAM_DIRECTMEMORY = "directMemory";
+  private static final String PARAM_FST = "fst";
   private static final String PARAM_FALLBACK_STEMMER = "fallBackStemmer";
+  private static final String PARAM_STEMMER_CACHE_SIZE = "stemmerCacheSize";
+  private static final String PARAM_LOAD_THREADS = "loadThreads";
+  private static final String PARAM_RELOAD_INTERVAL = "reloadInterval";
+  private static final String PARAM_MANAGED = "managed";
+  private static final String PARAM_METRICS_NAME = "metricsName";
+  private static final String PARAM_CASE_INSENSITIVE = WordFolding.CASE_INSENSITIVE;
+  private static final String PARAM_FOLD_ACCENTS = WordFolding.FOLD_ACCENTS;
+  private static final String PARAM_DECOMPOUND = "decompound";
+  private static final String PARAM_MIN_SUBWORD_LENGTH = "minSubwordLength";
+  private static final String PARAM_COMPOUND_LINKS = "compoundLinks";
+  private static final String PARAM_DECOMPOUND_CACHE_SIZE = "decompoundCacheSize";
+  private static final String PARAM_EXPAND = "expand";
+  private static final String PARAM_BLOOM_FILTER_BITS = "bloomFilterBits";
+  private static final String PARAM_SKIP_TYPES = "skipTypes";
+  private static final String PARAM_ASYNC_LOAD = "asyncLoad";
+  private static final String PARAM_ASYNC_LOAD_POLICY = "asyncLoadPolicy";
+  private static final String PARAM_ASYNC_LOAD_TIMEOUT = "asyncLoadTimeout";
+  private static final String PARAM_MAX_SHARD_MEMORY_MB = "maxShardMemoryMB";
+  private static final String PARAM_LANGUAGES = "languages";
+  private static final String PARAM_PERSISTENT = "persistent";
+  private static final String PARAM_PERSIST_DIR = "persistDir";
+  // metadata of a persisted dictionary, the key of the resources it was built
+  // from and their sizes and modification times
+  private static final String STORE_KEY = "storeKey";
+  private static final String STORE_STAMP = "storeStamp";
+  // coarsest granularity of file modification times, FAT having 2 seconds
+  private static final long STAMP_GRANULARITY_MILLIS = 2000;
+
+  /** Path of the managed lemmas in the REST API, followed by their name. */
+  public static final String MANAGED_RESOURCE_PATH = "/schema/analysis/lemmas/";
 
   private int minLength;
   private String dictionaries;
@@ -115,14 +141,58 @@ public class DictionaryLemmatizerFilterFactory extends TokenFilterFactory implem
   private String charset;
   private String[] reduceTo;
   private boolean storePosTag;
+  private PosTagFormat posTagFormat;
+  private WordFolding folding;
   private boolean directMemory;
-  private Object fallbackStemmer;
-  private String fallBackStemmerClassName;
+  private boolean fst;
+  private boolean compiled;
+  private boolean sharded;
+  private boolean persistent;
+  private String persistDir;
+  private int maxShardMemoryMB;
+  private int loadThreads;
+  private int reloadInterval;
+  private String managed;
+  private boolean expand;
+  private int bloomFilterBits;
+  private Set<String> skipTypes;
+  private boolean asyncLoad;
+  private Supplier<FallbackStemmer> fallbackStemmer;
+  private TermCache<char[]> stemCache;
+  private final String metricsName;
+  private volatile LemmatizerMetrics metrics;
+  private Decompounder decompounder;
+  // factories of the other languages, by name
+  private final Map<String, DictionaryLemmatizerFilterFactory> languages =
+      new LinkedHashMap<String, DictionaryLemmatizerFilterFactory>();
 
   /** Creates a new DictionaryLemmatizerFilterFactory */
   public DictionaryLemmatizerFilterFactory(final Map<String, String> args) {
     super(args);
 
+    // parameters suffixed with the name of a language only apply to it
+    final String languageList = get(args, PARAM_LANGUAGES);
+    final Map<String, Map<String, String>> languageArgs = new LinkedHashMap<String, Map<String, String>>();
+    if (languageList != null) {
+      for (String language : languageList.split(",")) {
+        final String suffix = "." + language;
+        final Map<String, String> overrides = new HashMap<String, String>();
+        final Iterator<Map.Entry<String, String>> it = args.entrySet().iterator();
+        while (it.hasNext()) {
+          final Map.Entry<String, String> arg = it.next();
+          if (arg.getKey().endsWith(suffix)) {
+            overrides.put(arg.getKey().substring(0, arg.getKey().length() - suffix.length()), arg.getValue());
+            it.remove();
+          }
+        }
+        if (language.isEmpty() || !overrides.containsKey(PARAM_DICTIONARIES)) {
+          throw new IllegalArgumentException("Parameter " + PARAM_LANGUAGES + " requires that "
+              + PARAM_DICTIONARIES + "." + language + " is properly set");
+        }
+        languageArgs.put(language, overrides);
+      }
+    }
+
     final String wordClassList = get(args, PARAM_WORD_CLASSES);
     wordClasses = (wordClassList != null) ? wordClassList.split(",") : null;
     charset = get(args, PARAM_CHARSET, "UTF-8");
@@ -134,123 +204,120 @@ public class DictionaryLemmatizerFilterFactory extends TokenFilterFactory implem
     final String reduceToList = get(args, PARAM_REDUCE_TO);
     reduceTo = (reduceToList != null) ? reduceToList.split(",") : null;
     storePosTag = getBoolean(args, PARAM_STORE_POS_TAG, false);
+    try {
+      posTagFormat = PosTagFormat.forName(get(args, PARAM_POS_TAG_FORMAT, "suffix"));
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Parameter " + PARAM_POS_TAG_FORMAT + " not properly set");
+    }
+    folding = WordFolding.of(getBoolean(args, PARAM_CASE_INSENSITIVE, false), getBoolean(args, PARAM_FOLD_ACCENTS,
+        false));
     directMemory = getBoolean(args, PARAM_DIRECTMEMORY, false);
+    fst = getBoolean(args, PARAM_FST, false);
+    persistent = getBoolean(args, PARAM_PERSISTENT, false);
+    persistDir = get(args, PARAM_PERSIST_DIR);
+    loadThreads = getInt(args, PARAM_LOAD_THREADS, 1);
+    reloadInterval = getInt(args, PARAM_RELOAD_INTERVAL, 0);
+    managed = get(args, PARAM_MANAGED);
+    expand = getBoolean(args, PARAM_EXPAND, false);
+    bloomFilterBits = getInt(args, PARAM_BLOOM_FILTER_BITS, 0);
+    skipTypes = getSet(args, PARAM_SKIP_TYPES);
+    maxShardMemoryMB = getInt(args, PARAM_MAX_SHARD_MEMORY_MB, 0);
+    asyncLoad = getBoolean(args, PARAM_ASYNC_LOAD, false);
+    final boolean asyncLoadTimeoutSet = args.containsKey(PARAM_ASYNC_LOAD_TIMEOUT);
+    final String asyncLoadPolicy = get(args, PARAM_ASYNC_LOAD_POLICY);
+    final long asyncLoadTimeout = getInt(args, PARAM_ASYNC_LOAD_TIMEOUT, 60000);
+    if ((asyncLoadPolicy != null || asyncLoadTimeoutSet) && !asyncLoad) {
+      throw new IllegalArgumentException("Parameters " + PARAM_ASYNC_LOAD_POLICY + " and "
+          + PARAM_ASYNC_LOAD_TIMEOUT + " require that " + PARAM_ASYNC_LOAD + " is true");
+    }
+    if (asyncLoadTimeout < 0) {
+      throw new IllegalArgumentException("Parameter " + PARAM_ASYNC_LOAD_TIMEOUT + " not properly set");
+    }
+    try {
+      // without asyncLoad, the dictionary is loaded before any filter is used
+      dictionary = new DictionaryHolder(null, !asyncLoad ? DictionaryHolder.Policy.FAIL : asyncLoadPolicy == null
+          ? DictionaryHolder.Policy.BLOCK : DictionaryHolder.Policy.forName(asyncLoadPolicy), asyncLoadTimeout);
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Parameter " + PARAM_ASYNC_LOAD_POLICY + " not properly set");
+    }
+    metricsName = get(args, PARAM_METRICS_NAME);
     String fallBackStemmer = get(args, PARAM_FALLBACK_STEMMER, "");
 
     if (!"".equals(fallBackStemmer)) {
       String[] fallBackStemmerArgs = fallBackStemmer.split("\\|");
+      Map<String, String> fallBackStemmerParams = new HashMap<String, String>();
       try {
-        fallBackStemmerClassName = fallBackStemmerArgs[0];
-        Map<String, String> fallBackStemmerParams = new HashMap<String, String> ();
-        for (int i=1; i<fallBackStemmerArgs.length; i++) {
+        for (int i = 1; i < fallBackStemmerArgs.length; i++) {
           String[] param = fallBackStemmerArgs[i].split("=");
           fallBackStemmerParams.put(param[0], param[1]);
         }
-
-        switch (fallBackStemmerClassName) {
-          case "ArabicStemmer":
-            fallbackStemmer = new ArabicStemmer();
-            break;
-         case "BulgarianStemmer":
-            fallbackStemmer = new BulgarianStemmer();
-            break;
-          case "CzechStemmer":
-            fallbackStemmer = new CzechStemmer();
-            break;
-          case "EnglishMinimalStemmer":
-            fallbackStemmer = new EnglishMinimalStemmer();
-            break;
-          case "FinnishLightStemmer":
-            fallbackStemmer = new FinnishLightStemmer();
-            break;
-          case "FrenchLightStemmer":
-            fallbackStemmer = new FrenchLightStemmer();
-            break;
-          case "FrenchMinimalStemmer":
-            fallbackStemmer = new FrenchMinimalStemmer();
-            break;
-          case "GalicianMinimalStemmer":
-            fallbackStemmer = new GalicianMinimalStemmer();
-            break;
-          case "GalicianStemmer":
-            fallbackStemmer = new GalicianStemmer();
-            break;
-          case "GermanLightStemmer":
-            fallbackStemmer = new GermanLightStemmer();
-            break;
-          case "GermanMinimalStemmer":
-            fallbackStemmer = new GermanMinimalStemmer();
-            break;
-          case "GermanStemmer":
-            fallbackStemmer = new GermanStemmer();
-            break;
-          case "GreekStemmer":
-            fallbackStemmer = new GreekStemmer();
-            break;
-          case "HindiStemmer":
-            fallbackStemmer = new HindiStemmer();
-            break;
-          case "HungarianLightStemmer":
-            fallbackStemmer = new HungarianLightStemmer();
-            break;
-          case "IndonesianStemmer":
-          case "IndonesianLightStemmer":
-            fallbackStemmer = new IndonesianStemmer();
-            break;
-          case "ItalianLightStemmer":
-            fallbackStemmer = new ItalianLightStemmer();
-            break;
-          case "LatvianStemmer":
-            fallbackStemmer = new LatvianStemmer();
-            break;
-          case "NorwegianLightStemmer":
-            fallbackStemmer = new NorwegianLightStemmer(NorwegianLightStemmer.BOKMAAL | NorwegianLightStemmer.NYNORSK);
-            break;
-          case "NorwegianMinimalStemmer":
-            fallbackStemmer = new NorwegianMinimalStemmer(NorwegianLightStemmer.BOKMAAL | NorwegianLightStemmer.NYNORSK);
-            break;
-          case "PortugueseLightStemmer":
-            fallbackStemmer = new PortugueseLightStemmer();
-            break;
-          case "PortugueseMinimalStemmer":
-            fallbackStemmer = new PortugueseMinimalStemmer();
-            break;
-          case "PortugueseStemmer":
-            fallbackStemmer = new PortugueseStemmer();
-            break;
-          case "RussianLightStemmer":
-            fallbackStemmer = new RussianLightStemmer();
-            break;
-          case "SoraniStemmer":
-            fallbackStemmer = new SoraniStemmer();
-            break;
-          case "SpanishLightStemmer":
-            fallbackStemmer = new SpanishLightStemmer();
-            break;
-          case "SwedishLightStemmer":
-            fallbackStemmer = new SwedishLightStemmer();
-            break;
-          case "SnowballStemmer":
-            String name = fallBackStemmerParams.get("language");
-            try {
-              Class<? extends SnowballProgram> stemClass =
-                      Class.forName("org.tartarus.snowball.ext." + name + "Stemmer").asSubclass(SnowballProgram.class);
-              fallbackStemmer = stemClass.newInstance();
-            } catch (Exception e) {
-              throw new IllegalArgumentException("Invalid stemmer class specified: " + name, e);
-            }
-            break;
-        }
       } catch (Exception e) {
         throw new IllegalArgumentException("Parameter " + PARAM_FALLBACK_STEMMER + " not properly set");
       }
+      fallbackStemmer = FallbackStemmers.forName(fallBackStemmerArgs[0], fallBackStemmerParams);
     }
 
-    if (lemmaPos < 0) {
-      throw new IllegalArgumentException("Parameter " + PARAM_LEMMA_POS + " not properly set");
+    final int stemmerCacheSize = getInt(args, PARAM_STEMMER_CACHE_SIZE, 0);
+    if (stemmerCacheSize < 0) {
+      throw new IllegalArgumentException("Parameter " + PARAM_STEMMER_CACHE_SIZE + " not properly set");
     }
-    if (wordPos < 0) {
-      throw new IllegalArgumentException("Parameter " + PARAM_WORD_POS + " not properly set");
+    if (stemmerCacheSize > 0) {
+      if (fallbackStemmer == null) {
+        throw new IllegalArgumentException("Parameter " + PARAM_STEMMER_CACHE_SIZE + " requires that "
+            + PARAM_FALLBACK_STEMMER + " is properly set");
+      }
+      stemCache = new TermCache<char[]>(stemmerCacheSize);
+    }
+
+    final boolean decompound = getBoolean(args, PARAM_DECOMPOUND, false);
+    final int minSubwordLength = getInt(args, PARAM_MIN_SUBWORD_LENGTH, 3);
+    final String compoundLinks = get(args, PARAM_COMPOUND_LINKS);
+    final int decompoundCacheSize = getInt(args, PARAM_DECOMPOUND_CACHE_SIZE, 10000);
+    if (minSubwordLength < 1) {
+      throw new IllegalArgumentException("Parameter " + PARAM_MIN_SUBWORD_LENGTH + " not properly set");
+    }
+    if (decompoundCacheSize < 0) {
+      throw new IllegalArgumentException("Parameter " + PARAM_DECOMPOUND_CACHE_SIZE + " not properly set");
+    }
+    if (decompound) {
+      decompounder = new Decompounder(minSubwordLength, compoundLinks != null ? compoundLinks.split(",")
+          : new String[0], decompoundCacheSize);
+    } else if (compoundLinks != null) {
+      throw new IllegalArgumentException("Parameter " + PARAM_COMPOUND_LINKS + " requires that "
+          + PARAM_DECOMPOUND + " is true");
+    }
+
+    // Compiled dictionaries are already parsed and normalized
+    for (String file : dictionaries.split(",")) {
+      sharded |= file.endsWith(ShardedLemmaDictionary.EXTENSION);
+      compiled |= file.endsWith(FlatLemmaDictionary.EXTENSION) || sharded;
+    }
+    if (compiled) {
+      if (dictionaries.contains(",")) {
+        throw new IllegalArgumentException("Parameter " + PARAM_DICTIONARIES
+            + " accepts a single compiled dictionary");
+      }
+      if (fst) {
+        throw new IllegalArgumentException("Parameter " + PARAM_FST
+            + " does not apply to compiled dictionaries");
+      }
+      if (!folding.isNone()) {
+        // words are folded as they were when compiled
+        throw new IllegalArgumentException("Parameters " + PARAM_CASE_INSENSITIVE + " and " + PARAM_FOLD_ACCENTS
+            + " do not apply to compiled dictionaries");
+      }
+      if (bloomFilterBits != 0) {
+        // the filter is compiled along with the words
+        throw new IllegalArgumentException("Parameter " + PARAM_BLOOM_FILTER_BITS
+            + " does not apply to compiled dictionaries");
+      }
+    } else {
+      if (lemmaPos < 0) {
+        throw new IllegalArgumentException("Parameter " + PARAM_LEMMA_POS + " not properly set");
+      }
+      if (wordPos < 0) {
+        throw new IllegalArgumentException("Parameter " + PARAM_WORD_POS + " not properly set");
+      }
     }
 
     if (storePosTag && wordClassPos < 0) {
@@ -263,207 +330,779 @@ public class DictionaryLemmatizerFilterFactory extends TokenFilterFactory implem
           + PARAM_WORD_CLASSES + " is properly set");
     }
 
+    // compiled dictionaries hold their tags, if any
+    if (posTagFormat != PosTagFormat.SUFFIX && !storePosTag && !compiled) {
+      throw new IllegalArgumentException("Parameter " + PARAM_POS_TAG_FORMAT + " requires that "
+          + PARAM_STORE_POS_TAG + " is true");
+    }
+
+    if (storePosTag && wordClasses.length > posTagFormat.maxWordClasses()) {
+      throw new IllegalArgumentException("Parameter " + PARAM_POS_TAG_FORMAT + " accepts at most "
+          + posTagFormat.maxWordClasses() + " " + PARAM_WORD_CLASSES);
+    }
+
+    if (maxShardMemoryMB < 0) {
+      throw new IllegalArgumentException("Parameter " + PARAM_MAX_SHARD_MEMORY_MB + " not properly set");
+    }
+    if (maxShardMemoryMB > 0 && !sharded) {
+      throw new IllegalArgumentException("Parameter " + PARAM_MAX_SHARD_MEMORY_MB + " requires that "
+          + PARAM_DICTIONARIES + " is a sharded dictionary");
+    }
+
+    if (bloomFilterBits < 0) {
+      throw new IllegalArgumentException("Parameter " + PARAM_BLOOM_FILTER_BITS + " not properly set");
+    }
+
+    if (reloadInterval < 0) {
+      throw new IllegalArgumentException("Parameter " + PARAM_RELOAD_INTERVAL + " not properly set");
+    }
+
+    if (loadThreads < 1) {
+      throw new IllegalArgumentException("Parameter " + PARAM_LOAD_THREADS + " not properly set");
+    }
+
+    if (expand && (fallbackStemmer != null || decompounder != null || storePosTag)) {
+      // the index holds the words as they are, only the dictionary forms can match
+      throw new IllegalArgumentException("Parameter " + PARAM_EXPAND + " can't be combined with "
+          + PARAM_FALLBACK_STEMMER + ", " + PARAM_DECOMPOUND + " or " + PARAM_STORE_POS_TAG);
+    }
+
+    if (fst && directMemory) {
+      throw new IllegalArgumentException("Parameters " + PARAM_FST + " and " + PARAM_DIRECTMEMORY
+          + " are mutually exclusive");
+    }
+
+    if (persistDir != null && !persistent) {
+      throw new IllegalArgumentException("Parameter " + PARAM_PERSIST_DIR + " requires that " + PARAM_PERSISTENT
+          + " is true");
+    }
+    if (persistent && (compiled || fst || directMemory)) {
+      // compiled dictionaries are files already, the others are persisted mapped
+      throw new IllegalArgumentException("Parameter " + PARAM_PERSISTENT + " can't be combined with " + PARAM_FST
+          + ", " + PARAM_DIRECTMEMORY + " or compiled dictionaries");
+    }
+
+    if (expand && !languageArgs.isEmpty()) {
+      throw new IllegalArgumentException("Parameter " + PARAM_EXPAND + " can't be combined with "
+          + PARAM_LANGUAGES);
+    }
+
     if (!args.isEmpty()) {
       throw new IllegalArgumentException("Unknown parameters: " + args);
     }
+
+    // counting on their own until informed, named metrics are then shared
+    metrics = new LemmatizerMetrics(metricsName != null ? metricsName : dictionaries);
+    metrics.bind(dictionary, stemCache);
+
+    // every language is a factory of its own, so that its dictionary is shared
+    // with any other factory loading it
+    for (Map.Entry<String, Map<String, String>> language : languageArgs.entrySet()) {
+      final Map<String, String> childArgs = new HashMap<String, String>(getOriginalArgs());
+      childArgs.remove(PARAM_LANGUAGES);
+      childArgs.remove(PARAM_MANAGED);
+      for (String name : languageArgs.keySet()) {
+        childArgs.keySet().removeIf(key -> key.endsWith("." + name));
+      }
+      if (metricsName != null) {
+        childArgs.put(PARAM_METRICS_NAME, metricsName + "." + language.getKey());
+      }
+      childArgs.putAll(language.getValue());
+      languages.put(language.getKey(), new DictionaryLemmatizerFilterFactory(childArgs));
+    }
+  }
+
+  /*
+   * Returns a builder applying the parsing parameters of this factory.
+   */
+  LemmaDictionaryBuilder newBuilder() {
+    final LemmaDictionaryBuilder builder = new LemmaDictionaryBuilder(lemmaPos, wordPos, wordClassPos, wordClasses,
+        charset, reduceTo, minLength, storePosTag, folding);
+    builder.setBloomFilterBits(bloomFilterBits);
+    return builder;
   }
 
-  private void handleStream(final List<InputStream> inputStreams) throws IOException {
-    if (directMemory) {
-      DB db = DBMaker.memoryDirectDB().make();
-      unnormalizedWordlist = (Map<String, Set<String>>) db.hashMap("unnormalizedWordlist").create();
-      normalizedWordlist = (Map<String, String[]>) db.hashMap("normalizedWordlist").create();
+  /*
+   * Returns the maximum number of dictionaries parsed at the same time.
+   */
+  int getLoadThreads() {
+    return loadThreads;
+  }
+
+  private LemmaDictionary load(final String[] files, final byte[][] contents, final Map<String, String[]> compacted,
+      final DictionaryLoadReport report) throws IOException {
+    if (compiled) {
+      return FlatLemmaDictionary.open(contents[0], directMemory);
+    }
+    final LemmaDictionaryBuilder builder = newBuilder();
+    builder.reportTo(report);
+    final List<InputStream> inputStreams = new ArrayList<InputStream>();
+    for (byte[] content : contents) {
+      inputStreams.add(new ByteArrayInputStream(content));
+    }
+    builder.add(Arrays.asList(files), inputStreams, loadThreads);
+    builder.override(compacted);
+    final LemmaDictionary loaded;
+    if (fst) {
+      loaded = builder.buildFST();
+    } else if (directMemory) {
+      loaded = builder.buildDirect();
     } else {
-      unnormalizedWordlist = new HashMap<String, Set<String>>();
-      normalizedWordlist = new HashMap<String, String[]>();
-    }
-    for (InputStream inputStream : inputStreams) {
-      if (inputStream instanceof ZipInputStream) {
-        ZipEntry entry;
-        while ((entry = ((ZipInputStream) inputStream).getNextEntry()) != null) {
-          final String entryName = entry.getName();
-          final Path currentPath = Paths.get(entryName);
-          final Path parentPath = currentPath.getParent();
-          if (parentPath == null && Files.isDirectory(currentPath)) {
-            break;
-          }
-          addDictionary(inputStream);
-        }
-      } else {
-        addDictionary(inputStream);
+      loaded = builder.buildHeap();
+    }
+    return compacted.isEmpty() ? loaded : new CompactedLemmaDictionary(loaded, compacted, builder.overridden());
+  }
+
+  /*
+   * Returns the registry key of a dictionary loaded by this factory from the
+   * given source.
+   */
+  private String registryKey(final String source) {
+    final Map<String, String> params = newBuilder().metadata();
+    params.put(PARAM_FST, Boolean.toString(fst));
+    params.put(PARAM_DIRECTMEMORY, Boolean.toString(directMemory));
+    params.put(PARAM_PERSISTENT, Boolean.toString(persistent));
+    if (persistDir != null) {
+      params.put(PARAM_PERSIST_DIR, persistDir);
+    }
+    params.put("sharded", Boolean.toString(sharded));
+    params.put(PARAM_MAX_SHARD_MEMORY_MB, Integer.toString(maxShardMemoryMB));
+    return params + "@" + source;
+  }
+
+  @Override
+  public TokenStream create(TokenStream input) {
+    if (expand) {
+      return new LemmaExpansionFilter(input, dictionary, metrics);
+    }
+    Map<String, DictionaryLemmatizerFilter.Language> routes = null;
+    if (!languages.isEmpty()) {
+      routes = new HashMap<String, DictionaryLemmatizerFilter.Language>();
+      for (Map.Entry<String, DictionaryLemmatizerFilterFactory> language : languages.entrySet()) {
+        routes.put(language.getKey(), language.getValue().newLanguage());
       }
     }
-    addEntries();
-    unnormalizedWordlist.clear();
+    return new DictionaryLemmatizerFilter(input, newLanguage(), routes, posTagFormat, skipTypes);
   }
 
   /*
-   * Adds entries in a dictionary to a temporary map where the key is the word
-   * and the value is a comma-separated list of lemmas for that word. A word can
-   * have several lemmas: German: (wir/viele) fragen => (zu) fragen (verb),
-   * (eine) Frage (noun). Norwegian: (vi/mange) sykler => (å) sykle (verb), (en)
-   * sykkel (noun)
-   */
-  private void addDictionary(final InputStream inputStream) throws IOException {
-    reader = new InputStreamReader(inputStream, charset);
-    br = new BufferedReader(reader);
-    String line;
-    while ((line = br.readLine()) != null) {
-      final String[] parts = line.split("\t");
-
-      // Skip comments etc. in file:
-      if (parts.length < 2 || line.trim().startsWith("#") || line.trim().startsWith("*")) {
-        continue;
+   * Returns the settings of this factory for a new filter. Stemmers may be
+   * stateful, every filter gets its own.
+   */
+  private DictionaryLemmatizerFilter.Language newLanguage() {
+    return new DictionaryLemmatizerFilter.Language(dictionary, fallbackStemmer == null ? null : fallbackStemmer
+        .get(), stemCache, metrics, decompounder);
+  }
+
+  /**
+   * Loads the dictionary, or shares the one already loaded by any other
+   * factory from the same resources with the same parameters. With
+   * {@code asyncLoad}, the dictionary is loaded in the background, see
+   * {@link #isReady()}.
+   */
+  @Override
+  public void inform(final ResourceLoader resourceLoader) throws IOException {
+    unload();
+    if (metricsName != null) {
+      // factories sharing a name, such as the analyzers of a field type, share
+      // metrics published in JMX, registered again if released since
+      metrics = LemmatizerMetrics.forName(metricsName, this);
+      metrics.bind(dictionary, stemCache);
+    }
+    this.resourceLoader = resourceLoader;
+    if (asyncLoad) {
+      // the core registers right away, filters follow the policy of the holder
+      // until the dictionary is published
+      synchronized (this) {
+        asyncLoader = DictionaryReloader.load(this, resourceLoader, dictionary);
       }
+    } else {
+      try {
+        refresh(resourceLoader);
+      } catch (Exception e) {
+        throw new IOException("Unable to load dictionary", e);
+      }
+    }
+    if (reloadInterval > 0) {
+      reloader = DictionaryReloader.schedule(this, resourceLoader, reloadInterval);
+    }
+    for (DictionaryLemmatizerFilterFactory language : languages.values()) {
+      language.inform(resourceLoader);
+    }
+    if (managed != null) {
+      if (!(resourceLoader instanceof SolrResourceLoader)) {
+        throw new IllegalArgumentException("Parameter " + PARAM_MANAGED + " requires a Solr resource loader");
+      }
+      ((SolrResourceLoader) resourceLoader).getManagedResourceRegistry().registerManagedResource(
+          MANAGED_RESOURCE_PATH + managed, ManagedLemmaResource.class, this);
+    }
+  }
+
+  @Override
+  public void onManagedResourceInitialized(final NamedList<?> initArgs, final ManagedResource res)
+      throws SolrException {
+    ((ManagedLemmaResource) res).addListener(this::setOverlay);
+  }
+
+  /*
+   * Loads the dictionary if its resources changed since it was last loaded,
+   * and publishes it to the filters. Returns whether it was loaded.
+   */
+  synchronized boolean refresh(final ResourceLoader resourceLoader) throws Exception {
+    return load(resourceLoader, false);
+  }
+
+  /**
+   * Rebuilds the dictionary with the managed entries, so that words are looked
+   * up once instead of in the entries and then in the dictionary. Compiled and
+   * persistent dictionaries are not rebuilt.
+   * 
+   * @throws IllegalStateException if the dictionary was not loaded yet
+   */
+  public synchronized void compact() throws IOException {
+    if (resourceLoader == null) {
+      throw new IllegalStateException("Dictionary " + dictionaries + " not loaded, inform() was not called");
+    }
+    try {
+      load(resourceLoader, true);
+    } catch (Exception e) {
+      throw new IOException("Unable to compact dictionary", e);
+    }
+  }
+
+  /*
+   * Publishes new managed entries to the filters, on top of the dictionary.
+   */
+  synchronized void setOverlay(final Map<String, String[]> overlay) {
+    this.overlay = overlay;
+    if (base != null) {
+      publish();
+    }
+  }
+
+  /*
+   * Loads the dictionary if its resources changed since it was last loaded, or
+   * if the managed entries are to be compacted into it. A rebuilt dictionary
+   * always includes the managed entries.
+   */
+  private boolean load(final ResourceLoader resourceLoader, final boolean compact) throws Exception {
+    final long start = System.nanoTime();
+    final DictionaryLoadReport report = new DictionaryLoadReport();
+    final String[] files = dictionaries.split(",");
+    final Path path = compiled ? resolve(resourceLoader, files[0]) : null;
+    final String stamp = path != null ? null : stamp(resourceLoader, files);
+    if (!compact && stamp != null && stamp.equals(sourceStamp)) {
+      // unchanged since last loaded, not read again
+      return false;
+    }
+    // a store built from resources of the same sizes and modification times
+    // holds the key of their checksums, they are not read
+    final Path store = persistent ? storePath(resourceLoader) : null;
+    final String storedKey = store != null && stamp != null ? storedKey(store, registryKey(stamp)) : null;
+    final String key;
+    final byte[][] contents;
+    if (path != null) {
+      key = registryKey(path.toRealPath() + "#" + Files.getLastModifiedTime(path).toMillis());
+      contents = null;
+    } else if (storedKey != null) {
+      key = storedKey;
+      contents = null;
+    } else {
+      // resources are read once, to be checksummed, and parsed from memory on
+      // a registry miss
+      contents = read(resourceLoader, files, report);
+      final CRC32 crc = new CRC32();
+      for (byte[] content : contents) {
+        crc.update(content);
+      }
+      key = registryKey(dictionaries + "#" + Long.toHexString(crc.getValue()));
+    }
+    if (key.equals(sourceKey) && (!compact || compiled || persistent || overlay == compacted())) {
+      // touched only, the same content is not read again until changed
+      sourceStamp = stamp;
+      return false;
+    }
+    // persisted dictionaries only hold the resources, the managed entries stay on top
+    final Map<String, String[]> compacted = compiled || persistent ? Collections.<String, String[]> emptyMap()
+        : overlay;
+    final String fullKey = compacted.isEmpty() ? key : key + "+" + checksum(compacted);
+    final AtomicBoolean built = new AtomicBoolean();
+    report.backend(backend(path));
+    final Callable<LemmaDictionary> loader = () -> {
+      built.set(true);
+      if (sharded) {
+        return openSharded(resourceLoader, path, files[0], contents);
+      }
+      if (persistent) {
+        final FlatLemmaDictionary reopened = reopen(store, key);
+        if (reopened != null) {
+          report.backend("stored");
+          return reopened;
+        }
+        // damaged since it was stamped, the resources are read after all
+        return persist(store, key, stamp, files, contents != null ? contents : read(resourceLoader, files,
+            report), report);
+      }
+      return path != null ? FlatLemmaDictionary.map(path) : load(files, contents, compacted, report);
+    };
+    final LemmaDictionary loaded = DictionaryRegistry.INSTANCE.acquire(fullKey, this, loader);
+    final String[] loadedClasses = loaded.getWordClasses();
+    if (loadedClasses != null && loadedClasses.length > posTagFormat.maxWordClasses()) {
+      // the word classes of compiled dictionaries are only known once loaded
+      DictionaryRegistry.INSTANCE.release(fullKey, this);
+      throw new IllegalArgumentException("Parameter " + PARAM_POS_TAG_FORMAT + " accepts at most "
+          + posTagFormat.maxWordClasses() + " " + PARAM_WORD_CLASSES);
+    }
+    if (!built.get()) {
+      report.shared();
+    }
+    report.loaded(System.nanoTime() - start, loaded);
+    loadReport = report;
+    log.info("Loaded dictionary {}: {}", dictionaries, report);
+    if (registryKey != null) {
+      DictionaryRegistry.INSTANCE.release(registryKey, this);
+    }
+    registryKey = fullKey;
+    sourceKey = key;
+    sourceStamp = stamp;
+    base = loaded;
+    publish();
+    return true;
+  }
+
+  /*
+   * Returns the name of the backend the dictionary is loaded with, a persisted
+   * one being reported as stored once reopened.
+   */
+  private String backend(final Path path) {
+    if (sharded) {
+      return "sharded";
+    }
+    if (path != null) {
+      return "mapped";
+    }
+    if (compiled) {
+      return directMemory ? "direct" : "flat";
+    }
+    if (persistent) {
+      return "persisted";
+    }
+    if (fst) {
+      return "fst";
+    }
+    return directMemory ? "direct" : "heap";
+  }
 
-      final String word = parts[wordPos];
+  /*
+   * Opens a sharded dictionary, its shards being loaded on demand from the
+   * directory of the manifest.
+   */
+  private LemmaDictionary openSharded(final ResourceLoader resourceLoader, final Path path, final String manifest,
+      final byte[][] contents) throws IOException {
+    final long maxBytes = maxShardMemoryMB * 1024L * 1024L;
+    if (path != null) {
+      return ShardedLemmaDictionary.open(path, maxBytes, directMemory);
+    }
+    final String dir = manifest.substring(0, manifest.lastIndexOf('/') + 1);
+    return ShardedLemmaDictionary.open(ByteBuffer.wrap(contents[0]), name -> {
+      try (InputStream inputStream = resourceLoader.openResource(dir + name)) {
+        return FlatLemmaDictionary.read(inputStream, directMemory);
+      }
+    }, maxBytes);
+  }
 
-      // Skip words which do not meet the threshold:
-      if (word.length() <= minLength) {
-        continue;
+  /*
+   * Returns the file this factory persists its dictionary to, named after the
+   * resources and the parsing parameters, so that the factories of a core
+   * parsing them differently keep their own.
+   */
+  private Path storePath(final ResourceLoader resourceLoader) {
+    final CRC32 crc = new CRC32();
+    crc.update(newBuilder().metadata().toString().getBytes(StandardCharsets.UTF_8));
+    final String name = dictionaries.replaceAll("[^\\w.-]", "_") + "-" + Long.toHexString(crc.getValue())
+        + FlatLemmaDictionary.EXTENSION;
+    if (persistDir != null) {
+      final Path dir = Paths.get(persistDir);
+      if (dir.isAbsolute() || !(resourceLoader instanceof SolrResourceLoader)) {
+        return dir.resolve(name);
       }
+      return ((SolrResourceLoader) resourceLoader).getInstancePath().resolve(dir).resolve(name);
+    }
+    if (!(resourceLoader instanceof SolrResourceLoader)) {
+      throw new IllegalArgumentException("Parameter " + PARAM_PERSISTENT + " requires that " + PARAM_PERSIST_DIR
+          + " is properly set, or a Solr resource loader");
+    }
+    // next to the index, in the data directory of the core
+    final SolrResourceLoader solrLoader = (SolrResourceLoader) resourceLoader;
+    final String dataDir = solrLoader.getDataDir();
+    return solrLoader.getInstancePath().resolve(dataDir != null ? dataDir : "data").resolve("lemmatizer")
+        .resolve(name);
+  }
 
-      // Skip splitting words and those with a hyphen — they
-      // interfere with tokenizers.
-      if (word.contains(" ") || word.contains("-")) {
-        continue;
+  /*
+   * Returns the key of the resources a dictionary was persisted from, read from
+   * the header of the store, if they had the given sizes and modification
+   * times, or null.
+   */
+  private static String storedKey(final Path store, final String stamp) {
+    if (!Files.isRegularFile(store)) {
+      return null;
+    }
+    try {
+      final Map<String, String> metadata = FlatLemmaDictionary.readMetadata(store);
+      return stamp.equals(metadata.get(STORE_STAMP)) ? metadata.get(STORE_KEY) : null;
+    } catch (IOException e) {
+      // rebuilt once the resources are read
+      return null;
+    }
+  }
+
+  /*
+   * Maps the dictionary persisted by an earlier load, its checksum verified, or
+   * returns null if there is none, or if it was built from other resources or
+   * parameters, or by another version, or is damaged.
+   */
+  private static FlatLemmaDictionary reopen(final Path store, final String key) {
+    if (!Files.isRegularFile(store)) {
+      return null;
+    }
+    try {
+      final FlatLemmaDictionary dictionary = FlatLemmaDictionary.map(store);
+      if (key.equals(dictionary.getMetadata().get(STORE_KEY))) {
+        return dictionary;
       }
+      log.info("Rebuilding dictionary {}, its resources or parameters changed", store);
+    } catch (IOException e) {
+      log.warn("Rebuilding dictionary {}: {}", store, e.getMessage());
+    }
+    return null;
+  }
 
-      // Only include words which belong to the defined word classes
-      String lemma = null;
-      if (wordClasses != null) {
-        for (int i = 0; i < wordClasses.length; i++) {
-          final String wordClass = wordClasses[i];
-          if (parts[wordClassPos].contains(wordClass)) {
-            // add POS-tag for the given word class:
-            lemma = parts[lemmaPos] + "$" + i;
-            break;
-          }
+  /*
+   * Builds the dictionary in the compiled layout, persists it stamped with the
+   * key of its resources, and their sizes and modification times when known,
+   * and maps it. The file is replaced at once, a core
+   * still mapping the former one keeps reading it.
+   */
+  private FlatLemmaDictionary persist(final Path store, final String key, final String stamp, final String[] files,
+      final byte[][] contents, final DictionaryLoadReport report) throws IOException {
+    final LemmaDictionaryBuilder builder = newBuilder();
+    builder.reportTo(report);
+    final List<InputStream> inputStreams = new ArrayList<InputStream>();
+    for (byte[] content : contents) {
+      inputStreams.add(new ByteArrayInputStream(content));
+    }
+    builder.add(Arrays.asList(files), inputStreams, loadThreads);
+    final Map<String, String> metadata = builder.metadata();
+    metadata.put(PARAM_DICTIONARIES, dictionaries);
+    metadata.put(STORE_KEY, key);
+    if (stamp != null) {
+      metadata.put(STORE_STAMP, registryKey(stamp));
+    }
+    final ByteBuffer buffer = builder.buildFlat(metadata);
+    Files.createDirectories(store.getParent());
+    final Path temp = Files.createTempFile(store.getParent(), store.getFileName().toString(), ".tmp");
+    try {
+      try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+        while (buffer.hasRemaining()) {
+          channel.write(buffer);
         }
-      } else {
-        lemma = parts[lemmaPos];
+        channel.force(true);
       }
-      if (lemma == null) {
-        continue;
+      Files.move(temp, store, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+    return FlatLemmaDictionary.map(store);
+  }
+
+  /*
+   * Reads the resources, to be checksummed and parsed from memory.
+   */
+  private static byte[][] read(final ResourceLoader resourceLoader, final String[] files,
+      final DictionaryLoadReport report) throws IOException {
+    final byte[][] contents = new byte[files.length][];
+    for (int i = 0; i < files.length; i++) {
+      final long readStart = System.nanoTime();
+      try (InputStream inputStream = resourceLoader.openResource(files[i])) {
+        contents[i] = FlatLemmaDictionary.readFully(inputStream);
       }
+      report.source(files[i]).read(System.nanoTime() - readStart);
+    }
+    return contents;
+  }
+
+  /*
+   * Returns the managed entries built in the dictionary.
+   */
+  private Map<String, String[]> compacted() {
+    return base instanceof CompactedLemmaDictionary ? ((CompactedLemmaDictionary) base).compacted()
+        : Collections.<String, String[]> emptyMap();
+  }
 
-      Set<String> entry = (Set<String>) unnormalizedWordlist.get(word);
-      if (entry == null) {
-        entry = new LinkedHashSet<String>();
+  /*
+   * Publishes the dictionary with the managed entries it does not include on
+   * top of it.
+   */
+  private void publish() {
+    final Map<String, String[]> compacted = compacted();
+    final Map<String, String[]> entries = new HashMap<String, String[]>();
+    for (Map.Entry<String, String[]> entry : overlay.entrySet()) {
+      if (!Arrays.equals(entry.getValue(), compacted.get(entry.getKey()))) {
+        entries.put(entry.getKey(), entry.getValue());
       }
-      entry.add(lemma);
-      unnormalizedWordlist.put(word, entry);
-    }
-  }
-
-  private void addEntries() {
-    for (Iterator<Map.Entry<String, Set<String>>> entries = unnormalizedWordlist.entrySet()
-        .iterator(); entries.hasNext();) {
-      final Map.Entry<String, Set<String>> entry = entries.next();
-      final Set<String> lemmas = entry.getValue();
-      final String word = entry.getKey();
-
-      // If reduce is defined, make sure that at least one lemma from a defined
-      // word class is added:
-      if (reduceTo != null) {
-        if (lemmas.size() > 1) {
-          // If several lemmas for the same word class are found, use
-          // the shortest:
-          String lemmaToUse = null;
-          for (String wordClass : reduceTo) {
-            final int posTag = Arrays.asList(wordClasses).indexOf(wordClass);
-            for (String lemma : lemmas) {
-              if (lemma.contains("$" + posTag) && !lemma.equals(word + "$" + posTag)) {
-                lemmaToUse = (lemmaToUse != null) ? (lemmaToUse.length() > lemma.length()) ? lemma
-                    : lemmaToUse : lemma;
-              }
-            }
-            if (lemmaToUse != null) {
-              break;
-            }
-          }
-          if (lemmaToUse == null) { // Did not find any matched word classes,
-            // just use the shortest lemma:
-            for (String lemma : lemmas) {
-              lemmaToUse = (lemmaToUse != null) ? (lemmaToUse.length() > lemma.length()) ? lemma
-                  : lemmaToUse : lemma;
-            }
-          }
-          if (lemmaToUse != null) {
-            final String newLemma = (storePosTag) ? lemmaToUse : lemmaToUse.replaceAll("\\$\\d+",
-                "");
-            final String[] newLemmas = { newLemma };
-            normalizedWordlist.put(word, newLemmas);
-          }
-        } else {
-          storeLemmas(lemmas, word);
-        }
-      } else {
-        storeLemmas(lemmas, word);
+    }
+    for (String word : compacted.keySet()) {
+      if (!overlay.containsKey(word)) {
+        // removed since built in, back to the lemmas of the resources
+        entries.put(word, ((CompactedLemmaDictionary) base).overridden(word));
       }
     }
+    dictionary.set(entries.isEmpty() ? base : new OverlayLemmaDictionary(base, entries));
   }
 
-  private void storeLemmas(final Set<String> lemmas, final String word) {
-    if (storePosTag) {
-      final int size = (reduceTo != null) ? 1 : lemmas.size();
-      final String[] newLemmas = lemmas.toArray(new String[size]);
-      normalizedWordlist.put(word, newLemmas);
-    } else {
-      // Exclude entries where the lemma equals the word as long as we
-      // only have one lemma:
-      if (lemmas.size() == 1) {
-        final String newLemma = lemmas.iterator().next().replaceAll("\\$\\d+", "");
-        if (!newLemma.equals(word)) {
-          final String[] newLemmas = { newLemma };
-          normalizedWordlist.put(word, newLemmas);
-        }
-      } else {
-        final Set<String> lemmaList = new HashSet<String>();
-        for (String lemma : lemmas) {
-          final String newLemma = lemma.replaceAll("\\$\\d+", "");
-          if (!newLemma.equals(word)) {
-            lemmaList.add(newLemma);
-          }
-        }
-        if (lemmaList.size() > 0) {
-          final int size = (reduceTo != null) ? 1 : lemmaList.size();
-          final String[] newLemmas = lemmaList.toArray(new String[size]);
-          normalizedWordlist.put(word, newLemmas);
-        }
+  private static String checksum(final Map<String, String[]> entries) {
+    final CRC32 crc = new CRC32();
+    for (Map.Entry<String, String[]> entry : new TreeMap<String, String[]>(entries).entrySet()) {
+      crc.update((entry.getKey() + "\t" + String.join(",", entry.getValue()) + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+    return Long.toHexString(crc.getValue());
+  }
+
+  /**
+   * Releases this factory's reference to its shared dictionary and metrics,
+   * which are freed with their last reference, and stops reloading the
+   * dictionary. Filters already created keep working.
+   */
+  public synchronized void release() {
+    unload();
+    metrics.release(this);
+    for (DictionaryLemmatizerFilterFactory language : languages.values()) {
+      language.release();
+    }
+  }
+
+  /*
+   * Releases the dictionary and stops loading it.
+   */
+  private synchronized void unload() {
+    if (asyncLoader != null) {
+      // a load already running holds the lock, its dictionary is released below
+      asyncLoader.cancel(false);
+      asyncLoader = null;
+    }
+    if (reloader != null) {
+      reloader.cancel();
+      reloader = null;
+    }
+    if (registryKey != null) {
+      DictionaryRegistry.INSTANCE.release(registryKey, this);
+      registryKey = null;
+    }
+    // the next load acquires the dictionary again, even if unchanged
+    sourceKey = null;
+    sourceStamp = null;
+  }
+
+  /**
+   * Returns the cache of fallback stems shared by the created filters, with its
+   * hit ratio, or null if disabled.
+   */
+  public TermCache<char[]> getStemmerCache() {
+    return stemCache;
+  }
+
+  /**
+   * Returns the decompounder shared by the created filters, or null if
+   * disabled.
+   */
+  public Decompounder getDecompounder() {
+    return decompounder;
+  }
+
+  /**
+   * Returns the report of the last load of the dictionary, or null before
+   * {@link #inform}. Loads are also logged, at info level.
+   */
+  public DictionaryLoadReport getLoadReport() {
+    return loadReport;
+  }
+
+  /**
+   * Returns whether the dictionary is loaded, the health of a factory loading
+   * it in the background. Until then, the created filters wait for it, stem
+   * every word with the fallback stemmer or fail, as {@code asyncLoadPolicy}
+   * tells. The dictionaries of all the languages must be loaded.
+   */
+  public boolean isReady() {
+    for (DictionaryLemmatizerFilterFactory language : languages.values()) {
+      if (!language.isReady()) {
+        return false;
       }
     }
+    return dictionary.isReady();
+  }
+
+  /**
+   * Returns why the dictionary failed to load in the background, or null.
+   * Filters waiting for it fail at once.
+   */
+  public Throwable getLoadError() {
+    return dictionary.getFailure();
+  }
+
+  /**
+   * Returns the metrics of the created filters, shared with the factories of
+   * the same metrics name, or of this factory only without {@code metricsName}.
+   */
+  public LemmatizerMetrics getMetrics() {
+    return metrics;
   }
 
   @Override
-  public TokenStream create(TokenStream input) {
-    return new DictionaryLemmatizerFilter(input, normalizedWordlist, fallbackStemmer, fallBackStemmerClassName);
+  public String getName() {
+    return getClass().getSimpleName() + "." + metrics.getName();
   }
 
   @Override
-  public void inform(final ResourceLoader resourceLoader) throws IOException {
-    //this.loader = resourceLoader;
+  public String getVersion() {
+    return getClass().getPackage().getImplementationVersion();
+  }
 
-    final String[] files = dictionaries.split(",");
-    final List<InputStream> dictionaries = new ArrayList<InputStream>();
-    try {
-      for (String file : files) {
-        InputStream inputStream = resourceLoader.openResource(file);
-        if (file.endsWith(".gz")) {
-          inputStream = new GZIPInputStream(inputStream);
-        } else if (file.endsWith(".zip")) {
-          inputStream = new ZipInputStream(inputStream);
-        }
-        dictionaries.add(inputStream);
+  @Override
+  public String getDescription() {
+    return "Dictionary lemmatizer of " + dictionaries;
+  }
+
+  @Override
+  public Category getCategory() {
+    return Category.OTHER;
+  }
+
+  @Override
+  public String getSource() {
+    return null;
+  }
+
+  @Override
+  public URL[] getDocs() {
+    return null;
+  }
+
+  @Override
+  public NamedList<Object> getStatistics() {
+    final NamedList<Object> stats = new SimpleOrderedMap<Object>();
+    stats.add("tokens", metrics.getTokens());
+    stats.add("keywords", metrics.getKeywords());
+    stats.add("hits", metrics.getHits());
+    stats.add("misses", metrics.getMisses());
+    stats.add("hitRatio", metrics.getHitRatio());
+    stats.add("stemmed", metrics.getStemmed());
+    stats.add("stemCacheHitRatio", metrics.getStemCacheHitRatio());
+    stats.add("extraLemmas", metrics.getExtraLemmas());
+    stats.add("extraLemmasPerToken", metrics.getExtraLemmasPerToken());
+    stats.add("decompounded", metrics.getDecompounded());
+    if (decompounder != null && decompounder.getCache() != null) {
+      stats.add("decompoundCacheHitRatio", decompounder.getCache().hitRatio());
+    }
+    final LemmaDictionary current = dictionary.get();
+    // the languages too, as for isReady()
+    stats.add("ready", isReady());
+    final Throwable loadError = dictionary.getFailure();
+    if (loadError != null) {
+      stats.add("loadError", loadError.toString());
+    }
+    stats.add("dictionaryRamBytesUsed", current == null ? 0 : current.ramBytesUsed());
+    stats.add("dictionaryOffHeapBytesUsed", current == null ? 0 : current.offHeapBytesUsed());
+    final LemmaDictionary loaded = base;
+    if (loaded instanceof ShardedLemmaDictionary) {
+      final ShardedLemmaDictionary shards = (ShardedLemmaDictionary) loaded;
+      stats.add("loadedShards", shards.loadedShardCount() + "/" + shards.shardCount());
+      stats.add("shardLoads", shards.getShardLoads());
+      stats.add("shardEvictions", shards.getShardEvictions());
+    }
+    final DictionaryLoadReport report = loadReport;
+    if (report != null) {
+      stats.add("lastLoadMs", report.getTotalNanos() / 1000000);
+      stats.add("lastLoad", report.toString());
+    }
+    for (Map.Entry<String, DictionaryLemmatizerFilterFactory> language : languages.entrySet()) {
+      stats.add(PARAM_LANGUAGES + "." + language.getKey(), language.getValue().getStatistics());
+    }
+    return stats;
+  }
+
+  /**
+   * Returns the dictionary currently used by the created filters, null before
+   * {@link #inform}.
+   */
+  public LemmaDictionary getDictionary() {
+    return dictionary.get();
+  }
+
+  /**
+   * Returns the factory of a language, set up with the parameters of this
+   * factory overridden by the ones suffixed with its name, or null if the
+   * language is not configured.
+   */
+  public DictionaryLemmatizerFilterFactory getLanguage(final String language) {
+    return languages.get(language);
+  }
+
+  /*
+   * Returns the dictionary loaded from the resources, without the managed
+   * entries it does not include.
+   */
+  LemmaDictionary getBaseDictionary() {
+    return base;
+  }
+
+  /*
+   * Returns the configured dictionaries.
+   */
+  String getDictionaries() {
+    return dictionaries;
+  }
+
+  /*
+   * Returns the paths, sizes and modification times of the resources, to tell
+   * whether they changed without reading them, or null when one of them is
+   * not a file, or was modified too recently to tell: a file may then change
+   * again, keeping its size, within the granularity of its modification time.
+   */
+  private static String stamp(final ResourceLoader resourceLoader, final String[] files) throws IOException {
+    final StringBuilder stamp = new StringBuilder();
+    final long settled = System.currentTimeMillis() - STAMP_GRANULARITY_MILLIS;
+    for (String file : files) {
+      final Path path = resolve(resourceLoader, file);
+      if (path == null) {
+        return null;
       }
-      handleStream(dictionaries);
-    } catch (Exception e) {
-      throw new IOException("Unable to load dictionary", e);
-    } finally {
-      IOUtils.closeWhileHandlingException(dictionaries);
-      IOUtils.closeWhileHandlingException(reader);
-      IOUtils.closeWhileHandlingException(br);
+      final long modified = Files.getLastModifiedTime(path).toMillis();
+      if (modified > settled) {
+        return null;
+      }
+      if (stamp.length() > 0) {
+        stamp.append(',');
+      }
+      stamp.append(path.toRealPath()).append('#').append(Files.size(path)).append('#').append(modified);
+    }
+    return stamp.toString();
+  }
+
+  /*
+   * Returns the file a resource is read from when it can be memory mapped, or
+   * null when it has to be read as a stream (classpath, ZooKeeper).
+   */
+  private static Path resolve(final ResourceLoader resourceLoader, final String resource) {
+    Path path = Paths.get(resource);
+    if (!path.isAbsolute()) {
+      if (!(resourceLoader instanceof SolrResourceLoader) || resourceLoader instanceof ZkSolrResourceLoader) {
+        return null;
+      }
+      path = Paths.get(((SolrResourceLoader) resourceLoader).getConfigDir()).resolve(resource);
     }
+    return Files.isRegularFile(path) ? path : null;
   }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,368 @@
+package org.apache.lucene.analysis.lemmatizer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Where the time and memory of a dictionary load went: per source timings and
+ * line counts, with the reason lines were rejected for, then the timings of
+ * the phases building the dictionary out of the accepted lines, and the size
+ * of the result.
+ * <p>
+ * A report is filled by a single load, sources being added in the order they
+ * are read. It is read once the load is over.
+ * </p>
+ */
+public final class DictionaryLoadReport {
+
+  /** Why a dictionary line was not added. */
+  public enum Rejection {
+    /** Comment, or a line without any tab. */
+    COMMENT,
+    /** The word, lemma or word class column is missing. */
+    MISSING_COLUMN,
+    /** The word is <code>minLength</code> chars long or shorter. */
+    MIN_LENGTH,
+    /** The word holds a space or a hyphen, that tokenizers split on. */
+    SPACE_OR_HYPHEN,
+    /** The word class is not one of the <code>wordClasses</code>. */
+    WORD_CLASS
+  }
+
+  private final List<Source> sources = new ArrayList<Source>();
+  private String backend = "";
+  private boolean shared;
+  private long reduceNanos;
+  private long buildNanos;
+  private long totalNanos;
+  private int parsedWords;
+  private int words;
+  private int lemmas;
+  private int lemmaSets;
+  private long ramBytesUsed;
+  private long offHeapBytesUsed;
+
+  /**
+   * Returns the source of the given name, added at the end of the sources if
+   * not reported yet.
+   */
+  synchronized Source source(final String name) {
+    for (Source source : sources) {
+      if (source.name.equals(name)) {
+        return source;
+      }
+    }
+    final Source source = new Source(name);
+    sources.add(source);
+    return source;
+  }
+
+  /** Returns the sources, in the order they were read. */
+  public synchronized List<Source> getSources() {
+    return Collections.unmodifiableList(new ArrayList<Source>(sources));
+  }
+
+  /**
+   * Returns the kind of dictionary built: <code>heap</code>, <code>fst</code>,
+   * <code>direct</code>, or for compiled dictionaries <code>flat</code> when
+   * read on heap and <code>mapped</code> when memory mapped.
+   */
+  public String getBackend() {
+    return backend;
+  }
+
+  /**
+   * Returns whether the dictionary was shared with another factory instead of
+   * being built. Only the resources are reported then.
+   */
+  public boolean isShared() {
+    return shared;
+  }
+
+  /**
+   * Returns the time spent reducing the words with several lemmas, interning
+   * lemmas and indexing the words, in nanoseconds.
+   */
+  public long getReduceNanos() {
+    return reduceNanos;
+  }
+
+  /** Returns the time spent building the final structure, in nanoseconds. */
+  public long getBuildNanos() {
+    return buildNanos;
+  }
+
+  /** Returns the time the whole load took, in nanoseconds. */
+  public long getTotalNanos() {
+    return totalNanos;
+  }
+
+  /** Returns the number of distinct words of the accepted lines. */
+  public int getParsedWords() {
+    return parsedWords;
+  }
+
+  /**
+   * Returns the number of words in the dictionary. Words with themselves as
+   * their only lemma are not stored.
+   */
+  public int getWords() {
+    return words;
+  }
+
+  /** Returns the number of distinct lemmas in the dictionary. */
+  public int getLemmas() {
+    return lemmas;
+  }
+
+  /** Returns the number of distinct sets of lemmas shared by the words. */
+  public int getLemmaSets() {
+    return lemmaSets;
+  }
+
+  /** Returns the estimated heap retained by the dictionary, in bytes. */
+  public long getRamBytesUsed() {
+    return ramBytesUsed;
+  }
+
+  /** Returns the direct or mapped memory of the dictionary, in bytes. */
+  public long getOffHeapBytesUsed() {
+    return offHeapBytesUsed;
+  }
+
+  void backend(final String backend) {
+    this.backend = backend;
+  }
+
+  void shared() {
+    shared = true;
+  }
+
+  void reduced(final long nanos, final int parsedWords) {
+    reduceNanos += nanos;
+    this.parsedWords = parsedWords;
+  }
+
+  void built(final long nanos, final int words, final int lemmas, final int lemmaSets) {
+    buildNanos += nanos;
+    this.words = words;
+    this.lemmas = lemmas;
+    this.lemmaSets = lemmaSets;
+  }
+
+  void loaded(final long nanos, final LemmaDictionary dictionary) {
+    totalNanos = nanos;
+    if (dictionary != null) {
+      if (lemmas == 0) {
+        lemmas = dictionary.lemmaCount();
+      }
+      ramBytesUsed = dictionary.ramBytesUsed();
+      offHeapBytesUsed = dictionary.offHeapBytesUsed();
+    }
+  }
+
+  /**
+   * Returns the report as a single line of <code>key=value</code> pairs,
+   * sources first.
+   */
+  @Override
+  public String toString() {
+    final StringBuilder sb = new StringBuilder();
+    sb.append("backend=").append(backend);
+    if (shared) {
+      sb.append(" shared=true");
+    }
+    sb.append(" totalMs=").append(millis(totalNanos));
+    for (Source source : getSources()) {
+      sb.append(" [").append(source).append(']');
+    }
+    if (!shared) {
+      sb.append(" reduceMs=").append(millis(reduceNanos));
+      sb.append(" buildMs=").append(millis(buildNanos));
+      sb.append(" parsedWords=").append(parsedWords);
+      sb.append(" words=").append(words);
+      sb.append(" lemmas=").append(lemmas);
+      sb.append(" lemmaSets=").append(lemmaSets);
+    }
+    sb.append(" ramBytes=").append(ramBytesUsed);
+    sb.append(" offHeapBytes=").append(offHeapBytesUsed);
+    return sb.toString();
+  }
+
+  private static String millis(final long nanos) {
+    return String.format(Locale.ROOT, "%.1f", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+  }
+
+  /**
+   * Counts and timings of a dictionary file, or of an entry of a zip file.
+   */
+  public static final class Source {
+    private final String name;
+    private long bytes;
+    private long readNanos;
+    private long decodeNanos;
+    private long parseNanos;
+    private long lines;
+    private long accepted;
+    private final long[] rejected = new long[Rejection.values().length];
+
+    Source(final String name) {
+      this.name = name;
+    }
+
+    /**
+     * Returns the name of the file, followed by <code>!</code> and the name of
+     * the entry for zip entries.
+     */
+    public String getName() {
+      return name;
+    }
+
+    /** Returns the number of uncompressed bytes parsed. */
+    public long getBytes() {
+      return bytes;
+    }
+
+    /** Returns the time spent reading the resource, in nanoseconds. */
+    public long getReadNanos() {
+      return readNanos;
+    }
+
+    /**
+     * Returns the time spent uncompressing, or waiting for the bytes to parse,
+     * in nanoseconds.
+     */
+    public long getDecodeNanos() {
+      return decodeNanos;
+    }
+
+    /**
+     * Returns the time spent decoding chars, splitting lines and adding
+     * entries, in nanoseconds.
+     */
+    public long getParseNanos() {
+      return parseNanos;
+    }
+
+    /** Returns the number of lines read. */
+    public long getLines() {
+      return lines;
+    }
+
+    /** Returns the number of lines added to the dictionary. */
+    public long getAccepted() {
+      return accepted;
+    }
+
+    /** Returns the number of lines rejected for the given reason. */
+    public long getRejected(final Rejection reason) {
+      return rejected[reason.ordinal()];
+    }
+
+    void read(final long nanos) {
+      readNanos += nanos;
+    }
+
+    void decoded(final long nanos) {
+      decodeNanos += nanos;
+    }
+
+    void line() {
+      lines++;
+    }
+
+    void accept() {
+      accepted++;
+    }
+
+    void reject(final Rejection reason) {
+      rejected[reason.ordinal()]++;
+    }
+
+    /*
+     * Records the parse of a stream, given the time it took in total.
+     */
+    void parsed(final TimedInputStream stream, final long nanos) {
+      bytes += stream.bytes;
+      decodeNanos += stream.nanos;
+      parseNanos += nanos - stream.nanos;
+    }
+
+    @Override
+    public String toString() {
+      final StringBuilder sb = new StringBuilder();
+      sb.append("source=").append(name);
+      sb.append(" bytes=").append(bytes);
+      sb.append(" readMs=").append(millis(readNanos));
+      sb.append(" decodeMs=").append(millis(decodeNanos));
+      sb.append(" parseMs=").append(millis(parseNanos));
+      sb.append(" lines=").append(lines);
+      sb.append(" accepted=").append(accepted);
+      for (Rejection reason : Rejection.values()) {
+        if (rejected[reason.ordinal()] > 0) {
+          sb.append(" rejected.").append(reason.name().toLowerCase(Locale.ROOT)).append('=').append(
+              rejected[reason.ordinal()]);
+        }
+      }
+      return sb.toString();
+    }
+  }
+
+  /*
+   * Counts the bytes read from a stream and the time spent reading them.
+   */
+  static final class TimedInputStream extends FilterInputStream {
+    private long bytes;
+    private long nanos;
+
+    TimedInputStream(final InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      final long start = System.nanoTime();
+      final int read = super.read();
+      nanos += System.nanoTime() - start;
+      if (read >= 0) {
+        bytes++;
+      }
+      return read;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+      final long start = System.nanoTime();
+      final int read = super.read(b, off, len);
+      nanos += System.nanoTime() - start;
+      if (read > 0) {
+        bytes += read;
+      }
+      return read;
+    }
+  }
+
+}
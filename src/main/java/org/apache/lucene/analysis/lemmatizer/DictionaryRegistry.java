@@ -0,0 +1,174 @@
+package org.apache.lucene.analysis.lemmatizer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Process wide registry of loaded dictionaries, so that all the factories
+ * reading the same resources with the same parameters, in any analyzer of any
+ * core, share a single immutable dictionary.
+ * <p>
+ * Every factory acquiring a dictionary is counted as a reference to it. A
+ * reference ends when the factory releases it, or when the factory itself is
+ * garbage collected, as Solr does not notify analysis factories of core
+ * unloads. The registry forgets a dictionary with its last reference, which
+ * frees its memory once the filters still using it are gone. A dictionary
+ * being loaded is kept until its acquirers return, even if all the references
+ * end meanwhile, so that callers acquiring it then wait for the same load.
+ */
+final class DictionaryRegistry {
+
+  static final DictionaryRegistry INSTANCE = new DictionaryRegistry();
+
+  private final Map<String, Entry> entries = new HashMap<String, Entry>();
+  private final ReferenceQueue<Object> collected = new ReferenceQueue<Object>();
+
+  DictionaryRegistry() {
+  }
+
+  /**
+   * Returns the dictionary registered under the given key, loading it first if
+   * needed, and counts the owner as a reference to it. Concurrent callers
+   * asking for the same key wait for a single load.
+   *
+   * @param key the checksum of the resources and the parameters they are
+   *          parsed with
+   * @param owner the object holding the reference
+   * @param loader loads the dictionary if not registered yet
+   */
+  LemmaDictionary acquire(final String key, final Object owner, final Callable<? extends LemmaDictionary> loader)
+      throws IOException {
+    final Entry entry;
+    synchronized (this) {
+      expunge();
+      Entry existing = entries.get(key);
+      if (existing == null) {
+        existing = new Entry();
+        entries.put(key, existing);
+      }
+      existing.owners.add(new Owner(owner, key, collected));
+      existing.acquirers++;
+      entry = existing;
+    }
+    try {
+      synchronized (entry) {
+        if (entry.dictionary == null) {
+          try {
+            entry.dictionary = loader.call();
+          } catch (Exception e) {
+            release(key, owner);
+            if (e instanceof IOException) {
+              throw (IOException) e;
+            }
+            throw new IOException(e);
+          }
+        }
+        return entry.dictionary;
+      }
+    } finally {
+      synchronized (this) {
+        entry.acquirers--;
+        removeIfUnused(key, entry);
+      }
+    }
+  }
+
+  /**
+   * Ends a reference acquired through {@link #acquire}.
+   */
+  synchronized void release(final String key, final Object owner) {
+    expunge();
+    final Entry entry = entries.get(key);
+    if (entry == null) {
+      return;
+    }
+    for (Iterator<Owner> it = entry.owners.iterator(); it.hasNext();) {
+      if (it.next().get() == owner) {
+        it.remove();
+        break;
+      }
+    }
+    removeIfUnused(key, entry);
+  }
+
+  /**
+   * Returns the number of live references to the dictionary registered under
+   * the given key.
+   */
+  synchronized int references(final String key) {
+    expunge();
+    final Entry entry = entries.get(key);
+    return entry == null ? 0 : entry.owners.size();
+  }
+
+  /**
+   * Returns the number of registered dictionaries.
+   */
+  synchronized int size() {
+    expunge();
+    return entries.size();
+  }
+
+  /*
+   * Drops the references of the owners collected since the last call.
+   */
+  private void expunge() {
+    Owner owner;
+    while ((owner = (Owner) collected.poll()) != null) {
+      final Entry entry = entries.get(owner.key);
+      if (entry != null && entry.owners.remove(owner)) {
+        removeIfUnused(owner.key, entry);
+      }
+    }
+  }
+
+  /*
+   * Forgets an entry without references, unless it is being acquired.
+   */
+  private void removeIfUnused(final String key, final Entry entry) {
+    if (entry.owners.isEmpty() && entry.acquirers == 0 && entries.get(key) == entry) {
+      entries.remove(key);
+    }
+  }
+
+  private static final class Entry {
+    private final List<Owner> owners = new ArrayList<Owner>();
+    // callers of acquire not returned yet, guarded by the registry
+    private int acquirers;
+    private LemmaDictionary dictionary;
+  }
+
+  private static final class Owner extends WeakReference<Object> {
+    private final String key;
+
+    Owner(final Object owner, final String key, final ReferenceQueue<Object> queue) {
+      super(owner, queue);
+      this.key = key;
+    }
+  }
+
+}
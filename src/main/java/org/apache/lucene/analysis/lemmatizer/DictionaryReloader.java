@@ -0,0 +1,149 @@
+package org.apache.lucene.analysis.lemmatizer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.lucene.analysis.util.ResourceLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Polls the dictionaries of factories for changes and reloads them in the
+ * background. The polls of all the factories are scheduled on a single daemon
+ * thread, which hands every poll over to the loading threads, so that a slow
+ * checksum or parse only delays the reload of its own factory. A poll is
+ * skipped while the previous one of the factory still runs. The filters keep
+ * using the previous dictionary until the new one is published.
+ * <p>
+ * Dictionaries can also be loaded for the first time in the background, so
+ * that cores do not wait for them, on daemon threads of their own: cores
+ * starting together load their dictionaries in parallel.
+ * </p>
+ */
+final class DictionaryReloader implements Runnable {
+
+  private static final Logger log = LoggerFactory.getLogger(DictionaryReloader.class);
+
+  private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(
+      runnable -> {
+        final Thread thread = new Thread(runnable, "lemmatizer-reload");
+        thread.setDaemon(true);
+        return thread;
+      });
+
+  private static final ExecutorService LOADER = Executors.newCachedThreadPool(runnable -> {
+    final Thread thread = new Thread(runnable, "lemmatizer-load");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  // factories are not told about core unloads, polling stops once either is
+  // collected: the loader references its core
+  private final WeakReference<DictionaryLemmatizerFilterFactory> factory;
+  private final WeakReference<ResourceLoader> resourceLoader;
+  private final AtomicBoolean polling = new AtomicBoolean();
+  private volatile ScheduledFuture<?> future;
+
+  private DictionaryReloader(final DictionaryLemmatizerFilterFactory factory, final ResourceLoader resourceLoader) {
+    this.factory = new WeakReference<DictionaryLemmatizerFilterFactory>(factory);
+    this.resourceLoader = new WeakReference<ResourceLoader>(resourceLoader);
+  }
+
+  /**
+   * Starts polling the dictionaries of a factory. Files are only read again
+   * when their size or modification time changed, other resources on every
+   * poll.
+   * 
+   * @param interval seconds between two polls
+   */
+  static DictionaryReloader schedule(final DictionaryLemmatizerFilterFactory factory,
+      final ResourceLoader resourceLoader, final long interval) {
+    final DictionaryReloader reloader = new DictionaryReloader(factory, resourceLoader);
+    reloader.future = EXECUTOR.scheduleWithFixedDelay(reloader, interval, interval, TimeUnit.SECONDS);
+    return reloader;
+  }
+
+  /**
+   * Loads the dictionaries of a factory in the background. A failure is
+   * recorded by the holder of the factory, which is published to, and logged.
+   */
+  static Future<?> load(final DictionaryLemmatizerFilterFactory factory, final ResourceLoader resourceLoader,
+      final DictionaryHolder holder) {
+    return LOADER.submit(() -> {
+      try {
+        factory.refresh(resourceLoader);
+      } catch (Throwable t) {
+        // errors too, such as running out of memory, or filters would wait
+        // for the dictionary until their timeout
+        holder.fail(t);
+        log.error("Unable to load lemmatizer dictionaries " + factory.getDictionaries(), t);
+        if (t instanceof Error) {
+          throw (Error) t;
+        }
+      }
+    });
+  }
+
+  /** Stops polling. */
+  void cancel() {
+    future.cancel(false);
+  }
+
+  @Override
+  public void run() {
+    final DictionaryLemmatizerFilterFactory current = factory.get();
+    final ResourceLoader loader = resourceLoader.get();
+    if (current == null || loader == null) {
+      cancel();
+      return;
+    }
+    if (polling.compareAndSet(false, true)) {
+      LOADER.execute(() -> {
+        try {
+          reload(current, loader);
+        } finally {
+          polling.set(false);
+        }
+      });
+    }
+  }
+
+  private void reload(final DictionaryLemmatizerFilterFactory factory, final ResourceLoader loader) {
+    if (future.isCancelled()) {
+      // released while waiting for a thread
+      return;
+    }
+    try {
+      if (factory.refresh(loader)) {
+        log.info("Reloaded lemmatizer dictionaries {}", factory.getDictionaries());
+      }
+    } catch (Exception e) {
+      // keep the previous dictionary, and try again on next poll
+      log.error("Unable to reload lemmatizer dictionaries " + factory.getDictionaries(), e);
+    }
+  }
+
+}
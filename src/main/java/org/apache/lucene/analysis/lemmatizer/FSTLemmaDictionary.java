@@ -0,0 +1,215 @@
+package org.apache.lucene.analysis.lemmatizer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.IntsRef;
+import org.apache.lucene.util.IntsRefBuilder;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.fst.Builder;
+import org.apache.lucene.util.fst.FST;
+import org.apache.lucene.util.fst.IntsRefFSTEnum;
+import org.apache.lucene.util.fst.PositiveIntOutputs;
+import org.apache.lucene.util.fst.Util;
+
+/**
+ * {@link LemmaDictionary} compiled into a Lucene {@link FST}. Words are the FST
+ * inputs (one label per UTF-16 code unit) and outputs are ordinals into the
+ * pool of distinct lemma sets, so that the many inflections sharing the same
+ * lemmas also share the same array.
+ */
+public class FSTLemmaDictionary extends LemmaDictionary {
+
+  private final FST<Long> fst;
+  private final int[][] lemmaSets;
+  private final String[] lemmas;
+  private final short[] tags;
+
+  private FSTLemmaDictionary(final FST<Long> fst, final int[][] lemmaSets, final String[] lemmas,
+      final short[] tags) {
+    this.fst = fst;
+    this.lemmaSets = lemmaSets;
+    this.lemmas = lemmas;
+    this.tags = tags;
+  }
+
+  /**
+   * Compiles the provided word list into a new FSTLemmaDictionary.
+   * 
+   * @param wordlist a Map containing all the words with the ordinal of their
+   *          lemma set
+   * @param lemmaSets the sets of lemma ids, by ordinal
+   * @param lemmas the lemmas, by id
+   */
+  public static FSTLemmaDictionary build(final Map<String, Integer> wordlist, final int[][] lemmaSets,
+      final String[] lemmas) throws IOException {
+    return build(wordlist, lemmaSets, lemmas, null);
+  }
+
+  /**
+   * Compiles the provided word list into a new FSTLemmaDictionary with tagged
+   * lemmas.
+   * 
+   * @param wordlist a Map containing all the words with the ordinal of their
+   *          lemma set
+   * @param lemmaSets the sets of lemma ids, by ordinal
+   * @param lemmas the lemmas, by id
+   * @param tags the tags of the lemmas, by id, -1 for the lemmas not tagged,
+   *          or null if none is
+   */
+  public static FSTLemmaDictionary build(final Map<String, Integer> wordlist, final int[][] lemmaSets,
+      final String[] lemmas, final short[] tags) throws IOException {
+    final String[] words = wordlist.keySet().toArray(new String[wordlist.size()]);
+    // FST inputs must be added in order, String order is UTF-16 code unit order
+    Arrays.sort(words);
+
+    final PositiveIntOutputs outputs = PositiveIntOutputs.getSingleton();
+    final Builder<Long> builder = new Builder<Long>(FST.INPUT_TYPE.BYTE2, outputs);
+    final IntsRefBuilder scratch = new IntsRefBuilder();
+    for (String word : words) {
+      final int ordinal = wordlist.get(word);
+      final Long output = (ordinal == 0) ? outputs.getNoOutput() : Long.valueOf(ordinal);
+      builder.add(Util.toUTF16(word, scratch), output);
+    }
+    return new FSTLemmaDictionary(builder.finish(), lemmaSets, lemmas, tags);
+  }
+
+  @Override
+  public Reader getReader() {
+    if (fst == null) { // empty dictionary
+      return new Reader() {
+        @Override
+        public int lookup(final char[] buffer, final int offset, final int length) {
+          return 0;
+        }
+
+        @Override
+        public int[] lemmaIds() {
+          return null;
+        }
+      };
+    }
+    return new FSTReader();
+  }
+
+  @Override
+  public void visitWords(final WordVisitor visitor) {
+    if (fst == null) { // empty dictionary
+      return;
+    }
+    final IntsRefFSTEnum<Long> words = new IntsRefFSTEnum<Long>(fst);
+    char[] word = new char[32];
+    try {
+      IntsRefFSTEnum.InputOutput<Long> next;
+      while ((next = words.next()) != null) {
+        final IntsRef input = next.input;
+        word = ArrayUtil.grow(word, input.length);
+        for (int i = 0; i < input.length; i++) {
+          word[i] = (char) input.ints[input.offset + i];
+        }
+        final int[] ids = lemmaSets[next.output.intValue()];
+        visitor.word(word, 0, input.length, ids, ids.length);
+      }
+    } catch (IOException bogus) {
+      // the FST is on heap
+      throw new RuntimeException(bogus);
+    }
+  }
+
+  @Override
+  public int lemmaCount() {
+    return lemmas.length;
+  }
+
+  @Override
+  public String lemma(final int id) {
+    return tags == null ? lemmas[id] : tagged(lemmas[id], tags[id]);
+  }
+
+  @Override
+  public int lemmaTag(final int id) {
+    return tags == null ? -1 : tags[id];
+  }
+
+  @Override
+  public void copyLemma(final int id, final CharTermAttribute termAtt) {
+    termAtt.setEmpty().append(lemmas[id]);
+    if (tags != null && tags[id] >= 0) {
+      appendTag(termAtt, tags[id]);
+    }
+  }
+
+  @Override
+  public void copyBareLemma(final int id, final CharTermAttribute termAtt) {
+    termAtt.setEmpty().append(lemmas[id]);
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    long size = (fst == null) ? 0 : fst.ramBytesUsed();
+    size += RamUsageEstimator.shallowSizeOf(lemmaSets);
+    for (int[] set : lemmaSets) {
+      size += RamUsageEstimator.sizeOf(set);
+    }
+    if (tags != null) {
+      size += RamUsageEstimator.sizeOf(tags);
+    }
+    return size + sizeOf(lemmas) + getWordFilter().ramBytesUsed();
+  }
+
+  /** Walks the FST with reused arc and bytes reader. */
+  private final class FSTReader extends Reader {
+    private final FST.Arc<Long> arc = new FST.Arc<Long>();
+    private final FST.BytesReader fstReader = fst.getBytesReader();
+    private int[] ids;
+
+    @Override
+    public int lookup(final char[] buffer, final int offset, final int length) {
+      fst.getFirstArc(arc);
+      long ordinal = 0;
+      try {
+        for (int i = offset; i < offset + length; i++) {
+          if (fst.findTargetArc(buffer[i], arc, arc, fstReader) == null) {
+            return 0;
+          }
+          ordinal += arc.output;
+        }
+      } catch (IOException bogus) {
+        // the FST is on heap
+        throw new RuntimeException(bogus);
+      }
+      if (!arc.isFinal()) {
+        return 0;
+      }
+      ordinal += arc.nextFinalOutput;
+      ids = lemmaSets[(int) ordinal];
+      return ids.length;
+    }
+
+    @Override
+    public int[] lemmaIds() {
+      return ids;
+    }
+  }
+
+}
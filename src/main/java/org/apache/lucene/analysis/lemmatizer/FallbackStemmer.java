@@ -0,0 +1,40 @@
+package org.apache.lucene.analysis.lemmatizer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+
+/**
+ * Stemmer applied by {@link DictionaryLemmatizerFilter} to the terms missing
+ * from its dictionary.
+ * <p>
+ * Implementations may be stateful: each filter gets its own instance and uses
+ * it from a single thread. See {@link FallbackStemmers} for the adapters of the
+ * Lucene stemmers.
+ * </p>
+ */
+public interface FallbackStemmer {
+
+  /**
+   * Stems the term in place. The term buffer may be grown, the term length is
+   * updated: stemmers such as Snowball or GermanStemmer may lengthen the term,
+   * which a bare char buffer and length could not hold.
+   */
+  void stem(CharTermAttribute termAtt);
+
+}
@@ -0,0 +1,211 @@
+package org.apache.lucene.analysis.lemmatizer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.apache.lucene.analysis.ar.ArabicStemmer;
+import org.apache.lucene.analysis.bg.BulgarianStemmer;
+import org.apache.lucene.analysis.ckb.SoraniStemmer;
+import org.apache.lucene.analysis.cz.CzechStemmer;
+import org.apache.lucene.analysis.de.GermanLightStemmer;
+import org.apache.lucene.analysis.de.GermanMinimalStemmer;
+import org.apache.lucene.analysis.de.GermanStemmer;
+import org.apache.lucene.analysis.el.GreekStemmer;
+import org.apache.lucene.analysis.en.EnglishMinimalStemmer;
+import org.apache.lucene.analysis.es.SpanishLightStemmer;
+import org.apache.lucene.analysis.fi.FinnishLightStemmer;
+import org.apache.lucene.analysis.fr.FrenchLightStemmer;
+import org.apache.lucene.analysis.fr.FrenchMinimalStemmer;
+import org.apache.lucene.analysis.gl.GalicianMinimalStemmer;
+import org.apache.lucene.analysis.gl.GalicianStemmer;
+import org.apache.lucene.analysis.hi.HindiStemmer;
+import org.apache.lucene.analysis.hu.HungarianLightStemmer;
+import org.apache.lucene.analysis.id.IndonesianStemmer;
+import org.apache.lucene.analysis.it.ItalianLightStemmer;
+import org.apache.lucene.analysis.lv.LatvianStemmer;
+import org.apache.lucene.analysis.no.NorwegianLightStemmer;
+import org.apache.lucene.analysis.no.NorwegianMinimalStemmer;
+import org.apache.lucene.analysis.pt.PortugueseLightStemmer;
+import org.apache.lucene.analysis.pt.PortugueseMinimalStemmer;
+import org.apache.lucene.analysis.pt.PortugueseStemmer;
+import org.apache.lucene.analysis.ru.RussianLightStemmer;
+import org.apache.lucene.analysis.sv.SwedishLightStemmer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.tartarus.snowball.SnowballProgram;
+
+/**
+ * {@link FallbackStemmer} adapters of the Lucene stemmers, by name.
+ */
+public final class FallbackStemmers {
+
+  // the stemmers shortening the term in its buffer, most of the Lucene ones
+  private static final Map<String, Supplier<BufferStemmer>> IN_PLACE = new HashMap<String, Supplier<BufferStemmer>>();
+
+  static {
+    IN_PLACE.put("ArabicStemmer", () -> new ArabicStemmer()::stem);
+    IN_PLACE.put("BulgarianStemmer", () -> new BulgarianStemmer()::stem);
+    IN_PLACE.put("CzechStemmer", () -> new CzechStemmer()::stem);
+    IN_PLACE.put("EnglishMinimalStemmer", () -> new EnglishMinimalStemmer()::stem);
+    IN_PLACE.put("FinnishLightStemmer", () -> new FinnishLightStemmer()::stem);
+    IN_PLACE.put("FrenchLightStemmer", () -> new FrenchLightStemmer()::stem);
+    IN_PLACE.put("FrenchMinimalStemmer", () -> new FrenchMinimalStemmer()::stem);
+    IN_PLACE.put("GalicianMinimalStemmer", () -> new GalicianMinimalStemmer()::stem);
+    IN_PLACE.put("GalicianStemmer", () -> new GalicianStemmer()::stem);
+    IN_PLACE.put("GermanLightStemmer", () -> new GermanLightStemmer()::stem);
+    IN_PLACE.put("GermanMinimalStemmer", () -> new GermanMinimalStemmer()::stem);
+    IN_PLACE.put("GreekStemmer", () -> new GreekStemmer()::stem);
+    IN_PLACE.put("HindiStemmer", () -> new HindiStemmer()::stem);
+    IN_PLACE.put("HungarianLightStemmer", () -> new HungarianLightStemmer()::stem);
+    IN_PLACE.put("IndonesianStemmer", () -> indonesian(false));
+    IN_PLACE.put("IndonesianLightStemmer", () -> indonesian(true));
+    IN_PLACE.put("ItalianLightStemmer", () -> new ItalianLightStemmer()::stem);
+    IN_PLACE.put("LatvianStemmer", () -> new LatvianStemmer()::stem);
+    IN_PLACE.put("NorwegianLightStemmer", () -> new NorwegianLightStemmer(NorwegianLightStemmer.BOKMAAL
+        | NorwegianLightStemmer.NYNORSK)::stem);
+    IN_PLACE.put("NorwegianMinimalStemmer", () -> new NorwegianMinimalStemmer(NorwegianLightStemmer.BOKMAAL
+        | NorwegianLightStemmer.NYNORSK)::stem);
+    IN_PLACE.put("PortugueseLightStemmer", () -> new PortugueseLightStemmer()::stem);
+    IN_PLACE.put("PortugueseMinimalStemmer", () -> new PortugueseMinimalStemmer()::stem);
+    IN_PLACE.put("PortugueseStemmer", () -> new PortugueseStemmer()::stem);
+    IN_PLACE.put("RussianLightStemmer", () -> new RussianLightStemmer()::stem);
+    IN_PLACE.put("SoraniStemmer", () -> new SoraniStemmer()::stem);
+    IN_PLACE.put("SpanishLightStemmer", () -> new SpanishLightStemmer()::stem);
+    IN_PLACE.put("SwedishLightStemmer", () -> new SwedishLightStemmer()::stem);
+  }
+
+  private FallbackStemmers() {
+  }
+
+  /**
+   * Returns a supplier of new instances of the named stemmer.
+   * 
+   * @param name the simple class name of a Lucene stemmer, or
+   *          <code>SnowballStemmer</code>
+   * @param params the stemmer parameters, only <code>language</code> for the
+   *          Snowball stemmers
+   * @throws IllegalArgumentException if the stemmer is unknown
+   */
+  public static Supplier<FallbackStemmer> forName(final String name, final Map<String, String> params) {
+    final Supplier<BufferStemmer> inPlace = IN_PLACE.get(name);
+    if (inPlace != null) {
+      return () -> {
+        final BufferStemmer stemmer = inPlace.get();
+        return termAtt -> termAtt.setLength(stemmer.stem(termAtt.buffer(), termAtt.length()));
+      };
+    }
+    switch (name) {
+      case "GermanStemmer":
+        return German::new;
+      case "SnowballStemmer":
+        final String language = params.get("language");
+        final Class<? extends SnowballProgram> stemClass;
+        try {
+          stemClass = Class.forName("org.tartarus.snowball.ext." + language + "Stemmer")
+              .asSubclass(SnowballProgram.class);
+        } catch (Exception e) {
+          throw new IllegalArgumentException("Invalid stemmer class specified: " + language, e);
+        }
+        return () -> {
+          try {
+            return new Snowball(stemClass.newInstance());
+          } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("Invalid stemmer class specified: " + language, e);
+          }
+        };
+      default:
+        throw new IllegalArgumentException("Unknown stemmer: " + name);
+    }
+  }
+
+  /*
+   * Returns an adapter of a Lucene stemmer instance, as the filters took before
+   * FallbackStemmer, or null without a stemmer. A new stemmer of the same
+   * class is created, the name only tells IndonesianLightStemmer apart.
+   */
+  static FallbackStemmer forStemmer(final Object stemmer, final String name) {
+    if (stemmer == null) {
+      return null;
+    }
+    if (stemmer instanceof FallbackStemmer) {
+      return (FallbackStemmer) stemmer;
+    }
+    final String className = stemmer.getClass().getSimpleName();
+    if (stemmer instanceof SnowballProgram) {
+      final String language = className.substring(0, className.length() - "Stemmer".length());
+      return forName("SnowballStemmer", Collections.singletonMap("language", language)).get();
+    }
+    return forName("IndonesianLightStemmer".equals(name) ? name : className, Collections
+        .<String, String> emptyMap()).get();
+  }
+
+  /*
+   * Stems a term in its buffer, returning its new length.
+   */
+  private interface BufferStemmer {
+    int stem(char[] buffer, int length);
+  }
+
+  private static BufferStemmer indonesian(final boolean stemDerivational) {
+    final IndonesianStemmer stemmer = new IndonesianStemmer();
+    return (buffer, length) -> stemmer.stem(buffer, length, stemDerivational);
+  }
+
+  /*
+   * Snowball stemmers work on their own buffer, shared with the term as long
+   * as it does not need to grow.
+   */
+  private static final class Snowball implements FallbackStemmer {
+    private final SnowballProgram stemmer;
+
+    Snowball(final SnowballProgram stemmer) {
+      this.stemmer = stemmer;
+    }
+
+    @Override
+    public void stem(final CharTermAttribute termAtt) {
+      final char[] termBuffer = termAtt.buffer();
+      stemmer.setCurrent(termBuffer, termAtt.length());
+      stemmer.stem();
+      final char[] finalTerm = stemmer.getCurrentBuffer();
+      final int newLength = stemmer.getCurrentBufferLength();
+      if (finalTerm != termBuffer) {
+        termAtt.copyBuffer(finalTerm, 0, newLength);
+      } else {
+        termAtt.setLength(newLength);
+      }
+    }
+  }
+
+  /*
+   * The German stemmer only stems strings, through a protected method.
+   */
+  private static final class German extends GermanStemmer implements FallbackStemmer {
+    @Override
+    public void stem(final CharTermAttribute termAtt) {
+      final String stem = stem(termAtt.toString());
+      if (stem != null) {
+        termAtt.setEmpty().append(stem);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,592 @@
+package org.apache.lucene.analysis.lemmatizer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.util.ArrayUtil;
+
+/**
+ * {@link LemmaDictionary} reading a compiled dictionary in place, as written by
+ * {@link DictionaryCompiler}. Nothing is parsed at load time: the sections of
+ * the buffer are used as is through typed views and words are found through
+ * an open addressing hash table stored along with them. The buffer may be on
+ * heap, in direct memory or a memory mapped file, in the last two cases the
+ * dictionary costs nothing on heap and lookups compare chars in place without
+ * creating any object.
+ * <p>
+ * Layout, in little endian order: magic, version, metadata length, metadata
+ * (UTF-8 <code>name=value</code> lines) padded to 4 bytes, the counts of
+ * words, lemmas, lemma sets, pooled lemma ids, hash slots, lemma chars, word
+ * chars and lemma tags, the shortest and longest word lengths, the hash count
+ * and long count of the Bloom filter of the words, then the lemma offsets,
+ * lemma set offsets, lemma set pool, word offsets, word lemma sets and hash
+ * slots as ints, the Bloom filter as longs, the lemma tags as shorts, the lemma
+ * chars and word chars as UTF-16 and finally the CRC32 of everything before it
+ * as a long. Lemma tags are either absent or one per lemma, -1 for the lemmas
+ * not tagged. The Bloom filter may be absent as well, its bits are tested in
+ * place by the {@link WordFilter} of the dictionary.
+ * </p>
+ */
+public class FlatLemmaDictionary extends LemmaDictionary {
+
+  /** File name extension of compiled dictionaries. */
+  public static final String EXTENSION = ".lemdict";
+
+  static final int MAGIC = 0x4C454D44; // "LEMD"
+  static final int VERSION = 3;
+  private static final int FOOTER_LENGTH = 8;
+
+  private final Map<String, String> metadata;
+  private final IntBuffer lemmaOffsets;
+  private final IntBuffer setOffsets;
+  private final IntBuffer setPool;
+  private final IntBuffer wordOffsets;
+  private final IntBuffer wordSets;
+  private final IntBuffer table;
+  private final ShortBuffer tags;
+  private final CharBuffer lemmaChars;
+  private final CharBuffer wordChars;
+  private final int lemmaCount;
+  private final int mask;
+  private final int length;
+  private final boolean offHeap;
+
+  private FlatLemmaDictionary(final ByteBuffer buffer) throws IOException {
+    if (buffer.limit() < 12 + FOOTER_LENGTH || buffer.getInt(0) != MAGIC) {
+      throw new IOException("Not a compiled lemma dictionary");
+    }
+    final int version = buffer.getInt(4);
+    if (version != VERSION) {
+      throw new IOException("Unsupported compiled lemma dictionary version " + version
+          + " (expected " + VERSION + "), the dictionary must be compiled again");
+    }
+    final int checksumPos = buffer.limit() - FOOTER_LENGTH;
+    final CRC32 crc = new CRC32();
+    crc.update(slice(buffer, 0, checksumPos));
+    if (crc.getValue() != buffer.getLong(checksumPos)) {
+      throw new IOException("Checksum mismatch, the compiled lemma dictionary is corrupted");
+    }
+
+    final int metadataLength = buffer.getInt(8);
+    final byte[] metadataBytes = new byte[metadataLength];
+    slice(buffer, 12, metadataLength).get(metadataBytes);
+    metadata = decodeMetadata(metadataBytes);
+    setFolding(WordFolding.of(metadata));
+    final String wordClasses = metadata.get("wordClasses");
+    if (wordClasses != null) {
+      setWordClasses(wordClasses.split(","));
+    }
+
+    int pos = align(12 + metadataLength);
+    final int wordCount = buffer.getInt(pos);
+    lemmaCount = buffer.getInt(pos + 4);
+    final int setCount = buffer.getInt(pos + 8);
+    final int setPoolLength = buffer.getInt(pos + 12);
+    final int tableSize = buffer.getInt(pos + 16);
+    final int lemmaCharsLength = buffer.getInt(pos + 20);
+    final int wordCharsLength = buffer.getInt(pos + 24);
+    final int tagCount = buffer.getInt(pos + 28);
+    final int minWordLength = buffer.getInt(pos + 32);
+    final int maxWordLength = buffer.getInt(pos + 36);
+    final int filterHashCount = buffer.getInt(pos + 40);
+    final int filterLength = buffer.getInt(pos + 44);
+    pos += 48;
+    lemmaOffsets = slice(buffer, pos, 4 * (lemmaCount + 1)).asIntBuffer();
+    pos += 4 * (lemmaCount + 1);
+    setOffsets = slice(buffer, pos, 4 * (setCount + 1)).asIntBuffer();
+    pos += 4 * (setCount + 1);
+    setPool = slice(buffer, pos, 4 * setPoolLength).asIntBuffer();
+    pos += 4 * setPoolLength;
+    wordOffsets = slice(buffer, pos, 4 * (wordCount + 1)).asIntBuffer();
+    pos += 4 * (wordCount + 1);
+    wordSets = slice(buffer, pos, 4 * wordCount).asIntBuffer();
+    pos += 4 * wordCount;
+    table = slice(buffer, pos, 4 * tableSize).asIntBuffer();
+    pos += 4 * tableSize;
+    setWordFilter(new WordFilter(minWordLength, maxWordLength, filterHashCount, filterLength == 0 ? null : slice(
+        buffer, pos, 8 * filterLength).asLongBuffer()));
+    pos += 8 * filterLength;
+    tags = tagCount == 0 ? null : slice(buffer, pos, 2 * tagCount).asShortBuffer();
+    pos += 2 * tagCount;
+    lemmaChars = slice(buffer, pos, 2 * lemmaCharsLength).asCharBuffer();
+    pos += 2 * lemmaCharsLength;
+    wordChars = slice(buffer, pos, 2 * wordCharsLength).asCharBuffer();
+    pos += 2 * wordCharsLength;
+    if (pos != checksumPos) {
+      throw new IOException("Truncated compiled lemma dictionary");
+    }
+    mask = tableSize - 1;
+    length = buffer.limit();
+    offHeap = buffer.isDirect();
+  }
+
+  /**
+   * Opens a compiled dictionary held in the provided buffer, from its position
+   * to its limit. The buffer must not be modified afterwards.
+   */
+  public static FlatLemmaDictionary open(final ByteBuffer buffer) throws IOException {
+    return new FlatLemmaDictionary(buffer.slice().order(ByteOrder.LITTLE_ENDIAN));
+  }
+
+  /**
+   * Reads a compiled dictionary fully into memory. The stream is not closed.
+   * 
+   * @param inputStream the compiled dictionary
+   * @param direct whether to copy the dictionary out of the heap, into direct
+   *          memory
+   */
+  public static FlatLemmaDictionary read(final InputStream inputStream, final boolean direct) throws IOException {
+    return open(readFully(inputStream), direct);
+  }
+
+  /**
+   * Opens a compiled dictionary held in a byte array.
+   * 
+   * @param bytes the compiled dictionary
+   * @param direct whether to copy the dictionary out of the heap, into direct
+   *          memory
+   */
+  public static FlatLemmaDictionary open(final byte[] bytes, final boolean direct) throws IOException {
+    if (direct) {
+      final ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+      buffer.put(bytes);
+      ((Buffer) buffer).flip();
+      return open(buffer);
+    }
+    return open(ByteBuffer.wrap(bytes));
+  }
+
+  /*
+   * Reads a stream to its end, without closing it.
+   */
+  static byte[] readFully(final InputStream inputStream) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 16);
+    final byte[] chunk = new byte[1 << 16];
+    int read;
+    while ((read = inputStream.read(chunk)) != -1) {
+      bytes.write(chunk, 0, read);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Memory maps a compiled dictionary file, read only. Pages are loaded by the
+   * operating system on demand and shared by all the processes mapping the
+   * file.
+   */
+  public static FlatLemmaDictionary map(final Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      // the mapping stays valid once the channel is closed
+      return open(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  /*
+   * Reads the metadata of a compiled dictionary file from its header only,
+   * without verifying the checksum of the file.
+   */
+  static Map<String, String> readMetadata(final Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      final ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+      readFully(channel, header, 0);
+      if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+        throw new IOException("Not a compiled lemma dictionary of version " + VERSION);
+      }
+      final int metadataLength = header.getInt(8);
+      if (metadataLength < 0 || 12L + metadataLength + FOOTER_LENGTH > channel.size()) {
+        throw new IOException("Truncated compiled lemma dictionary");
+      }
+      final ByteBuffer metadata = ByteBuffer.allocate(metadataLength);
+      readFully(channel, metadata, 12);
+      return decodeMetadata(metadata.array());
+    }
+  }
+
+  private static void readFully(final FileChannel channel, final ByteBuffer buffer, final long position)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new IOException("Truncated compiled lemma dictionary");
+      }
+    }
+  }
+
+  /**
+   * Returns the metadata recorded when the dictionary was compiled, such as its
+   * parsing parameters.
+   */
+  public Map<String, String> getMetadata() {
+    return metadata;
+  }
+
+  @Override
+  public Reader getReader() {
+    return new FlatReader();
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    return offHeap ? 0 : length;
+  }
+
+  /**
+   * Returns the size of the dictionary when held in direct memory or memory
+   * mapped. Mapped pages only take memory once read, in the page cache.
+   */
+  @Override
+  public long offHeapBytesUsed() {
+    return offHeap ? length : 0;
+  }
+
+  @Override
+  public int lemmaCount() {
+    return lemmaCount;
+  }
+
+  @Override
+  public String lemma(final int id) {
+    final int start = lemmaOffsets.get(id);
+    final char[] chars = new char[lemmaOffsets.get(id + 1) - start];
+    for (int i = 0; i < chars.length; i++) {
+      chars[i] = lemmaChars.get(start + i);
+    }
+    return tagged(new String(chars), lemmaTag(id));
+  }
+
+  @Override
+  public int lemmaTag(final int id) {
+    return tags == null ? -1 : tags.get(id);
+  }
+
+  @Override
+  public void visitWords(final WordVisitor visitor) {
+    final int wordCount = wordSets.capacity();
+    char[] word = new char[32];
+    int[] ids = new int[4];
+    for (int w = 0; w < wordCount; w++) {
+      final int start = wordOffsets.get(w);
+      final int length = wordOffsets.get(w + 1) - start;
+      word = ArrayUtil.grow(word, length);
+      for (int i = 0; i < length; i++) {
+        word[i] = wordChars.get(start + i);
+      }
+      final int set = wordSets.get(w);
+      final int setStart = setOffsets.get(set);
+      final int count = setOffsets.get(set + 1) - setStart;
+      ids = ArrayUtil.grow(ids, count);
+      for (int i = 0; i < count; i++) {
+        ids[i] = setPool.get(setStart + i);
+      }
+      visitor.word(word, 0, length, ids, count);
+    }
+  }
+
+  @Override
+  public void copyLemma(final int id, final CharTermAttribute termAtt) {
+    copyBareLemma(id, termAtt);
+    final int tag = lemmaTag(id);
+    if (tag >= 0) {
+      appendTag(termAtt, tag);
+    }
+  }
+
+  @Override
+  public void copyBareLemma(final int id, final CharTermAttribute termAtt) {
+    final int start = lemmaOffsets.get(id);
+    final int length = lemmaOffsets.get(id + 1) - start;
+    final char[] chars = termAtt.resizeBuffer(length);
+    for (int i = 0; i < length; i++) {
+      chars[i] = lemmaChars.get(start + i);
+    }
+    termAtt.setLength(length);
+  }
+
+  /*
+   * Returns the index of the word held in buffer[offset..offset+length), or -1
+   * if it is unknown, comparing its chars in place.
+   */
+  int find(final char[] buffer, final int offset, final int length) {
+    int slot = hash(buffer, offset, length) & mask;
+    int word;
+    while ((word = table.get(slot)) >= 0) {
+      if (matches(word, buffer, offset, length)) {
+        return word;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  /*
+   * Returns the number of lemmas of the word with the provided index.
+   */
+  int lemmaSetSize(final int word) {
+    final int set = wordSets.get(word);
+    return setOffsets.get(set + 1) - setOffsets.get(set);
+  }
+
+  /*
+   * Copies the lemma ids of the word with the provided index, plus a base, to
+   * an array large enough to hold them.
+   */
+  void copyLemmaIds(final int word, final int[] ids, final int base) {
+    final int set = wordSets.get(word);
+    final int start = setOffsets.get(set);
+    final int count = setOffsets.get(set + 1) - start;
+    for (int i = 0; i < count; i++) {
+      ids[i] = base + setPool.get(start + i);
+    }
+  }
+
+  private boolean matches(final int word, final char[] buffer, final int offset, final int length) {
+    final int start = wordOffsets.get(word);
+    if (wordOffsets.get(word + 1) - start != length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (wordChars.get(start + i) != buffer[offset + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Finds words in place and copies lemma ids to a scratch array. */
+  private final class FlatReader extends Reader {
+    private int[] ids = new int[4];
+
+    @Override
+    public int lookup(final char[] buffer, final int offset, final int length) {
+      final int word = find(buffer, offset, length);
+      if (word < 0) {
+        return 0;
+      }
+      final int count = lemmaSetSize(word);
+      if (ids.length < count) {
+        ids = ArrayUtil.grow(ids, count);
+      }
+      copyLemmaIds(word, ids, 0);
+      return count;
+    }
+
+    @Override
+    public int[] lemmaIds() {
+      return ids;
+    }
+  }
+
+  /**
+   * Serializes a normalized word list into a new buffer, ready to be written
+   * or opened.
+   * 
+   * @param wordlist the words with the ordinals of their lemma sets
+   * @param lemmaSets the sets of lemma ids, by ordinal
+   * @param lemmas the lemmas, by id
+   * @param tags the tags of the lemmas, by id, or null if none is tagged
+   * @param filter the filter of the words
+   * @param metadata free form metadata to record
+   * @param direct whether to allocate the buffer in direct memory
+   */
+  static ByteBuffer write(final Map<String, Integer> wordlist, final int[][] lemmaSets,
+      final String[] lemmas, final short[] tags, final WordFilter filter, final Map<String, String> metadata,
+      final boolean direct) {
+    // sorted for a deterministic output
+    final String[] words = wordlist.keySet().toArray(new String[wordlist.size()]);
+    Arrays.sort(words);
+    int setPoolLength = 0;
+    for (int[] set : lemmaSets) {
+      setPoolLength += set.length;
+    }
+    int lemmaCharsLength = 0;
+    for (String lemma : lemmas) {
+      lemmaCharsLength += lemma.length();
+    }
+    int wordCharsLength = 0;
+    for (String word : words) {
+      wordCharsLength += word.length();
+    }
+    // keep the load factor under 0.75 so that probing stays short and always
+    // ends on an empty slot
+    int tableSize = 2;
+    while (tableSize * 3 / 4 <= words.length) {
+      tableSize <<= 1;
+    }
+    final byte[] metadataBytes = encodeMetadata(metadata);
+    final int tagCount = tags == null ? 0 : tags.length;
+    final LongBuffer filterBits = filter.getBits();
+    final int filterLength = filterBits == null ? 0 : filterBits.capacity();
+
+    final int length = align(12 + metadataBytes.length) + 48
+        + 4 * (lemmas.length + 1 + lemmaSets.length + 1 + setPoolLength + words.length + 1 + words.length + tableSize)
+        + 8 * filterLength + 2 * (tagCount + lemmaCharsLength + wordCharsLength) + FOOTER_LENGTH;
+    final ByteBuffer buffer = (direct ? ByteBuffer.allocateDirect(length) : ByteBuffer.allocate(length))
+        .order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putInt(MAGIC);
+    buffer.putInt(VERSION);
+    buffer.putInt(metadataBytes.length);
+    buffer.put(metadataBytes);
+    while (buffer.position() % 4 != 0) {
+      buffer.put((byte) 0);
+    }
+    buffer.putInt(words.length);
+    buffer.putInt(lemmas.length);
+    buffer.putInt(lemmaSets.length);
+    buffer.putInt(setPoolLength);
+    buffer.putInt(tableSize);
+    buffer.putInt(lemmaCharsLength);
+    buffer.putInt(wordCharsLength);
+    buffer.putInt(tagCount);
+    buffer.putInt(filter.getMinLength());
+    buffer.putInt(filter.getMaxLength());
+    buffer.putInt(filter.getHashCount());
+    buffer.putInt(filterLength);
+
+    int offset = 0;
+    for (String lemma : lemmas) {
+      buffer.putInt(offset);
+      offset += lemma.length();
+    }
+    buffer.putInt(offset);
+    offset = 0;
+    for (int[] set : lemmaSets) {
+      buffer.putInt(offset);
+      offset += set.length;
+    }
+    buffer.putInt(offset);
+    for (int[] set : lemmaSets) {
+      for (int id : set) {
+        buffer.putInt(id);
+      }
+    }
+    offset = 0;
+    for (String word : words) {
+      buffer.putInt(offset);
+      offset += word.length();
+    }
+    buffer.putInt(offset);
+    for (String word : words) {
+      buffer.putInt(wordlist.get(word));
+    }
+
+    final int[] slots = new int[tableSize];
+    Arrays.fill(slots, -1);
+    for (int i = 0; i < words.length; i++) {
+      final char[] chars = words[i].toCharArray();
+      int slot = hash(chars, 0, chars.length) & (tableSize - 1);
+      while (slots[slot] >= 0) {
+        slot = (slot + 1) & (tableSize - 1);
+      }
+      slots[slot] = i;
+    }
+    for (int slot : slots) {
+      buffer.putInt(slot);
+    }
+
+    for (int i = 0; i < filterLength; i++) {
+      buffer.putLong(filterBits.get(i));
+    }
+    for (int i = 0; i < tagCount; i++) {
+      buffer.putShort(tags[i]);
+    }
+
+    for (String lemma : lemmas) {
+      for (int i = 0; i < lemma.length(); i++) {
+        buffer.putChar(lemma.charAt(i));
+      }
+    }
+    for (String word : words) {
+      for (int i = 0; i < word.length(); i++) {
+        buffer.putChar(word.charAt(i));
+      }
+    }
+
+    final CRC32 crc = new CRC32();
+    crc.update(slice(buffer, 0, buffer.position()));
+    buffer.putLong(crc.getValue());
+    ((Buffer) buffer).flip();
+    return buffer;
+  }
+
+  /** Hashes chars the same way at write and lookup time, whatever the JVM. */
+  static int hash(final char[] buffer, final int offset, final int length) {
+    int h = 0;
+    for (int i = offset; i < offset + length; i++) {
+      h = 31 * h + buffer[i];
+    }
+    // murmur3 finalizer, spreads the bits for the power of two table
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return h;
+  }
+
+  private static int align(final int pos) {
+    return (pos + 3) & ~3;
+  }
+
+  /** Returns a little endian view of buffer[pos..pos+length). */
+  private static ByteBuffer slice(final ByteBuffer buffer, final int pos, final int length) {
+    final ByteBuffer duplicate = buffer.duplicate();
+    // casts keep the Java 8 signatures when compiled by a newer JDK
+    ((Buffer) duplicate).position(pos);
+    ((Buffer) duplicate).limit(pos + length);
+    return duplicate.slice().order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  private static byte[] encodeMetadata(final Map<String, String> metadata) {
+    final StringBuilder sb = new StringBuilder();
+    for (Map.Entry<String, String> entry : metadata.entrySet()) {
+      sb.append(entry.getKey()).append('=').append(entry.getValue()).append('\n');
+    }
+    return sb.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static Map<String, String> decodeMetadata(final byte[] bytes) {
+    final Map<String, String> metadata = new LinkedHashMap<String, String>();
+    for (String line : new String(bytes, StandardCharsets.UTF_8).split("\n")) {
+      final int eq = line.indexOf('=');
+      if (eq > 0) {
+        metadata.put(line.substring(0, eq), line.substring(eq + 1));
+      }
+    }
+    return Collections.unmodifiableMap(metadata);
+  }
+
+}
@@ -0,0 +1,153 @@
+package org.apache.lucene.analysis.lemmatizer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Map;
+
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.util.CharArrayMap;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * {@link LemmaDictionary} kept on heap in a {@link CharArrayMap}, so that
+ * words can be looked up straight from a term buffer without allocating.
+ */
+public class HeapLemmaDictionary extends LemmaDictionary {
+
+  private final CharArrayMap<int[]> wordlist;
+  private final String[] lemmas;
+  private final short[] tags;
+  private long ramBytesUsed = -1;
+
+  /**
+   * Creates a new HeapLemmaDictionary
+   * 
+   * @param wordlist a CharArrayMap containing all the words with the ids of
+   *          their lemmas
+   * @param lemmas the lemmas, by id
+   */
+  public HeapLemmaDictionary(final CharArrayMap<int[]> wordlist, final String[] lemmas) {
+    this(wordlist, lemmas, null);
+  }
+
+  /**
+   * Creates a new HeapLemmaDictionary with tagged lemmas
+   * 
+   * @param wordlist a CharArrayMap containing all the words with the ids of
+   *          their lemmas
+   * @param lemmas the lemmas, by id
+   * @param tags the tags of the lemmas, by id, -1 for the lemmas not tagged,
+   *          or null if none is
+   */
+  public HeapLemmaDictionary(final CharArrayMap<int[]> wordlist, final String[] lemmas, final short[] tags) {
+    this.wordlist = wordlist;
+    this.lemmas = lemmas;
+    this.tags = tags;
+  }
+
+  /**
+   * Creates a new HeapLemmaDictionary holding the words of the provided map.
+   * 
+   * @param wordlist a Map containing all the words with their lemmas
+   */
+  public static HeapLemmaDictionary copyOf(final Map<String, String[]> wordlist) {
+    final LemmaSetPool pool = new LemmaSetPool();
+    final CharArrayMap<int[]> map = new CharArrayMap<int[]>(wordlist.size(), false);
+    for (Map.Entry<String, String[]> entry : wordlist.entrySet()) {
+      map.put(entry.getKey(), pool.set(pool.intern(entry.getValue())));
+    }
+    final HeapLemmaDictionary dictionary = new HeapLemmaDictionary(map, pool.lemmas());
+    final WordFilter.Builder filter = new WordFilter.Builder(0, wordlist.size());
+    for (String word : wordlist.keySet()) {
+      filter.add(word);
+    }
+    dictionary.setWordFilter(filter.build());
+    return dictionary;
+  }
+
+  @Override
+  public Reader getReader() {
+    return new Reader() {
+      private int[] ids;
+
+      @Override
+      public int lookup(final char[] buffer, final int offset, final int length) {
+        final int[] found = wordlist.get(buffer, offset, length);
+        if (found == null) {
+          return 0;
+        }
+        ids = found;
+        return found.length;
+      }
+
+      @Override
+      public int[] lemmaIds() {
+        return ids;
+      }
+    };
+  }
+
+  @Override
+  public void visitWords(final WordVisitor visitor) {
+    final CharArrayMap<int[]>.EntryIterator it = wordlist.entrySet().iterator();
+    while (it.hasNext()) {
+      final char[] word = it.nextKey();
+      final int[] ids = it.currentValue();
+      visitor.word(word, 0, word.length, ids, ids.length);
+    }
+  }
+
+  @Override
+  public int lemmaCount() {
+    return lemmas.length;
+  }
+
+  @Override
+  public String lemma(final int id) {
+    return tags == null ? lemmas[id] : tagged(lemmas[id], tags[id]);
+  }
+
+  @Override
+  public int lemmaTag(final int id) {
+    return tags == null ? -1 : tags[id];
+  }
+
+  @Override
+  public void copyLemma(final int id, final CharTermAttribute termAtt) {
+    termAtt.setEmpty().append(lemmas[id]);
+    if (tags != null && tags[id] >= 0) {
+      appendTag(termAtt, tags[id]);
+    }
+  }
+
+  @Override
+  public void copyBareLemma(final int id, final CharTermAttribute termAtt) {
+    termAtt.setEmpty().append(lemmas[id]);
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    // immutable, estimated once; a race only estimates twice
+    if (ramBytesUsed < 0) {
+      ramBytesUsed = sizeOf(wordlist) + sizeOf(lemmas) + (tags == null ? 0 : RamUsageEstimator.sizeOf(
+          tags)) + getWordFilter().ramBytesUsed();
+    }
+    return ramBytesUsed;
+  }
+
+}
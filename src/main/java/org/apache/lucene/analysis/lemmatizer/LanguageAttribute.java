@@ -0,0 +1,36 @@
+package org.apache.lucene.analysis.lemmatizer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.lucene.util.Attribute;
+
+/**
+ * The language of the text of a token stream, which
+ * {@link DictionaryLemmatizerFilter} picks its dictionary by. Set by
+ * {@link LanguageMarkerFilter} out of a marker an update processor prepends
+ * to the text, or by any tokenizer or filter knowing the language.
+ */
+public interface LanguageAttribute extends Attribute {
+
+  /** Returns the language of the text, or null if unknown. */
+  String getLanguage();
+
+  /** Sets the language of the text, null if unknown. */
+  void setLanguage(String language);
+
+}
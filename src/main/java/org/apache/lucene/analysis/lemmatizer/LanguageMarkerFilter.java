@@ -0,0 +1,101 @@
+package org.apache.lucene.analysis.lemmatizer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+
+/**
+ * A {@link TokenFilter} reading the language of the text from a marker token
+ * at its start, such as <code>__lang_no</code>, prepended to the field value
+ * by an update processor. The marker is dropped and the
+ * {@link LanguageAttribute} of every other token set to the language, for
+ * {@link DictionaryLemmatizerFilter} to pick its dictionary. Texts without a
+ * marker have no language.
+ * <p>
+ * The marker must come out of the tokenizer as a single token: the default
+ * prefix, made of underscores and letters, is kept whole by the standard and
+ * whitespace tokenizers.
+ * </p>
+ */
+public final class LanguageMarkerFilter extends TokenFilter {
+
+  /** Default prefix of the marker, followed by the language. */
+  public static final String DEFAULT_PREFIX = "__lang_";
+
+  private final char[] prefix;
+  private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+  private final LanguageAttribute languageAttr = addAttribute(LanguageAttribute.class);
+  private String language;
+  private boolean first = true;
+
+  /**
+   * Creates a LanguageMarkerFilter.
+   *
+   * @param input TokenStream whose first token may be a marker
+   * @param prefix prefix of the marker, followed by the language
+   */
+  public LanguageMarkerFilter(final TokenStream input, final String prefix) {
+    super(input);
+    this.prefix = prefix.toCharArray();
+  }
+
+  @Override
+  public boolean incrementToken() throws IOException {
+    if (!input.incrementToken()) {
+      return false;
+    }
+    if (first) {
+      first = false;
+      if (isMarker()) {
+        // the next token takes the position of the marker
+        language = new String(termAtt.buffer(), prefix.length, termAtt.length() - prefix.length);
+        if (!input.incrementToken()) {
+          return false;
+        }
+      }
+    }
+    // tokenizers clear every attribute on every token
+    languageAttr.setLanguage(language);
+    return true;
+  }
+
+  private boolean isMarker() {
+    if (termAtt.length() <= prefix.length) {
+      return false;
+    }
+    final char[] buffer = termAtt.buffer();
+    for (int i = 0; i < prefix.length; i++) {
+      if (buffer[i] != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public void reset() throws IOException {
+    super.reset();
+    language = null;
+    first = true;
+  }
+
+}
@@ -0,0 +1,55 @@
+package org.apache.lucene.analysis.lemmatizer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Map;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.util.TokenFilterFactory;
+
+/**
+ * Factory for {@link LanguageMarkerFilter}, placed right after the tokenizer:
+ * 
+ * <pre class="prettyprint">
+ * &lt;filter class=&quot;solr.LanguageMarkerFilterFactory&quot; prefix=&quot;__lang_&quot;/&gt;
+ * </pre>
+ */
+public class LanguageMarkerFilterFactory extends TokenFilterFactory {
+
+  private static final String PARAM_PREFIX = "prefix";
+
+  private final String prefix;
+
+  /** Creates a new LanguageMarkerFilterFactory */
+  public LanguageMarkerFilterFactory(final Map<String, String> args) {
+    super(args);
+    prefix = get(args, PARAM_PREFIX, LanguageMarkerFilter.DEFAULT_PREFIX);
+    if (prefix.isEmpty()) {
+      throw new IllegalArgumentException("Parameter " + PARAM_PREFIX + " not properly set");
+    }
+    if (!args.isEmpty()) {
+      throw new IllegalArgumentException("Unknown parameters: " + args);
+    }
+  }
+
+  @Override
+  public TokenStream create(final TokenStream input) {
+    return new LanguageMarkerFilter(input, prefix);
+  }
+
+}
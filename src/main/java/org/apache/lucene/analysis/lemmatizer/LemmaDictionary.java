@@ -0,0 +1,295 @@
+package org.apache.lucene.analysis.lemmatizer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.util.CharArrayMap;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * Read-only mapping from a word to its lemmas, as used by
+ * {@link DictionaryLemmatizer}. Lemmas are interned in a table and identified
+ * by their position in it, words map to sets of lemma ids that are shared by
+ * all the words having the same lemmas. A dictionary is shared by all the
+ * filters of a factory, lookups go through a {@link Reader} obtained for each
+ * consumer.
+ * <p>
+ * Lemmas may be tagged with the index of their word class, a small integer
+ * kept apart from their chars: {@link #lemma(int)} and
+ * {@link #copyLemma(int, CharTermAttribute)} append it to the lemma after a
+ * <code>$</code>, {@link #copyBareLemma(int, CharTermAttribute)} leaves it out
+ * to be output some other way.
+ * </p>
+ * <p>
+ * {@link #ramBytesUsed()} estimates the heap the dictionary retains, and
+ * {@link #offHeapBytesUsed()} the direct or mapped memory it reads from.
+ * </p>
+ */
+public abstract class LemmaDictionary implements Accountable {
+
+  private WordFolding folding = WordFolding.NONE;
+  private String[] wordClasses;
+  private WordFilter wordFilter = WordFilter.ALL;
+  private volatile ReverseLemmaIndex reverseIndex;
+
+  /**
+   * Returns a new {@link Reader} over this dictionary. Readers hold the result
+   * of the last lookup and are not thread-safe: every
+   * {@link DictionaryLemmatizer} holds its own.
+   */
+  public abstract Reader getReader();
+
+  /** Returns the number of distinct lemmas in this dictionary. */
+  public abstract int lemmaCount();
+
+  /**
+   * Returns the lemma with the provided id, followed by <code>$</code> and its
+   * tag if it is tagged.
+   */
+  public abstract String lemma(int id);
+
+  /**
+   * Returns the tag of the lemma with the provided id, the index of its word
+   * class, or -1 if it is not tagged.
+   */
+  public int lemmaTag(final int id) {
+    return -1;
+  }
+
+  /**
+   * Visits every word of the dictionary, folded as it is stored, with the ids
+   * of its lemmas, in no particular order. Words having themselves as only
+   * lemma are not stored.
+   */
+  public abstract void visitWords(WordVisitor visitor);
+
+  /**
+   * Replaces the content of a term attribute with the lemma with the provided
+   * id. Dictionaries not holding their lemmas as strings override it to copy
+   * their chars without allocating.
+   */
+  public void copyLemma(final int id, final CharTermAttribute termAtt) {
+    termAtt.setEmpty().append(lemma(id));
+  }
+
+  /**
+   * Replaces the content of a term attribute with the lemma with the provided
+   * id, without its tag.
+   */
+  public void copyBareLemma(final int id, final CharTermAttribute termAtt) {
+    copyLemma(id, termAtt);
+    final int tag = lemmaTag(id);
+    if (tag >= 0) {
+      termAtt.setLength(termAtt.length() - 1 - Integer.toString(tag).length());
+    }
+  }
+
+  /**
+   * Returns how the words were folded when the dictionary was built, and are
+   * to be folded before being looked up. {@link DictionaryLemmatizer} folds
+   * them, readers look up words as they are given.
+   */
+  public WordFolding getFolding() {
+    return folding;
+  }
+
+  /*
+   * Sets the folding of the words, before the dictionary is published.
+   */
+  void setFolding(final WordFolding folding) {
+    this.folding = folding;
+  }
+
+  /**
+   * Returns the filter rejecting the words this dictionary cannot hold, to be
+   * checked before a lookup. {@link DictionaryLemmatizer} checks it, readers
+   * look up any word.
+   */
+  public WordFilter getWordFilter() {
+    return wordFilter;
+  }
+
+  /*
+   * Sets the filter of the words, before the dictionary is published.
+   */
+  void setWordFilter(final WordFilter wordFilter) {
+    this.wordFilter = wordFilter;
+  }
+
+  /**
+   * Returns the names of the word classes the tags of the lemmas are indexes
+   * of, or null if unknown.
+   */
+  public String[] getWordClasses() {
+    return wordClasses;
+  }
+
+  /*
+   * Sets the names of the word classes, before the dictionary is published.
+   */
+  void setWordClasses(final String[] wordClasses) {
+    this.wordClasses = wordClasses;
+  }
+
+  /**
+   * Returns the index of the forms of the lemmas of this dictionary, built on
+   * first use and kept with the dictionary.
+   */
+  public ReverseLemmaIndex getReverseIndex() {
+    ReverseLemmaIndex index = reverseIndex;
+    if (index == null) {
+      synchronized (this) {
+        index = reverseIndex;
+        if (index == null) {
+          index = ReverseLemmaIndex.build(this);
+          reverseIndex = index;
+        }
+      }
+    }
+    return index;
+  }
+
+  /**
+   * Returns the direct or memory mapped bytes the dictionary reads from, 0 for
+   * dictionaries kept on heap.
+   */
+  public long offHeapBytesUsed() {
+    return 0;
+  }
+
+  /**
+   * Find the lemma(s) of the provided word. This convenience method allocates
+   * a new reader on each call, use {@link #getReader()} on hot paths.
+   * 
+   * @param word Word to find the lemma(s)
+   * @return the lemmas of the word or <code>null</code> if the word is unknown
+   */
+  public String[] lookup(final String word) {
+    final Reader reader = getReader();
+    final String key = folding.isNone() ? word : folding.newFolder().fold(word);
+    final int count = reader.lookup(key.toCharArray(), 0, key.length());
+    if (count == 0) {
+      return null;
+    }
+    final String[] lemmas = new String[count];
+    final int[] ids = reader.lemmaIds();
+    for (int i = 0; i < count; i++) {
+      lemmas[i] = lemma(ids[i]);
+    }
+    return lemmas;
+  }
+
+  /*
+   * Returns a lemma followed by its tag, if any.
+   */
+  static String tagged(final String lemma, final int tag) {
+    return tag < 0 ? lemma : lemma + '$' + tag;
+  }
+
+  /*
+   * Appends $ and a tag to a term attribute, without allocating.
+   */
+  static void appendTag(final CharTermAttribute termAtt, final int tag) {
+    int digits = 1;
+    for (int i = tag; i >= 10; i /= 10) {
+      digits++;
+    }
+    final int length = termAtt.length() + 1 + digits;
+    final char[] buffer = termAtt.resizeBuffer(length);
+    buffer[termAtt.length()] = '$';
+    for (int i = tag, pos = length - 1; digits > 0; i /= 10, pos--, digits--) {
+      buffer[pos] = (char) ('0' + i % 10);
+    }
+    termAtt.setLength(length);
+  }
+
+  /*
+   * Estimates the heap retained by an array of strings.
+   */
+  static long sizeOf(final String[] strings) {
+    long size = RamUsageEstimator.shallowSizeOf(strings);
+    for (String string : strings) {
+      size += STRING_SIZE + RamUsageEstimator.alignObjectSize(RamUsageEstimator.NUM_BYTES_ARRAY_HEADER + 2L
+          * string.length());
+    }
+    return size;
+  }
+
+  /*
+   * Estimates the heap retained by a map of words to lemma id sets, counting
+   * the sets shared by several words once.
+   */
+  static long sizeOf(final CharArrayMap<int[]> map) {
+    // keys and values arrays, kept at most three quarter full
+    long size = 2 * RamUsageEstimator.alignObjectSize(RamUsageEstimator.NUM_BYTES_ARRAY_HEADER
+        + (long) RamUsageEstimator.NUM_BYTES_OBJECT_REF * map.size() * 4 / 3);
+    final Map<int[], Boolean> sets = new IdentityHashMap<int[], Boolean>();
+    final CharArrayMap<int[]>.EntryIterator it = map.entrySet().iterator();
+    while (it.hasNext()) {
+      size += RamUsageEstimator.sizeOf(it.nextKey());
+      final int[] set = it.currentValue();
+      if (sets.put(set, Boolean.TRUE) == null) {
+        size += RamUsageEstimator.sizeOf(set);
+      }
+    }
+    return size;
+  }
+
+  private static final long STRING_SIZE = RamUsageEstimator.shallowSizeOfInstance(String.class);
+
+  /**
+   * Receives the words of a dictionary from {@link LemmaDictionary#visitWords}.
+   */
+  public interface WordVisitor {
+
+    /**
+     * Receives a word, held in <code>buffer[offset..offset+length)</code>,
+     * with its lemma ids, the first <code>count</code> ids being meaningful.
+     * Both arrays may be reused once the method returns.
+     */
+    void word(char[] buffer, int offset, int length, int[] lemmaIds, int count);
+
+  }
+
+  /**
+   * Looks words up in a {@link LemmaDictionary} directly from a term buffer.
+   */
+  public static abstract class Reader {
+
+    /**
+     * Find the lemma(s) of the word held in
+     * <code>buffer[offset..offset+length)</code>.
+     * 
+     * @return the number of lemmas of the word, 0 if the word is unknown
+     */
+    public abstract int lookup(char[] buffer, int offset, int length);
+
+    /**
+     * Returns the ids of the lemmas found by the last successful
+     * {@link #lookup}. Only the first ids, up to the returned count, are
+     * meaningful. The array belongs to the dictionary and must not be modified.
+     */
+    public abstract int[] lemmaIds();
+
+  }
+
+}
@@ -0,0 +1,714 @@
+package org.apache.lucene.analysis.lemmatizer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.apache.lucene.analysis.lemmatizer.DictionaryLoadReport.Rejection;
+import org.apache.lucene.analysis.lemmatizer.DictionaryLoadReport.Source;
+import org.apache.lucene.analysis.lemmatizer.DictionaryLoadReport.TimedInputStream;
+import org.apache.lucene.analysis.util.CharArrayMap;
+import org.apache.lucene.util.NamedThreadFactory;
+
+/**
+ * Parses tab separated dictionaries and builds a {@link LemmaDictionary} out of
+ * them. Used by {@link DictionaryLemmatizerFilterFactory} at load time and by
+ * {@link DictionaryCompiler} offline, so that both apply the same rules. A
+ * builder builds a single dictionary.
+ */
+public class LemmaDictionaryBuilder {
+
+  private final int lemmaPos;
+  private final int wordPos;
+  private final int wordClassPos;
+  private final String[] wordClasses;
+  private final String charset;
+  private final String[] reduceTo;
+  private final int minLength;
+  private final boolean storePosTag;
+  private final WordFolding folding;
+
+  private final int[] reduceToClasses;
+
+  private final LemmaEntries entries;
+  private Map<String, String[]> overrides = Collections.emptyMap();
+  private final Map<String, String[]> overridden = new HashMap<String, String[]>();
+  private Map<String, Integer> normalizedWordlist = null;
+  private CharArrayMap<int[]> heapWordlist = null;
+  private LemmaSetPool lemmaSetPool = null;
+  private DictionaryLoadReport report = new DictionaryLoadReport();
+  private int bloomFilterBits = 0;
+
+  /**
+   * Creates a new LemmaDictionaryBuilder
+   * 
+   * @param lemmaPos column of the lemmas
+   * @param wordPos column of the words
+   * @param wordClassPos column of the word classes, or -1
+   * @param wordClasses word classes to keep, or <code>null</code> for all
+   * @param charset charset of the dictionaries
+   * @param reduceTo word classes words with several lemmas get reduced to, in
+   *          this order, or <code>null</code>
+   * @param minLength words of this length or shorter are ignored
+   * @param storePosTag whether lemmas are tagged with their word class
+   */
+  public LemmaDictionaryBuilder(final int lemmaPos, final int wordPos, final int wordClassPos,
+      final String[] wordClasses, final String charset, final String[] reduceTo, final int minLength,
+      final boolean storePosTag) {
+    this(lemmaPos, wordPos, wordClassPos, wordClasses, charset, reduceTo, minLength, storePosTag, WordFolding.NONE);
+  }
+
+  /**
+   * Creates a new LemmaDictionaryBuilder folding the words
+   * 
+   * @param lemmaPos column of the lemmas
+   * @param wordPos column of the words
+   * @param wordClassPos column of the word classes, or -1
+   * @param wordClasses word classes to keep, or <code>null</code> for all
+   * @param charset charset of the dictionaries
+   * @param reduceTo word classes words with several lemmas get reduced to, in
+   *          this order, or <code>null</code>
+   * @param minLength words of this length or shorter are ignored
+   * @param storePosTag whether lemmas are tagged with their word class
+   * @param folding folding of the words, words folding the same way get the
+   *          lemmas of all of them
+   */
+  public LemmaDictionaryBuilder(final int lemmaPos, final int wordPos, final int wordClassPos,
+      final String[] wordClasses, final String charset, final String[] reduceTo, final int minLength,
+      final boolean storePosTag, final WordFolding folding) {
+    this.folding = folding;
+    this.lemmaPos = lemmaPos;
+    this.wordPos = wordPos;
+    this.wordClassPos = wordClassPos;
+    this.wordClasses = wordClasses;
+    this.charset = charset;
+    this.reduceTo = reduceTo;
+    this.minLength = minLength;
+    this.storePosTag = storePosTag;
+    this.entries = newEntries(false);
+    if (reduceTo != null) {
+      // word classes are tracked by index
+      reduceToClasses = new int[reduceTo.length];
+      for (int i = 0; i < reduceTo.length; i++) {
+        reduceToClasses[i] = wordClasses == null ? -1 : Arrays.asList(wordClasses).indexOf(reduceTo[i]);
+      }
+    } else {
+      reduceToClasses = null;
+    }
+  }
+
+  /**
+   * Adds the entries of a dictionary, <code>.gz</code> and <code>.zip</code>
+   * files being uncompressed according to their name. The stream is not
+   * closed.
+   * 
+   * @param name name of the dictionary
+   * @param inputStream content of the dictionary
+   */
+  public void add(final String name, final InputStream inputStream) throws IOException {
+    if (name.endsWith(".gz")) {
+      addDictionary(new GZIPInputStream(inputStream), entries, report.source(name));
+    } else if (name.endsWith(".zip")) {
+      final ZipInputStream zipInputStream = new ZipInputStream(inputStream);
+      ZipEntry entry;
+      while ((entry = zipInputStream.getNextEntry()) != null) {
+        if (isLastEntry(entry)) {
+          break;
+        }
+        addDictionary(zipInputStream, entries, report.source(name + "!" + entry.getName()));
+      }
+    } else {
+      addDictionary(inputStream, entries, report.source(name));
+    }
+  }
+
+  /**
+   * Adds the entries of several dictionaries, uncompressing and parsing the
+   * dictionaries and the entries of the <code>.zip</code> files concurrently.
+   * The result is the same as adding the dictionaries one after the other, in
+   * the given order. The streams are not closed.
+   * 
+   * @param names names of the dictionaries
+   * @param inputStreams contents of the dictionaries
+   * @param threads maximum number of dictionaries parsed at the same time
+   */
+  public void add(final List<String> names, final List<InputStream> inputStreams, final int threads)
+      throws IOException {
+    if (threads <= 1 || (names.size() == 1 && !names.get(0).endsWith(".zip"))) {
+      for (int i = 0; i < names.size(); i++) {
+        add(names.get(i), inputStreams.get(i));
+      }
+      return;
+    }
+    final ExecutorService executor = Executors.newFixedThreadPool(threads, new NamedThreadFactory(
+        "lemmatizer-load"));
+    try {
+      // one part per dictionary or zip entry, merged in this order
+      final List<Future<LemmaEntries>> parts = new ArrayList<Future<LemmaEntries>>();
+      for (int i = 0; i < names.size(); i++) {
+        final String name = names.get(i);
+        final InputStream inputStream = inputStreams.get(i);
+        if (name.endsWith(".zip")) {
+          // entries are read one after the other, they are parsed concurrently
+          final ZipInputStream zipInputStream = new ZipInputStream(inputStream);
+          ZipEntry entry;
+          while ((entry = zipInputStream.getNextEntry()) != null) {
+            if (isLastEntry(entry)) {
+              break;
+            }
+            final Source source = report.source(name + "!" + entry.getName());
+            final long start = System.nanoTime();
+            final byte[] content = FlatLemmaDictionary.readFully(zipInputStream);
+            source.decoded(System.nanoTime() - start);
+            parts.add(executor.submit(() -> parse(new ByteArrayInputStream(content), source)));
+          }
+        } else if (name.endsWith(".gz")) {
+          final Source source = report.source(name);
+          parts.add(executor.submit(() -> parse(new GZIPInputStream(inputStream), source)));
+        } else {
+          final Source source = report.source(name);
+          parts.add(executor.submit(() -> parse(inputStream, source)));
+        }
+      }
+      for (Future<LemmaEntries> part : parts) {
+        entries.addAll(part.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while loading dictionaries", e);
+    } catch (ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IOException(cause);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Overrides the lemmas of some words, whatever the dictionaries say. Words
+   * without any lemma are left out of the dictionary.
+   * 
+   * @param wordlist the words with their lemmas, used as is
+   */
+  public void override(final Map<String, String[]> wordlist) {
+    if (folding.isNone()) {
+      overrides = wordlist;
+      return;
+    }
+    final WordFolding.Folder folder = folding.newFolder();
+    overrides = new HashMap<String, String[]>();
+    for (Map.Entry<String, String[]> entry : wordlist.entrySet()) {
+      overrides.put(folder.fold(entry.getKey()), entry.getValue());
+    }
+  }
+
+  /**
+   * Returns the lemmas the dictionaries give to the overridden words, once
+   * built, by folded word. Overridden words missing from the dictionaries are
+   * left out.
+   */
+  public Map<String, String[]> overridden() {
+    return overridden;
+  }
+
+  /**
+   * Adds a Bloom filter of the given number of bits per word to the
+   * {@link WordFilter} of the dictionary, which otherwise only records the
+   * length range of the words. About 10 bits per word let one word missing
+   * from the dictionary in a hundred through.
+   * 
+   * @param bitsPerWord bits per word, 0 for no Bloom filter
+   */
+  public void setBloomFilterBits(final int bitsPerWord) {
+    if (bitsPerWord < 0) {
+      throw new IllegalArgumentException("Bloom filter bits per word must not be negative: " + bitsPerWord);
+    }
+    this.bloomFilterBits = bitsPerWord;
+  }
+
+  /**
+   * Records the load into the given report instead of a report of its own, so
+   * that the caller can report on reading the resources too.
+   */
+  public void reportTo(final DictionaryLoadReport report) {
+    this.report = report;
+  }
+
+  /**
+   * Returns the report of the load, filled as dictionaries are added and
+   * built.
+   */
+  public DictionaryLoadReport report() {
+    return report;
+  }
+
+  /**
+   * Returns the parsing parameters of this builder, as recorded in compiled
+   * dictionaries.
+   */
+  public Map<String, String> metadata() {
+    final Map<String, String> metadata = new LinkedHashMap<String, String>();
+    metadata.put("lemmaPos", Integer.toString(lemmaPos));
+    metadata.put("wordPos", Integer.toString(wordPos));
+    metadata.put("wordClassPos", Integer.toString(wordClassPos));
+    if (wordClasses != null) {
+      metadata.put("wordClasses", String.join(",", wordClasses));
+    }
+    metadata.put("charset", charset);
+    if (reduceTo != null) {
+      metadata.put("reduceTo", String.join(",", reduceTo));
+    }
+    metadata.put("minLength", Integer.toString(minLength));
+    metadata.put("storePosTag", Boolean.toString(storePosTag));
+    metadata.put("bloomFilterBits", Integer.toString(bloomFilterBits));
+    folding.addTo(metadata);
+    return metadata;
+  }
+
+  /** Builds a {@link HeapLemmaDictionary} out of the added entries. */
+  public HeapLemmaDictionary buildHeap() {
+    heapWordlist = new CharArrayMap<int[]>(entries.size(), false);
+    normalize();
+    final long start = System.nanoTime();
+    final HeapLemmaDictionary dictionary = new HeapLemmaDictionary(heapWordlist, lemmaSetPool.lemmas(),
+        lemmaSetPool.tags());
+    final WordFilter.Builder filter = new WordFilter.Builder(bloomFilterBits, heapWordlist.size());
+    final CharArrayMap<int[]>.EntryIterator it = heapWordlist.entrySet().iterator();
+    while (it.hasNext()) {
+      final char[] word = it.nextKey();
+      filter.add(word, 0, word.length);
+    }
+    built(start, heapWordlist.size());
+    dictionary.setFolding(folding);
+    dictionary.setWordClasses(wordClasses);
+    dictionary.setWordFilter(filter.build());
+    heapWordlist = null;
+    lemmaSetPool = null;
+    return dictionary;
+  }
+
+  /** Builds a {@link FSTLemmaDictionary} out of the added entries. */
+  public FSTLemmaDictionary buildFST() throws IOException {
+    normalizedWordlist = new HashMap<String, Integer>();
+    normalize();
+    // Compile the normalized word list and let the map be garbage collected
+    final long start = System.nanoTime();
+    final FSTLemmaDictionary dictionary = FSTLemmaDictionary.build(normalizedWordlist,
+        lemmaSetPool.sets(), lemmaSetPool.lemmas(), lemmaSetPool.tags());
+    final WordFilter filter = buildFilter();
+    built(start, normalizedWordlist.size());
+    dictionary.setFolding(folding);
+    dictionary.setWordClasses(wordClasses);
+    dictionary.setWordFilter(filter);
+    normalizedWordlist = null;
+    lemmaSetPool = null;
+    return dictionary;
+  }
+
+  /**
+   * Serializes the added entries into the binary format read by
+   * {@link FlatLemmaDictionary}, recording the provided metadata.
+   */
+  public ByteBuffer buildFlat(final Map<String, String> metadata) {
+    return buildFlat(metadata, false);
+  }
+
+  /**
+   * Builds a {@link FlatLemmaDictionary} out of the added entries, held in
+   * direct memory out of the JVM heap.
+   */
+  public FlatLemmaDictionary buildDirect() throws IOException {
+    return FlatLemmaDictionary.open(buildFlat(metadata(), true));
+  }
+
+  /**
+   * Serializes the added entries into a dictionary read by
+   * {@link ShardedLemmaDictionary}: compiled shards, each holding the words of
+   * a hash range with their own lemmas and filter, and their manifest. Shards
+   * are named after the manifest, so that they are found next to it.
+   * 
+   * @param name file name of the manifest, ending with
+   *          {@link ShardedLemmaDictionary#EXTENSION}
+   * @param shardCount number of shards
+   * @param metadata free form metadata to record in the manifest and shards
+   * @return the manifest then the shards, by file name
+   */
+  public Map<String, ByteBuffer> buildSharded(final String name, final int shardCount,
+      final Map<String, String> metadata) {
+    if (shardCount < 1) {
+      throw new IllegalArgumentException("A sharded dictionary needs at least one shard: " + shardCount);
+    }
+    normalizedWordlist = new HashMap<String, Integer>();
+    normalize();
+    final long start = System.nanoTime();
+    final String[] lemmas = lemmaSetPool.lemmas();
+    final short[] tags = lemmaSetPool.tags();
+    final int[][] sets = lemmaSetPool.sets();
+    final List<Map<String, Integer>> wordlists = new ArrayList<Map<String, Integer>>();
+    final LemmaSetPool[] pools = new LemmaSetPool[shardCount];
+    for (int i = 0; i < shardCount; i++) {
+      wordlists.add(new HashMap<String, Integer>());
+      pools[i] = new LemmaSetPool();
+    }
+    // lemmas are interned again per shard, so that a shard holds its lemmas only
+    for (Map.Entry<String, Integer> entry : normalizedWordlist.entrySet()) {
+      final char[] word = entry.getKey().toCharArray();
+      final int shard = ShardedLemmaDictionary.shard(word, 0, word.length, shardCount);
+      final int[] set = sets[entry.getValue()];
+      final String[] setLemmas = new String[set.length];
+      final short[] setTags = tags == null ? null : new short[set.length];
+      for (int i = 0; i < set.length; i++) {
+        setLemmas[i] = lemmas[set[i]];
+        if (setTags != null) {
+          setTags[i] = tags[set[i]];
+        }
+      }
+      wordlists.get(shard).put(entry.getKey(), pools[shard].intern(setLemmas, setTags));
+    }
+    final String prefix = name.endsWith(ShardedLemmaDictionary.EXTENSION) ? name.substring(0, name.length()
+        - ShardedLemmaDictionary.EXTENSION.length()) : name;
+    final String[] names = new String[shardCount];
+    final int[] lemmaCounts = new int[shardCount];
+    final Map<String, ByteBuffer> shards = new LinkedHashMap<String, ByteBuffer>();
+    for (int i = 0; i < shardCount; i++) {
+      final Map<String, Integer> wordlist = wordlists.get(i);
+      final WordFilter.Builder filter = new WordFilter.Builder(bloomFilterBits, wordlist.size());
+      for (String word : wordlist.keySet()) {
+        filter.add(word);
+      }
+      final String[] shardLemmas = pools[i].lemmas();
+      names[i] = prefix + "-" + i + FlatLemmaDictionary.EXTENSION;
+      lemmaCounts[i] = shardLemmas.length;
+      shards.put(names[i], FlatLemmaDictionary.write(wordlist, pools[i].sets(), shardLemmas, pools[i].tags(),
+          filter.build(), metadata, false));
+    }
+    final Map<String, ByteBuffer> files = new LinkedHashMap<String, ByteBuffer>();
+    files.put(name, ShardedLemmaDictionary.writeManifest(names, lemmaCounts, buildFilter(), metadata));
+    files.putAll(shards);
+    built(start, normalizedWordlist.size());
+    normalizedWordlist = null;
+    lemmaSetPool = null;
+    return files;
+  }
+
+  private ByteBuffer buildFlat(final Map<String, String> metadata, final boolean direct) {
+    normalizedWordlist = new HashMap<String, Integer>();
+    normalize();
+    final long start = System.nanoTime();
+    final ByteBuffer buffer = FlatLemmaDictionary.write(normalizedWordlist, lemmaSetPool.sets(),
+        lemmaSetPool.lemmas(), lemmaSetPool.tags(), buildFilter(), metadata, direct);
+    built(start, normalizedWordlist.size());
+    normalizedWordlist = null;
+    lemmaSetPool = null;
+    return buffer;
+  }
+
+  private void normalize() {
+    lemmaSetPool = new LemmaSetPool();
+    final long start = System.nanoTime();
+    final int parsedWords = entries.size();
+    addEntries();
+    report.reduced(System.nanoTime() - start, parsedWords);
+    entries.clear();
+  }
+
+  private WordFilter buildFilter() {
+    final WordFilter.Builder filter = new WordFilter.Builder(bloomFilterBits, normalizedWordlist.size());
+    for (String word : normalizedWordlist.keySet()) {
+      filter.add(word);
+    }
+    return filter.build();
+  }
+
+  private void built(final long start, final int words) {
+    report.built(System.nanoTime() - start, words, lemmaSetPool.lemmas().length, lemmaSetPool.setCount());
+  }
+
+  private static boolean isLastEntry(final ZipEntry entry) {
+    final Path currentPath = Paths.get(entry.getName());
+    final Path parentPath = currentPath.getParent();
+    return parentPath == null && Files.isDirectory(currentPath);
+  }
+
+  private LemmaEntries newEntries(final boolean ordered) {
+    return new LemmaEntries(wordClasses == null ? 0 : wordClasses.length, ordered);
+  }
+
+  private LemmaEntries parse(final InputStream inputStream, final Source source) throws IOException {
+    // ordered, to be merged as if read in sequence
+    final LemmaEntries parsed = newEntries(true);
+    addDictionary(inputStream, parsed, source);
+    return parsed;
+  }
+
+  /*
+   * Adds entries in a dictionary to the lemmas of their words. A word can have
+   * several lemmas: German: (wir/viele) fragen => (zu) fragen (verb), (eine)
+   * Frage (noun). Norwegian: (vi/mange) sykler => (å) sykle (verb), (en)
+   * sykkel (noun)
+   */
+  private void addDictionary(final InputStream inputStream, final LemmaEntries entries, final Source source)
+      throws IOException {
+    final long start = System.nanoTime();
+    final TimedInputStream timed = new TimedInputStream(inputStream);
+    final WordFolding.Folder folder = folding.isNone() ? null : folding.newFolder();
+    final BufferedReader br = new BufferedReader(new InputStreamReader(timed, charset));
+    String line;
+    while ((line = br.readLine()) != null) {
+      source.line();
+      // Trailing empty columns are ignored
+      int end = line.length();
+      while (end > 0 && line.charAt(end - 1) == '\t') {
+        end--;
+      }
+
+      // Skip comments etc. in file:
+      if (line.lastIndexOf('\t', end - 1) < 0 || isComment(line)) {
+        source.reject(Rejection.COMMENT);
+        continue;
+      }
+
+      final String word = column(line, end, wordPos);
+      if (word == null) {
+        source.reject(Rejection.MISSING_COLUMN);
+        continue;
+      }
+
+      // Skip words which do not meet the threshold:
+      if (word.length() <= minLength) {
+        source.reject(Rejection.MIN_LENGTH);
+        continue;
+      }
+
+      // Skip splitting words and those with a hyphen — they
+      // interfere with tokenizers.
+      if (word.indexOf(' ') >= 0 || word.indexOf('-') >= 0) {
+        source.reject(Rejection.SPACE_OR_HYPHEN);
+        continue;
+      }
+
+      // Only include words which belong to the defined word classes
+      int wordClass = -1;
+      if (wordClasses != null) {
+        final String classes = column(line, end, wordClassPos);
+        if (classes == null) {
+          source.reject(Rejection.MISSING_COLUMN);
+          continue;
+        }
+        for (int i = 0; i < wordClasses.length; i++) {
+          if (classes.contains(wordClasses[i])) {
+            wordClass = i;
+            break;
+          }
+        }
+        if (wordClass < 0) {
+          source.reject(Rejection.WORD_CLASS);
+          continue;
+        }
+      }
+      final String lemma = column(line, end, lemmaPos);
+      if (lemma == null) {
+        source.reject(Rejection.MISSING_COLUMN);
+        continue;
+      }
+      entries.add(folder == null ? word : folder.fold(word), lemma, wordClass);
+      source.accept();
+    }
+    source.parsed(timed, System.nanoTime() - start);
+  }
+
+  private static boolean isComment(final String line) {
+    int start = 0;
+    while (start < line.length() && line.charAt(start) <= ' ') {
+      start++;
+    }
+    return start < line.length() && (line.charAt(start) == '#' || line.charAt(start) == '*');
+  }
+
+  /*
+   * Returns a tab separated column of the first end chars of a line, or null
+   * if there are less columns.
+   */
+  private static String column(final String line, final int end, final int index) {
+    if (index < 0) {
+      return null;
+    }
+    int start = 0;
+    for (int i = 0; i < index; i++) {
+      start = line.indexOf('\t', start) + 1;
+      if (start == 0 || start > end) {
+        return null;
+      }
+    }
+    int stop = line.indexOf('\t', start);
+    if (stop < 0 || stop > end) {
+      stop = end;
+    }
+    return line.substring(start, stop);
+  }
+
+  private void addEntries() {
+    for (Map.Entry<String, int[]> entry : entries.words().entrySet()) {
+      final String word = entry.getKey();
+      final int[] lemmas = entry.getValue();
+
+      // If reduce is defined, make sure that at least one lemma from a defined
+      // word class is added:
+      if (reduceTo != null && lemmas[0] > 1) {
+        // If several lemmas for the same word class are found, use
+        // the shortest:
+        int lemmaToUse = -1;
+        for (int wordClass : reduceToClasses) {
+          for (int i = 1; i <= lemmas[0]; i++) {
+            final int code = lemmas[i];
+            if (wordClass >= 0 && entries.wordClass(code) == wordClass && !entries.lemma(code).equals(word)
+                && (lemmaToUse < 0 || taggedLength(lemmaToUse) > taggedLength(code))) {
+              lemmaToUse = code;
+            }
+          }
+          if (lemmaToUse >= 0) {
+            break;
+          }
+        }
+        if (lemmaToUse < 0) { // Did not find any matched word classes,
+          // just use the shortest lemma:
+          for (int i = 1; i <= lemmas[0]; i++) {
+            if (lemmaToUse < 0 || taggedLength(lemmaToUse) > taggedLength(lemmas[i])) {
+              lemmaToUse = lemmas[i];
+            }
+          }
+        }
+        final String[] newLemmas = { entries.lemma(lemmaToUse) };
+        putLemmas(word, newLemmas, storePosTag ? new short[] { tag(lemmaToUse) } : null);
+      } else {
+        storeLemmas(lemmas, word);
+      }
+    }
+    for (Map.Entry<String, String[]> override : overrides.entrySet()) {
+      if (override.getValue().length > 0) {
+        putSet(override.getKey(), override.getValue(), null);
+      }
+    }
+  }
+
+  private void storeLemmas(final int[] lemmas, final String word) {
+    if (storePosTag) {
+      final String[] newLemmas = new String[lemmas[0]];
+      final short[] tags = new short[lemmas[0]];
+      for (int i = 0; i < newLemmas.length; i++) {
+        newLemmas[i] = entries.lemma(lemmas[i + 1]);
+        tags[i] = tag(lemmas[i + 1]);
+      }
+      putLemmas(word, newLemmas, tags);
+    } else {
+      // Exclude entries where the lemma equals the word as long as we
+      // only have one lemma:
+      if (lemmas[0] == 1) {
+        final String newLemma = entries.lemma(lemmas[1]);
+        if (!newLemma.equals(word)) {
+          final String[] newLemmas = { newLemma };
+          putLemmas(word, newLemmas, null);
+        }
+      } else {
+        final Set<String> lemmaList = new HashSet<String>();
+        for (int i = 1; i <= lemmas[0]; i++) {
+          final String newLemma = entries.lemma(lemmas[i]);
+          if (!newLemma.equals(word)) {
+            lemmaList.add(newLemma);
+          }
+        }
+        if (lemmaList.size() > 0) {
+          putLemmas(word, lemmaList.toArray(new String[lemmaList.size()]), null);
+        }
+      }
+    }
+  }
+
+  /*
+   * Returns the tag of a lemma, the index of its word class or -1.
+   */
+  private short tag(final int code) {
+    return (short) entries.wordClass(code);
+  }
+
+  /*
+   * Returns the length of a lemma suffixed with the index of its word class,
+   * shorter lemmas being preferred when reducing.
+   */
+  private int taggedLength(final int code) {
+    final int wordClass = entries.wordClass(code);
+    return entries.lemma(code).length() + (wordClass < 0 ? 0 : 1 + Integer.toString(wordClass).length());
+  }
+
+  /*
+   * Interns the lemmas so that words sharing the same lemmas share the same set
+   * of lemma ids.
+   */
+  private void putLemmas(final String word, final String[] lemmas, final short[] tags) {
+    if (overrides.containsKey(word)) {
+      // the override wins, keep track of what it hides, as lemma(id) shows it
+      final String[] hidden = new String[lemmas.length];
+      for (int i = 0; i < lemmas.length; i++) {
+        hidden[i] = LemmaDictionary.tagged(lemmas[i], tags == null ? -1 : tags[i]);
+      }
+      overridden.put(word, hidden);
+      return;
+    }
+    putSet(word, lemmas, tags);
+  }
+
+  private void putSet(final String word, final String[] lemmas, final short[] tags) {
+    final int ordinal = lemmaSetPool.intern(lemmas, tags);
+    if (heapWordlist != null) {
+      heapWordlist.put(word, lemmaSetPool.set(ordinal));
+    } else {
+      normalizedWordlist.put(word, ordinal);
+    }
+  }
+
+}
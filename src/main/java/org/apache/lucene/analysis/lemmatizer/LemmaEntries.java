@@ -0,0 +1,122 @@
+package org.apache.lucene.analysis.lemmatizer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lemmas of the words read from dictionaries, before they are reduced and
+ * interned by {@link LemmaDictionaryBuilder}.
+ * <p>
+ * Every distinct lemma is stored once, a word holds a packed list of codes
+ * combining the id of each of its lemmas with its word class. The first element
+ * of a list is its size, lemmas follow in the order they were read, without
+ * duplicates.
+ * </p>
+ */
+final class LemmaEntries {
+
+  private final int stride;
+  private final Map<String, Integer> lemmaIds = new HashMap<String, Integer>();
+  private final List<String> lemmas = new ArrayList<String>();
+  private final Map<String, int[]> words;
+
+  /**
+   * @param wordClassCount number of word classes, 0 if not distinguished
+   * @param ordered whether words are iterated in the order they were added
+   */
+  LemmaEntries(final int wordClassCount, final boolean ordered) {
+    stride = wordClassCount + 1;
+    words = ordered ? new LinkedHashMap<String, int[]>() : new HashMap<String, int[]>();
+  }
+
+  /**
+   * Adds a lemma of a word, unless already added.
+   * 
+   * @param wordClass index of the word class of the lemma, or -1
+   */
+  void add(final String word, final String lemma, final int wordClass) {
+    Integer id = lemmaIds.get(lemma);
+    if (id == null) {
+      id = lemmas.size();
+      lemmaIds.put(lemma, id);
+      lemmas.add(lemma);
+    }
+    final int code = id * stride + wordClass + 1;
+    int[] list = words.get(word);
+    if (list == null) {
+      list = new int[3];
+      words.put(word, list);
+    } else {
+      for (int i = 1; i <= list[0]; i++) {
+        if (list[i] == code) {
+          return;
+        }
+      }
+      if (list[0] + 1 == list.length) {
+        list = Arrays.copyOf(list, list.length * 2);
+        words.put(word, list);
+      }
+    }
+    list[++list[0]] = code;
+  }
+
+  /**
+   * Adds all the lemmas of other entries, after the ones already added.
+   */
+  void addAll(final LemmaEntries other) {
+    for (Map.Entry<String, int[]> entry : other.words.entrySet()) {
+      final int[] list = entry.getValue();
+      for (int i = 1; i <= list[0]; i++) {
+        add(entry.getKey(), other.lemma(list[i]), other.wordClass(list[i]));
+      }
+    }
+  }
+
+  /** Returns the words with their packed lists of lemma codes. */
+  Map<String, int[]> words() {
+    return words;
+  }
+
+  /** Returns the number of words. */
+  int size() {
+    return words.size();
+  }
+
+  /** Returns the lemma of a code. */
+  String lemma(final int code) {
+    return lemmas.get(code / stride);
+  }
+
+  /** Returns the word class of a code, or -1. */
+  int wordClass(final int code) {
+    return code % stride - 1;
+  }
+
+  void clear() {
+    lemmaIds.clear();
+    lemmas.clear();
+    words.clear();
+  }
+
+}
@@ -0,0 +1,160 @@
+package org.apache.lucene.analysis.lemmatizer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.KeywordAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.util.AttributeSource;
+
+/**
+ * A {@link TokenFilter} expanding words to all the forms of their lemmas, with
+ * the {@link ReverseLemmaIndex} of a dictionary. Meant for queries on fields
+ * indexed without lemmatization: the word is kept and the other forms follow
+ * it at its position, so that a query matches every inflection of the word
+ * while the index holds the text as it is.
+ * <p>
+ * Forms are folded as the words of the dictionary, the indexed text must be
+ * folded the same way. Keywords are left untouched.
+ * </p>
+ */
+public final class LemmaExpansionFilter extends TokenFilter {
+  private final DictionaryHolder holder;
+  private LemmaDictionary dictionary;
+  private ReverseLemmaIndex index;
+  private ReverseLemmaIndex.Expander expander;
+  private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+  private final KeywordAttribute keywordAttr = addAttribute(KeywordAttribute.class);
+  private final PositionIncrementAttribute positionAttr = addAttribute(PositionIncrementAttribute.class);
+  private final LemmatizerMetrics metrics;
+  // forms of the last word not output yet, ids of the expander, which is not
+  // used again before they are all output
+  private int nextForm;
+  private int formCount;
+  private AttributeSource.State current = null;
+  // counted locally, added to the metrics at the end of every document
+  private long tokenCount;
+  private long keywordCount;
+  private long hitCount;
+  private long missCount;
+  private long expansionCount;
+
+  /**
+   * Creates a LemmaExpansionFilter.
+   *
+   * @param input TokenStream whose tokens will be expanded
+   * @param dictionary the dictionary containing all the words with their lemmas
+   */
+  public LemmaExpansionFilter(final TokenStream input, final LemmaDictionary dictionary) {
+    this(input, new DictionaryHolder(dictionary), null);
+  }
+
+  /**
+   * Creates a LemmaExpansionFilter, with a dictionary that may be replaced,
+   * counting its work. The current dictionary of the holder is picked up on
+   * every {@link #reset()}, its reverse index is built on first use.
+   *
+   * @param input TokenStream whose tokens will be expanded
+   * @param holder holder of the dictionary containing all the words with their
+   *          lemmas
+   * @param metrics metrics the counts are added to at the end of every
+   *          document, or null
+   */
+  public LemmaExpansionFilter(final TokenStream input, final DictionaryHolder holder,
+      final LemmatizerMetrics metrics) {
+    super(input);
+    this.holder = holder;
+    dictionary = holder.get();
+    this.metrics = metrics;
+  }
+
+  @Override
+  public boolean incrementToken() throws IOException {
+    try {
+      return next();
+    } catch (UncheckedIOException e) {
+      // a shard of a sharded dictionary failed to load
+      throw e.getCause();
+    }
+  }
+
+  private boolean next() throws IOException {
+    if (nextForm < formCount) {
+      // other forms of the last word, at its position
+      restoreState(current);
+      index.copyForm(expander.formIds()[nextForm++], termAtt);
+      positionAttr.setPositionIncrement(0);
+      return true;
+    }
+    if (input.incrementToken()) {
+      tokenCount++;
+      if (dictionary == null) {
+        // the dictionary is not loaded yet, words are left as they are
+        missCount++;
+      } else if (!keywordAttr.isKeyword()) {
+        if (expander == null) {
+          index = dictionary.getReverseIndex();
+          expander = index.newExpander();
+        }
+        final int count = expander.expand(termAtt.buffer(), 0, termAtt.length());
+        if (count > 0) {
+          hitCount++;
+          current = captureState();
+          nextForm = 0;
+          formCount = count;
+          expansionCount += count;
+        } else {
+          missCount++;
+        }
+      } else {
+        keywordCount++;
+      }
+      return true;
+    } else {
+      return false;
+    }
+  }
+
+  @Override
+  public void end() throws IOException {
+    super.end();
+    if (metrics != null) {
+      metrics.add(tokenCount, keywordCount, hitCount, missCount, 0, expansionCount, 0);
+    }
+    tokenCount = keywordCount = hitCount = missCount = expansionCount = 0;
+  }
+
+  @Override
+  public void reset() throws IOException {
+    super.reset();
+    current = null;
+    nextForm = formCount = 0;
+    final LemmaDictionary latest = holder.acquire();
+    if (latest != dictionary) {
+      dictionary = latest;
+      index = null;
+      expander = null;
+    }
+  }
+
+}
@@ -0,0 +1,114 @@
+package org.apache.lucene.analysis.lemmatizer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.IntsRef;
+
+/**
+ * Interns lemmas and sets of lemma ids while a dictionary is loaded, so that
+ * every distinct lemma is stored once and every word with the same lemmas
+ * references the same array. A lemma tagged with a word class is distinct
+ * from the same lemma with another tag or none.
+ */
+final class LemmaSetPool {
+
+  private final Map<String, Integer> lemmaIds = new HashMap<String, Integer>();
+  private final List<String> lemmas = new ArrayList<String>();
+  private short[] tags = new short[16];
+  private boolean tagged;
+  private final Map<IntsRef, Integer> setOrdinals = new HashMap<IntsRef, Integer>();
+  private final List<int[]> sets = new ArrayList<int[]>();
+  private int[] scratch = new int[4];
+
+  /**
+   * Interns the provided lemmas and returns the ordinal of their set.
+   */
+  int intern(final String[] lemmaSet) {
+    return intern(lemmaSet, null);
+  }
+
+  /**
+   * Interns the provided lemmas, tagged with the index of their word class or
+   * -1, and returns the ordinal of their set.
+   * 
+   * @param tagSet the tags of the lemmas, or null if none is tagged
+   */
+  int intern(final String[] lemmaSet, final short[] tagSet) {
+    if (scratch.length < lemmaSet.length) {
+      scratch = new int[lemmaSet.length];
+    }
+    for (int i = 0; i < lemmaSet.length; i++) {
+      final String lemma = lemmaSet[i];
+      final short tag = tagSet == null ? -1 : tagSet[i];
+      // a tab can't be part of a lemma read from a dictionary
+      final String key = tag < 0 ? lemma : lemma + '\t' + tag;
+      Integer id = lemmaIds.get(key);
+      if (id == null) {
+        id = lemmas.size();
+        lemmaIds.put(key, id);
+        lemmas.add(lemma);
+        tags = ArrayUtil.grow(tags, id + 1);
+        tags[id] = tag;
+        tagged |= tag >= 0;
+      }
+      scratch[i] = id;
+    }
+    final Integer ordinal = setOrdinals.get(new IntsRef(scratch, 0, lemmaSet.length));
+    if (ordinal != null) {
+      return ordinal;
+    }
+    final int[] set = new int[lemmaSet.length];
+    System.arraycopy(scratch, 0, set, 0, set.length);
+    setOrdinals.put(new IntsRef(set, 0, set.length), sets.size());
+    sets.add(set);
+    return sets.size() - 1;
+  }
+
+  /** Returns the set of lemma ids with the provided ordinal. */
+  int[] set(final int ordinal) {
+    return sets.get(ordinal);
+  }
+
+  /** Returns the number of sets of lemma ids. */
+  int setCount() {
+    return sets.size();
+  }
+
+  /** Returns all the sets of lemma ids, by ordinal. */
+  int[][] sets() {
+    return sets.toArray(new int[sets.size()][]);
+  }
+
+  /** Returns all the lemmas, by id. */
+  String[] lemmas() {
+    return lemmas.toArray(new String[lemmas.size()]);
+  }
+
+  /** Returns the tags of all the lemmas, by id, or null if none is tagged. */
+  short[] tags() {
+    return tagged ? Arrays.copyOf(tags, lemmas.size()) : null;
+  }
+
+}
@@ -0,0 +1,284 @@
+package org.apache.lucene.analysis.lemmatizer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Counters of the work done by {@link DictionaryLemmatizerFilter}s, with the
+ * memory of the dictionary they use.
+ * <p>
+ * Filters count locally and add their counts once per document, so counting
+ * costs a field increment per token. The counters are striped
+ * {@link LongAdder}s, so that filters running in parallel do not contend when
+ * adding.
+ * </p>
+ * <p>
+ * Metrics obtained through {@link #forName(String, Object)} are shared by all
+ * the factories using the same name, typically the index and query analyzers
+ * of a field type, and registered as an MBean in the platform MBean server.
+ * They are unregistered when the last factory using them releases them, or
+ * is garbage collected, as Solr does not notify analysis factories of core
+ * unloads.
+ * </p>
+ */
+public final class LemmatizerMetrics implements LemmatizerMetricsMBean {
+
+  /** Domain of the registered MBeans. */
+  public static final String JMX_DOMAIN = "org.apache.lucene.analysis.lemmatizer";
+
+  private static final Logger log = LoggerFactory.getLogger(LemmatizerMetrics.class);
+
+  // guarded by itself, as the owners of the registered metrics
+  private static final Map<String, LemmatizerMetrics> REGISTERED = new HashMap<String, LemmatizerMetrics>();
+
+  private final String name;
+  private final LongAdder tokens = new LongAdder();
+  private final LongAdder keywords = new LongAdder();
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder stemmed = new LongAdder();
+  private final LongAdder extraLemmas = new LongAdder();
+  private final LongAdder decompounded = new LongAdder();
+  // owners of registered metrics, collected with their core
+  private final List<WeakReference<Object>> owners = new ArrayList<WeakReference<Object>>();
+  // bound weakly, the metrics outlive the dictionaries of unloaded cores
+  private volatile WeakReference<DictionaryHolder> dictionary;
+  private volatile WeakReference<TermCache<?>> stemCache;
+
+  /**
+   * Creates metrics that are not registered anywhere.
+   */
+  public LemmatizerMetrics(final String name) {
+    this.name = name;
+  }
+
+  /**
+   * Returns the metrics registered under a name, creating and registering them
+   * as an MBean first if needed, and counts the owner as a user of them until
+   * it releases them.
+   */
+  public static LemmatizerMetrics forName(final String name, final Object owner) {
+    synchronized (REGISTERED) {
+      expunge();
+      LemmatizerMetrics metrics = REGISTERED.get(name);
+      if (metrics == null) {
+        metrics = new LemmatizerMetrics(name);
+        metrics.register();
+        REGISTERED.put(name, metrics);
+      }
+      if (!metrics.owns(owner)) {
+        metrics.owners.add(new WeakReference<Object>(owner));
+      }
+      return metrics;
+    }
+  }
+
+  /**
+   * Ends the use of metrics obtained through {@link #forName(String, Object)}.
+   * The metrics are unregistered with their last owner.
+   */
+  public void release(final Object owner) {
+    synchronized (REGISTERED) {
+      for (Iterator<WeakReference<Object>> it = owners.iterator(); it.hasNext();) {
+        final Object current = it.next().get();
+        if (current == null || current == owner) {
+          it.remove();
+        }
+      }
+      if (owners.isEmpty() && REGISTERED.remove(name, this)) {
+        unregister();
+      }
+    }
+  }
+
+  /*
+   * Unregisters the metrics of which all the owners were collected.
+   */
+  private static void expunge() {
+    for (Iterator<LemmatizerMetrics> it = REGISTERED.values().iterator(); it.hasNext();) {
+      final LemmatizerMetrics metrics = it.next();
+      metrics.owners.removeIf(owner -> owner.get() == null);
+      if (metrics.owners.isEmpty()) {
+        it.remove();
+        metrics.unregister();
+      }
+    }
+  }
+
+  private boolean owns(final Object owner) {
+    for (WeakReference<Object> current : owners) {
+      if (current.get() == owner) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void register() {
+    try {
+      ManagementFactory.getPlatformMBeanServer().registerMBean(this, getObjectName());
+    } catch (JMException | SecurityException e) {
+      log.warn("Unable to register the lemmatizer metrics " + name + " in JMX", e);
+    }
+  }
+
+  private void unregister() {
+    try {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(getObjectName());
+    } catch (JMException | SecurityException e) {
+      log.warn("Unable to unregister the lemmatizer metrics " + name + " from JMX", e);
+    }
+  }
+
+  /*
+   * Returns whether metrics are registered under a name.
+   */
+  static boolean isRegistered(final String name) {
+    synchronized (REGISTERED) {
+      expunge();
+      return REGISTERED.containsKey(name);
+    }
+  }
+
+  /** Returns the name of the MBean of these metrics. */
+  public ObjectName getObjectName() throws JMException {
+    return new ObjectName(JMX_DOMAIN + ":type=" + LemmatizerMetrics.class.getSimpleName() + ",name="
+        + ObjectName.quote(name));
+  }
+
+  /*
+   * Reports the memory of the current dictionary of a holder, and the hit
+   * ratio of a stem cache, possibly null.
+   */
+  void bind(final DictionaryHolder dictionary, final TermCache<?> stemCache) {
+    this.dictionary = new WeakReference<DictionaryHolder>(dictionary);
+    this.stemCache = new WeakReference<TermCache<?>>(stemCache);
+  }
+
+  /*
+   * Adds the counts of a filter.
+   */
+  void add(final long tokens, final long keywords, final long hits, final long misses, final long stemmed,
+      final long extraLemmas, final long decompounded) {
+    this.tokens.add(tokens);
+    this.keywords.add(keywords);
+    this.hits.add(hits);
+    this.misses.add(misses);
+    this.stemmed.add(stemmed);
+    this.extraLemmas.add(extraLemmas);
+    this.decompounded.add(decompounded);
+  }
+
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public long getTokens() {
+    return tokens.sum();
+  }
+
+  @Override
+  public long getKeywords() {
+    return keywords.sum();
+  }
+
+  @Override
+  public long getHits() {
+    return hits.sum();
+  }
+
+  @Override
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  @Override
+  public double getHitRatio() {
+    final long hits = getHits();
+    final long lookups = hits + getMisses();
+    return lookups == 0 ? 0 : (double) hits / lookups;
+  }
+
+  @Override
+  public long getStemmed() {
+    return stemmed.sum();
+  }
+
+  @Override
+  public long getExtraLemmas() {
+    return extraLemmas.sum();
+  }
+
+  @Override
+  public double getExtraLemmasPerToken() {
+    final long tokens = getTokens();
+    return tokens == 0 ? 0 : (double) getExtraLemmas() / tokens;
+  }
+
+  @Override
+  public long getDecompounded() {
+    return decompounded.sum();
+  }
+
+  @Override
+  public double getStemCacheHitRatio() {
+    final WeakReference<TermCache<?>> bound = stemCache;
+    final TermCache<?> cache = bound == null ? null : bound.get();
+    return cache == null ? 0 : cache.hitRatio();
+  }
+
+  @Override
+  public long getDictionaryRamBytesUsed() {
+    final LemmaDictionary current = current();
+    return current == null ? 0 : current.ramBytesUsed();
+  }
+
+  @Override
+  public long getDictionaryOffHeapBytesUsed() {
+    final LemmaDictionary current = current();
+    return current == null ? 0 : current.offHeapBytesUsed();
+  }
+
+  @Override
+  public boolean isDictionaryReady() {
+    return current() != null;
+  }
+
+  private LemmaDictionary current() {
+    final WeakReference<DictionaryHolder> bound = dictionary;
+    final DictionaryHolder holder = bound == null ? null : bound.get();
+    return holder == null ? null : holder.get();
+  }
+
+}
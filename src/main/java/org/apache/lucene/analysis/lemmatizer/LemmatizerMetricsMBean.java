@@ -0,0 +1,76 @@
+package org.apache.lucene.analysis.lemmatizer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * JMX view of {@link LemmatizerMetrics}.
+ */
+public interface LemmatizerMetricsMBean {
+
+  /** Returns the name the metrics are registered under. */
+  String getName();
+
+  /** Returns the number of tokens read by the filters. */
+  long getTokens();
+
+  /** Returns the number of tokens left untouched as keywords. */
+  long getKeywords();
+
+  /** Returns the number of tokens found in the dictionary. */
+  long getHits();
+
+  /** Returns the number of tokens missing from the dictionary. */
+  long getMisses();
+
+  /** Returns the ratio of the looked up tokens found in the dictionary. */
+  double getHitRatio();
+
+  /** Returns the number of tokens stemmed by the fallback stemmer. */
+  long getStemmed();
+
+  /**
+   * Returns the number of lemma tokens added after the first lemma of a word,
+   * or after a compound for the lemmas of its parts.
+   */
+  long getExtraLemmas();
+
+  /** Returns the number of lemma tokens added per token read. */
+  double getExtraLemmasPerToken();
+
+  /**
+   * Returns the number of missing tokens split into parts found in the
+   * dictionary.
+   */
+  long getDecompounded();
+
+  /** Returns the ratio of the fallback stems found in the stem cache. */
+  double getStemCacheHitRatio();
+
+  /** Returns the estimated heap retained by the dictionary, in bytes. */
+  long getDictionaryRamBytesUsed();
+
+  /** Returns the direct or mapped memory of the dictionary, in bytes. */
+  long getDictionaryOffHeapBytesUsed();
+
+  /**
+   * Returns whether the dictionary is loaded, false while it is loaded in the
+   * background.
+   */
+  boolean isDictionaryReady();
+
+}
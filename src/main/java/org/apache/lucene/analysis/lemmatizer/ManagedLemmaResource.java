@@ -0,0 +1,175 @@
+package org.apache.lucene.analysis.lemmatizer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrException.ErrorCode;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.core.SolrResourceLoader;
+import org.apache.solr.rest.BaseSolrResource;
+import org.apache.solr.rest.ManagedResource;
+import org.apache.solr.rest.ManagedResourceStorage.StorageIO;
+
+/**
+ * Words and lemmas managed through the Solr REST API, overriding the
+ * dictionaries of {@link DictionaryLemmatizerFilterFactory}. Entries map a word
+ * to the list of its lemmas, an empty list hiding the word of the dictionaries:
+ * 
+ * <pre>
+ * curl -X PUT -H 'Content-type:application/json' --data-binary '{"sykler":["sykkel","sykle"]}' \
+ *     http://localhost:8983/solr/collection/schema/analysis/lemmas/norwegian
+ * curl -X DELETE http://localhost:8983/solr/collection/schema/analysis/lemmas/norwegian/sykler
+ * </pre>
+ * 
+ * Entries are persisted with the other managed resources. Every update
+ * publishes a new immutable snapshot of the entries to the observing
+ * factories once stored, an update failing to be stored is not applied.
+ */
+public class ManagedLemmaResource extends ManagedResource {
+
+  public static final String LEMMAS_JSON_FIELD = "lemmas";
+
+  private volatile Map<String, List<String>> entries = Collections.emptyMap();
+  // updated entries waiting to be stored before they are published
+  private Map<String, List<String>> pending = null;
+  private final List<Consumer<Map<String, String[]>>> listeners = new CopyOnWriteArrayList<Consumer<Map<String, String[]>>>();
+
+  public ManagedLemmaResource(final String resourceId, final SolrResourceLoader loader, final StorageIO storageIO)
+      throws SolrException {
+    super(resourceId, loader, storageIO);
+  }
+
+  /**
+   * Registers a consumer of the entries, called with the current entries right
+   * away and then after every update.
+   */
+  public void addListener(final Consumer<Map<String, String[]>> listener) {
+    listeners.add(listener);
+    listener.accept(snapshot(entries));
+  }
+
+  @Override
+  protected synchronized void onManagedDataLoadedFromStorage(final NamedList<?> managedInitArgs,
+      final Object managedData) throws SolrException {
+    final Map<String, List<String>> loaded = new TreeMap<String, List<String>>();
+    if (managedData != null) {
+      addEntries(loaded, managedData);
+    }
+    publish(loaded);
+  }
+
+  @Override
+  protected synchronized Object applyUpdatesToManagedData(final Object updates) {
+    final Map<String, List<String>> updated = new TreeMap<String, List<String>>(entries);
+    if (!addEntries(updated, updates)) {
+      return null;
+    }
+    pending = updated;
+    return updated;
+  }
+
+  @Override
+  protected synchronized void storeManagedData(final Object managedData) {
+    try {
+      super.storeManagedData(managedData);
+      if (managedData == pending) {
+        publish(pending);
+      }
+    } finally {
+      pending = null;
+    }
+  }
+
+  @Override
+  public synchronized void doDeleteChild(final BaseSolrResource endpoint, final String childId) {
+    if (!entries.containsKey(childId)) {
+      throw new SolrException(ErrorCode.NOT_FOUND, childId + " not found in " + getResourceId());
+    }
+    final Map<String, List<String>> updated = new TreeMap<String, List<String>>(entries);
+    updated.remove(childId);
+    pending = updated;
+    storeManagedData(updated);
+  }
+
+  @Override
+  public void doGet(final BaseSolrResource endpoint, final String childId) {
+    final Map<String, List<String>> current = entries;
+    if (childId != null) {
+      final List<String> lemmas = current.get(childId);
+      if (lemmas == null) {
+        throw new SolrException(ErrorCode.NOT_FOUND, childId + " not found in " + getResourceId());
+      }
+      endpoint.getSolrResponse().add(childId, lemmas);
+    } else {
+      endpoint.getSolrResponse().add(LEMMAS_JSON_FIELD, buildMapToStore(current));
+    }
+  }
+
+  /*
+   * Adds JSON entries, either a lemma or a list of lemmas by word, and returns
+   * whether any entry changed.
+   */
+  private boolean addEntries(final Map<String, List<String>> target, final Object json) {
+    if (!(json instanceof Map)) {
+      throw new SolrException(ErrorCode.BAD_REQUEST, "Unsupported data format (" + json.getClass().getName()
+          + "); expected a JSON object of words mapped to lists of lemmas");
+    }
+    boolean changed = false;
+    for (Map.Entry<?, ?> entry : ((Map<?, ?>) json).entrySet()) {
+      final List<String> lemmas = new ArrayList<String>();
+      final Object value = entry.getValue();
+      if (value instanceof Collection) {
+        for (Object lemma : (Collection<?>) value) {
+          lemmas.add(lemma.toString());
+        }
+      } else if (value != null) {
+        lemmas.add(value.toString());
+      }
+      if (!lemmas.equals(target.put(entry.getKey().toString(), lemmas))) {
+        changed = true;
+      }
+    }
+    return changed;
+  }
+
+  private void publish(final Map<String, List<String>> updated) {
+    entries = Collections.unmodifiableMap(updated);
+    final Map<String, String[]> snapshot = snapshot(updated);
+    for (Consumer<Map<String, String[]>> listener : listeners) {
+      listener.accept(snapshot);
+    }
+  }
+
+  private static Map<String, String[]> snapshot(final Map<String, List<String>> entries) {
+    final Map<String, String[]> snapshot = new TreeMap<String, String[]>();
+    for (Map.Entry<String, List<String>> entry : entries.entrySet()) {
+      snapshot.put(entry.getKey(), entry.getValue().toArray(new String[entry.getValue().size()]));
+    }
+    return Collections.unmodifiableMap(snapshot);
+  }
+
+}
@@ -0,0 +1,184 @@
+package org.apache.lucene.analysis.lemmatizer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Map;
+
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.util.CharArrayMap;
+
+/**
+ * {@link LemmaDictionary} overriding some words of a base dictionary. An
+ * overlay is immutable, updates build a new one on the same base, which is
+ * published to the filters in place of the previous one.
+ * <p>
+ * A word of the overlay without any lemma hides the word of the base. Lemma
+ * ids of the overlay follow the ids of the base.
+ * </p>
+ */
+public class OverlayLemmaDictionary extends LemmaDictionary {
+
+  private final LemmaDictionary base;
+  private final CharArrayMap<int[]> overlay;
+  private final String[] lemmas;
+
+  /**
+   * Creates a new OverlayLemmaDictionary
+   * 
+   * @param base the dictionary looked up for the words missing from the
+   *          overlay
+   * @param wordlist the words overridden, with their lemmas
+   */
+  public OverlayLemmaDictionary(final LemmaDictionary base, final Map<String, String[]> wordlist) {
+    this.base = base;
+    final LemmaSetPool pool = new LemmaSetPool();
+    final int[] ordinals = new int[wordlist.size()];
+    int i = 0;
+    for (String[] lemmas : wordlist.values()) {
+      ordinals[i++] = pool.intern(lemmas);
+    }
+    // shift the ids of the interned sets past the ids of the base
+    final int[][] sets = pool.sets();
+    final int offset = base.lemmaCount();
+    for (int[] set : sets) {
+      for (int j = 0; j < set.length; j++) {
+        set[j] += offset;
+      }
+    }
+    // words are folded as the base words are
+    setFolding(base.getFolding());
+    setWordClasses(base.getWordClasses());
+    final WordFolding.Folder folder = getFolding().newFolder();
+    overlay = new CharArrayMap<int[]>(wordlist.size(), false);
+    // the words of the overlay are let through on top of the words of the base
+    final WordFilter.Builder filter = new WordFilter.Builder(base.getWordFilter());
+    i = 0;
+    for (String word : wordlist.keySet()) {
+      final String key = getFolding().isNone() ? word : folder.fold(word);
+      overlay.put(key, sets[ordinals[i++]]);
+      filter.add(key);
+    }
+    setWordFilter(base.getWordFilter() == WordFilter.ALL ? WordFilter.ALL : filter.build());
+    lemmas = pool.lemmas();
+  }
+
+  /**
+   * Returns the heap retained by the overlay and its base.
+   */
+  @Override
+  public long ramBytesUsed() {
+    return sizeOf(overlay) + sizeOf(lemmas) + getWordFilter().ramBytesUsed() + base.ramBytesUsed();
+  }
+
+  @Override
+  public long offHeapBytesUsed() {
+    return base.offHeapBytesUsed();
+  }
+
+  @Override
+  public Reader getReader() {
+    final Reader baseReader = base.getReader();
+    return new Reader() {
+      private int[] ids;
+
+      @Override
+      public int lookup(final char[] buffer, final int offset, final int length) {
+        final int[] found = overlay.get(buffer, offset, length);
+        if (found == null) {
+          ids = null;
+          return baseReader.lookup(buffer, offset, length);
+        }
+        ids = found;
+        return found.length;
+      }
+
+      @Override
+      public int[] lemmaIds() {
+        return ids != null ? ids : baseReader.lemmaIds();
+      }
+    };
+  }
+
+  /**
+   * Visits the words of the overlay having lemmas, then the words of the base
+   * missing from the overlay.
+   */
+  @Override
+  public void visitWords(final WordVisitor visitor) {
+    final CharArrayMap<int[]>.EntryIterator it = overlay.entrySet().iterator();
+    while (it.hasNext()) {
+      final char[] word = it.nextKey();
+      final int[] ids = it.currentValue();
+      if (ids.length > 0) {
+        visitor.word(word, 0, word.length, ids, ids.length);
+      }
+    }
+    base.visitWords(new WordVisitor() {
+      @Override
+      public void word(final char[] buffer, final int offset, final int length, final int[] lemmaIds,
+          final int count) {
+        if (!overlay.containsKey(buffer, offset, length)) {
+          visitor.word(buffer, offset, length, lemmaIds, count);
+        }
+      }
+    });
+  }
+
+  @Override
+  public int lemmaCount() {
+    return base.lemmaCount() + lemmas.length;
+  }
+
+  @Override
+  public String lemma(final int id) {
+    final int baseCount = base.lemmaCount();
+    return id < baseCount ? base.lemma(id) : lemmas[id - baseCount];
+  }
+
+  /** Returns the tag of a lemma of the base, the lemmas of the overlay are not tagged. */
+  @Override
+  public int lemmaTag(final int id) {
+    return id < base.lemmaCount() ? base.lemmaTag(id) : -1;
+  }
+
+  @Override
+  public void copyLemma(final int id, final CharTermAttribute termAtt) {
+    final int baseCount = base.lemmaCount();
+    if (id < baseCount) {
+      base.copyLemma(id, termAtt);
+    } else {
+      termAtt.setEmpty().append(lemmas[id - baseCount]);
+    }
+  }
+
+  @Override
+  public void copyBareLemma(final int id, final CharTermAttribute termAtt) {
+    final int baseCount = base.lemmaCount();
+    if (id < baseCount) {
+      base.copyBareLemma(id, termAtt);
+    } else {
+      termAtt.setEmpty().append(lemmas[id - baseCount]);
+    }
+  }
+
+  /** Returns the dictionary this overlay overrides. */
+  public LemmaDictionary getBase() {
+    return base;
+  }
+
+}
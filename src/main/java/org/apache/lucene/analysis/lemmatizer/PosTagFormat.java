@@ -0,0 +1,81 @@
+package org.apache.lucene.analysis.lemmatizer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Locale;
+
+import org.apache.lucene.analysis.tokenattributes.FlagsAttribute;
+import org.apache.lucene.analysis.tokenattributes.PayloadAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+
+/**
+ * How {@link DictionaryLemmatizerFilter} outputs the tags of the lemmas of a
+ * dictionary built with <code>storePosTag</code>, the index of their word
+ * class. Lemmas without any tag, and words missing from the dictionary, are
+ * output as they are.
+ */
+public enum PosTagFormat {
+
+  /**
+   * The tag follows the lemma in the term, after a <code>$</code>: the
+   * lemmas of a word in different word classes are different terms.
+   */
+  SUFFIX,
+
+  /**
+   * The term is the bare lemma, the tag is the single byte
+   * {@link PayloadAttribute payload} of the token. Up to 256 word classes.
+   */
+  PAYLOAD,
+
+  /**
+   * The term is the bare lemma, the bit of the tag is set in the
+   * {@link FlagsAttribute flags} of the token. Up to 32 word classes.
+   */
+  FLAGS,
+
+  /**
+   * The term is the bare lemma, the name of the word class is the
+   * {@link TypeAttribute type} of the token.
+   */
+  TYPE;
+
+  /**
+   * Returns the format with the provided name, in any case.
+   * 
+   * @throws IllegalArgumentException if there is no such format
+   */
+  public static PosTagFormat forName(final String name) {
+    return valueOf(name.toUpperCase(Locale.ROOT));
+  }
+
+  /**
+   * Returns the maximum number of word classes this format can tell apart.
+   */
+  public int maxWordClasses() {
+    switch (this) {
+      case PAYLOAD:
+        return 256;
+      case FLAGS:
+        return Integer.SIZE;
+      default:
+        return Short.MAX_VALUE + 1;
+    }
+  }
+
+}
@@ -0,0 +1,284 @@
+package org.apache.lucene.analysis.lemmatizer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Arrays;
+
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.util.CharArrayMap;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * Maps the lemmas of a {@link LemmaDictionary} to all their forms: the words
+ * having the lemma, and the lemma itself. Forms are folded as the words of the
+ * dictionary are.
+ * <p>
+ * Forms are interned once in a char table and identified by their position in
+ * it, each lemma holding a range of form ids, so that a word with several
+ * lemmas is stored once. The index is built from the words of a dictionary,
+ * with {@link LemmaDictionary#getReverseIndex()}, and expands words through an
+ * {@link Expander} obtained for each consumer.
+ * </p>
+ */
+public final class ReverseLemmaIndex implements Accountable {
+
+  private final LemmaDictionary dictionary;
+  private final char[] formChars;
+  private final int[] formOffsets;
+  private final int[] lemmaFormOffsets;
+  private final int[] lemmaForms;
+  // first id of the lemmas folded the same way, which holds their forms
+  private final int[] canonical;
+  // folded lemmas, for the lemmas that are not words of the dictionary
+  private final CharArrayMap<int[]> lemmas;
+
+  private ReverseLemmaIndex(final LemmaDictionary dictionary, final char[] formChars, final int[] formOffsets,
+      final int[] lemmaFormOffsets, final int[] lemmaForms, final int[] canonical,
+      final CharArrayMap<int[]> lemmas) {
+    this.dictionary = dictionary;
+    this.formChars = formChars;
+    this.formOffsets = formOffsets;
+    this.lemmaFormOffsets = lemmaFormOffsets;
+    this.lemmaForms = lemmaForms;
+    this.canonical = canonical;
+    this.lemmas = lemmas;
+  }
+
+  /**
+   * Builds the reverse index of the words of a dictionary.
+   */
+  static ReverseLemmaIndex build(final LemmaDictionary dictionary) {
+    final Forms forms = new Forms();
+    final int lemmaCount = dictionary.lemmaCount();
+    // lemmas are forms of themselves; equal lemmas, such as the lemmas of an
+    // overlay also found in its base, share their forms
+    final WordFolding.Folder folder = dictionary.getFolding().newFolder();
+    final CharArrayMap<int[]> lemmas = new CharArrayMap<int[]>(lemmaCount, false);
+    final int[] canonical = new int[lemmaCount];
+    for (int id = 0; id < lemmaCount; id++) {
+      final String lemma = dictionary.getFolding().isNone() ? dictionary.lemma(id) : folder.fold(dictionary.lemma(
+          id));
+      final int[] ids = lemmas.get(lemma);
+      if (ids == null) {
+        final char[] chars = lemma.toCharArray();
+        forms.add(id, forms.intern(chars, 0, chars.length));
+        lemmas.put(lemma, new int[] { id });
+        canonical[id] = id;
+      } else {
+        canonical[id] = ids[0];
+      }
+    }
+    dictionary.visitWords(new LemmaDictionary.WordVisitor() {
+      @Override
+      public void word(final char[] buffer, final int offset, final int length, final int[] lemmaIds,
+          final int count) {
+        final int form = forms.intern(buffer, offset, length);
+        for (int i = 0; i < count; i++) {
+          forms.add(canonical[lemmaIds[i]], form);
+        }
+      }
+    });
+
+    // group the forms by lemma, the lemma first
+    final int[] lemmaFormOffsets = new int[lemmaCount + 1];
+    for (int i = 0; i < forms.pairCount; i++) {
+      lemmaFormOffsets[forms.pairLemmas[i] + 1]++;
+    }
+    for (int id = 0; id < lemmaCount; id++) {
+      lemmaFormOffsets[id + 1] += lemmaFormOffsets[id];
+    }
+    final int[] lemmaForms = new int[forms.pairCount];
+    final int[] next = Arrays.copyOf(lemmaFormOffsets, lemmaCount);
+    for (int i = 0; i < forms.pairCount; i++) {
+      final int id = forms.pairLemmas[i];
+      final int form = forms.pairForms[i];
+      if (!contains(lemmaForms, lemmaFormOffsets[id], next[id], form)) {
+        lemmaForms[next[id]++] = form;
+      }
+    }
+    // drop the duplicates, words equal to one of their lemmas
+    int length = 0;
+    for (int id = 0; id < lemmaCount; id++) {
+      final int start = lemmaFormOffsets[id];
+      lemmaFormOffsets[id] = length;
+      System.arraycopy(lemmaForms, start, lemmaForms, length, next[id] - start);
+      length += next[id] - start;
+    }
+    lemmaFormOffsets[lemmaCount] = length;
+    return new ReverseLemmaIndex(dictionary, Arrays.copyOf(forms.chars, forms.charCount), Arrays.copyOf(
+        forms.offsets, forms.formCount + 1), lemmaFormOffsets, Arrays.copyOf(lemmaForms, length), canonical,
+        lemmas);
+  }
+
+  /** Returns the number of distinct forms. */
+  public int formCount() {
+    return formOffsets.length - 1;
+  }
+
+  /** Returns the form with the provided id. */
+  public String form(final int id) {
+    return new String(formChars, formOffsets[id], formOffsets[id + 1] - formOffsets[id]);
+  }
+
+  /**
+   * Replaces the content of a term attribute with the form with the provided
+   * id.
+   */
+  public void copyForm(final int id, final CharTermAttribute termAtt) {
+    termAtt.copyBuffer(formChars, formOffsets[id], formOffsets[id + 1] - formOffsets[id]);
+  }
+
+  /**
+   * Returns a new {@link Expander} over this index. Expanders are not
+   * thread-safe: every filter holds its own.
+   */
+  public Expander newExpander() {
+    return new Expander();
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    return RamUsageEstimator.sizeOf(formChars) + RamUsageEstimator.sizeOf(formOffsets) + RamUsageEstimator.sizeOf(
+        lemmaFormOffsets) + RamUsageEstimator.sizeOf(lemmaForms) + RamUsageEstimator.sizeOf(canonical)
+        + LemmaDictionary.sizeOf(lemmas);
+  }
+
+  private static boolean contains(final int[] array, final int from, final int to, final int value) {
+    for (int i = from; i < to; i++) {
+      if (array[i] == value) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Expands words to the forms of their lemmas, with a
+   * {@link LemmaDictionary.Reader} and scratch arrays of its own.
+   */
+  public final class Expander {
+    private final LemmaDictionary.Reader reader = dictionary.getReader();
+    private final WordFolding.Folder folder = dictionary.getFolding().isNone() ? null : dictionary.getFolding()
+        .newFolder();
+    private int[] forms = new int[16];
+
+    private Expander() {
+    }
+
+    /**
+     * Expands the word held in a term buffer to the forms of its lemmas, the
+     * word itself excluded. The forms are then available through
+     * {@link #formIds()} until the next expansion.
+     *
+     * @return the number of forms, 0 if the word is neither a word nor a lemma
+     *         of the dictionary
+     */
+    public int expand(final char[] buffer, final int offset, final int length) {
+      char[] key = buffer;
+      int keyOffset = offset;
+      int keyLength = length;
+      if (folder != null) {
+        keyLength = folder.fold(buffer, offset, length);
+        key = folder.buffer();
+        keyOffset = 0;
+      }
+      int[] ids;
+      int count = reader.lookup(key, keyOffset, keyLength);
+      if (count > 0) {
+        ids = reader.lemmaIds();
+      } else {
+        ids = lemmas.get(key, keyOffset, keyLength);
+        if (ids == null) {
+          return 0;
+        }
+        count = ids.length;
+      }
+      int formCount = 0;
+      for (int i = 0; i < count; i++) {
+        final int id = canonical[ids[i]];
+        for (int j = lemmaFormOffsets[id]; j < lemmaFormOffsets[id + 1]; j++) {
+          final int form = lemmaForms[j];
+          if (!contains(forms, 0, formCount, form) && !equals(form, buffer, offset, length)) {
+            forms = ArrayUtil.grow(forms, formCount + 1);
+            forms[formCount++] = form;
+          }
+        }
+      }
+      return formCount;
+    }
+
+    /**
+     * Returns the ids of the forms found by the last {@link #expand}. Only the
+     * first ids, up to the returned count, are meaningful.
+     */
+    public int[] formIds() {
+      return forms;
+    }
+
+    private boolean equals(final int form, final char[] buffer, final int offset, final int length) {
+      final int start = formOffsets[form];
+      if (formOffsets[form + 1] - start != length) {
+        return false;
+      }
+      for (int i = 0; i < length; i++) {
+        if (formChars[start + i] != buffer[offset + i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /*
+   * Interned forms and (lemma, form) pairs, while building.
+   */
+  private static final class Forms {
+    private final CharArrayMap<Integer> ids = new CharArrayMap<Integer>(1024, false);
+    private char[] chars = new char[1024];
+    private int[] offsets = new int[1024];
+    private int charCount;
+    private int formCount;
+    private int[] pairLemmas = new int[1024];
+    private int[] pairForms = new int[1024];
+    private int pairCount;
+
+    int intern(final char[] buffer, final int offset, final int length) {
+      final Integer id = ids.get(buffer, offset, length);
+      if (id != null) {
+        return id;
+      }
+      chars = ArrayUtil.grow(chars, charCount + length);
+      System.arraycopy(buffer, offset, chars, charCount, length);
+      charCount += length;
+      offsets = ArrayUtil.grow(offsets, formCount + 2);
+      offsets[formCount + 1] = charCount;
+      ids.put(Arrays.copyOfRange(buffer, offset, offset + length), formCount);
+      return formCount++;
+    }
+
+    void add(final int lemma, final int form) {
+      pairLemmas = ArrayUtil.grow(pairLemmas, pairCount + 1);
+      pairForms = ArrayUtil.grow(pairForms, pairCount + 1);
+      pairLemmas[pairCount] = lemma;
+      pairForms[pairCount++] = form;
+    }
+  }
+
+}
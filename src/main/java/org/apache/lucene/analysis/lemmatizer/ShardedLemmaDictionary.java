@@ -0,0 +1,415 @@
+package org.apache.lucene.analysis.lemmatizer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * {@link LemmaDictionary} split into compiled shards, each holding the words
+ * of a hash range with their lemmas, loaded on first access and evicted under
+ * a memory budget. Cold shards cost nothing, a lookup in a loaded shard costs
+ * one hash more than in a {@link FlatLemmaDictionary}.
+ * <p>
+ * The manifest, written by {@link DictionaryCompiler} with its shards next to
+ * it, is a compiled dictionary without words holding the metadata, the names
+ * and lemma counts of the shards and the {@link WordFilter} of all the words:
+ * most of the words missing from the dictionary are rejected without loading
+ * their shard. Lemma ids are offset by the lemmas of the previous shards, a
+ * lemma found in several shards has several ids.
+ * </p>
+ * <p>
+ * Eviction approximates least recently used with a clock: a shard read since
+ * the hand last passed is spared once. Readers keep no reference to a shard
+ * between lookups, so an evicted shard is freed once the lookups in progress
+ * are over, and loaded again on next access. A shard is read under a lock of
+ * its own, lookups in the loaded shards go on meanwhile. A shard failing to
+ * load throws an {@link UncheckedIOException} out of the lookup, which the
+ * filters rethrow as its {@link IOException}. {@link #visitWords} and the
+ * indexes built from it, such as the reverse index and the lemma index of a
+ * {@link Decompounder}, go through every shard.
+ * </p>
+ */
+public class ShardedLemmaDictionary extends LemmaDictionary {
+
+  /** File name extension of the manifests of sharded dictionaries. */
+  public static final String EXTENSION = ".lemshards";
+
+  private static final String SHARDS = "shards";
+
+  /** Opens the shards of a dictionary, by name. */
+  public interface ShardLoader {
+
+    /** Loads the compiled shard with the provided name. */
+    FlatLemmaDictionary load(String name) throws IOException;
+
+  }
+
+  private final FlatLemmaDictionary manifest;
+  private final Map<String, String> metadata;
+  private final String[] names;
+  // id of the first lemma of every shard, then the number of lemmas
+  private final int[] bases;
+  private final ShardLoader loader;
+  private final long maxBytes;
+  private final AtomicReferenceArray<FlatLemmaDictionary> shards;
+  // held while a shard is read, one per shard
+  private final Object[] loading;
+  // set by readers without synchronization, a missed update only costs the
+  // shard its second chance
+  private final boolean[] referenced;
+  // the budget and the clock are updated under the lock of the dictionary,
+  // which is never held while reading a shard
+  private int hand;
+  private volatile int loadedCount;
+  private volatile long loadedBytes;
+  private volatile long loads;
+  private volatile long evictions;
+
+  private ShardedLemmaDictionary(final FlatLemmaDictionary manifest, final ShardLoader loader,
+      final long maxBytes) throws IOException {
+    this.manifest = manifest;
+    this.loader = loader;
+    this.maxBytes = maxBytes;
+    final String shardList = manifest.getMetadata().get(SHARDS);
+    if (shardList == null) {
+      throw new IOException("Not the manifest of a sharded lemma dictionary");
+    }
+    final String[] entries = shardList.split(",");
+    names = new String[entries.length];
+    bases = new int[entries.length + 1];
+    for (int i = 0; i < entries.length; i++) {
+      final int colon = entries[i].lastIndexOf(':');
+      names[i] = entries[i].substring(0, colon);
+      bases[i + 1] = bases[i] + Integer.parseInt(entries[i].substring(colon + 1));
+    }
+    final Map<String, String> metadata = new LinkedHashMap<String, String>(manifest.getMetadata());
+    metadata.remove(SHARDS);
+    this.metadata = Collections.unmodifiableMap(metadata);
+    shards = new AtomicReferenceArray<FlatLemmaDictionary>(names.length);
+    loading = new Object[names.length];
+    for (int i = 0; i < loading.length; i++) {
+      loading[i] = new Object();
+    }
+    referenced = new boolean[names.length];
+    setFolding(manifest.getFolding());
+    setWordClasses(manifest.getWordClasses());
+    setWordFilter(manifest.getWordFilter());
+  }
+
+  /**
+   * Opens a sharded dictionary from its manifest. No shard is loaded until a
+   * word of its hash range is looked up.
+   *
+   * @param manifest the manifest, from its position to its limit
+   * @param loader loader of the shards listed in the manifest
+   * @param maxBytes memory the loaded shards may take, on heap or off heap, 0
+   *          for no limit. The last loaded shard is kept whatever its size.
+   */
+  public static ShardedLemmaDictionary open(final ByteBuffer manifest, final ShardLoader loader,
+      final long maxBytes) throws IOException {
+    if (maxBytes < 0) {
+      throw new IllegalArgumentException("Memory budget must not be negative: " + maxBytes);
+    }
+    return new ShardedLemmaDictionary(FlatLemmaDictionary.open(manifest), loader, maxBytes);
+  }
+
+  /**
+   * Opens a sharded dictionary from its manifest file, its shards being read
+   * from the same directory.
+   *
+   * @param maxBytes memory the loaded shards may take, 0 for no limit
+   * @param direct whether to load the shards in direct memory
+   */
+  public static ShardedLemmaDictionary open(final Path manifest, final long maxBytes, final boolean direct)
+      throws IOException {
+    return open(ByteBuffer.wrap(Files.readAllBytes(manifest)), name -> {
+      try (InputStream inputStream = Files.newInputStream(manifest.resolveSibling(name))) {
+        return FlatLemmaDictionary.read(inputStream, direct);
+      }
+    }, maxBytes);
+  }
+
+  /*
+   * Serializes the manifest of shards compiled with the provided metadata.
+   */
+  static ByteBuffer writeManifest(final String[] names, final int[] lemmaCounts, final WordFilter filter,
+      final Map<String, String> metadata) {
+    final StringBuilder shardList = new StringBuilder();
+    for (int i = 0; i < names.length; i++) {
+      shardList.append(i == 0 ? "" : ",").append(names[i]).append(':').append(lemmaCounts[i]);
+    }
+    final Map<String, String> manifestMetadata = new LinkedHashMap<String, String>(metadata);
+    manifestMetadata.put(SHARDS, shardList.toString());
+    return FlatLemmaDictionary.write(Collections.<String, Integer> emptyMap(), new int[0][], new String[0], null,
+        filter, manifestMetadata, false);
+  }
+
+  /*
+   * Returns the shard holding a word, out of the high bits of its hash: the
+   * low bits pick its slot in the hash table of the shard.
+   */
+  static int shard(final char[] buffer, final int offset, final int length, final int shardCount) {
+    return (int) (((FlatLemmaDictionary.hash(buffer, offset, length) & 0xFFFFFFFFL) * shardCount) >>> 32);
+  }
+
+  /**
+   * Returns the metadata recorded when the dictionary was compiled, such as its
+   * parsing parameters.
+   */
+  public Map<String, String> getMetadata() {
+    return metadata;
+  }
+
+  /** Returns the number of shards. */
+  public int shardCount() {
+    return names.length;
+  }
+
+  /** Returns the number of shards currently loaded. */
+  public int loadedShardCount() {
+    return loadedCount;
+  }
+
+  /** Returns how many times shards were loaded, reloads included. */
+  public long getShardLoads() {
+    return loads;
+  }
+
+  /** Returns how many times shards were evicted to stay under the budget. */
+  public long getShardEvictions() {
+    return evictions;
+  }
+
+  /*
+   * Returns the shard with the provided index, loading it if needed.
+   */
+  private FlatLemmaDictionary shard(final int index) {
+    final FlatLemmaDictionary shard = shards.get(index);
+    if (shard == null) {
+      return load(index);
+    }
+    if (!referenced[index]) {
+      referenced[index] = true;
+    }
+    return shard;
+  }
+
+  /*
+   * Loads a shard, once whatever the number of readers waiting for it.
+   */
+  private FlatLemmaDictionary load(final int index) {
+    synchronized (loading[index]) {
+      final FlatLemmaDictionary loaded = shards.get(index);
+      if (loaded != null) {
+        return loaded;
+      }
+      final FlatLemmaDictionary shard;
+      try {
+        shard = loader.load(names[index]);
+      } catch (IOException e) {
+        throw new UncheckedIOException("Unable to load lemma dictionary shard " + names[index], e);
+      }
+      if (shard.lemmaCount() != bases[index + 1] - bases[index]) {
+        throw new UncheckedIOException(new IOException("Lemma dictionary shard " + names[index]
+            + " does not match its manifest, the dictionary must be compiled again"));
+      }
+      add(index, shard);
+      return shard;
+    }
+  }
+
+  /*
+   * Publishes a shard just loaded, evicting others if over the budget.
+   */
+  private synchronized void add(final int index, final FlatLemmaDictionary shard) {
+    shards.set(index, shard);
+    referenced[index] = true;
+    loadedBytes += sizeOf(shard);
+    loadedCount++;
+    loads++;
+    evict(index);
+  }
+
+  /*
+   * Evicts shards, other than the one just loaded, until the loaded ones fit
+   * in the budget.
+   */
+  private void evict(final int loaded) {
+    for (int step = 0; maxBytes > 0 && loadedBytes > maxBytes && loadedCount > 1; step++) {
+      hand = (hand + 1) % names.length;
+      final FlatLemmaDictionary shard = shards.get(hand);
+      if (hand == loaded || shard == null) {
+        continue;
+      }
+      // spared once if read since the last pass, not beyond two full turns
+      // so that readers setting the bit again can't keep the hand turning
+      if (referenced[hand] && step < 2 * names.length) {
+        referenced[hand] = false;
+        continue;
+      }
+      shards.set(hand, null);
+      loadedBytes -= sizeOf(shard);
+      loadedCount--;
+      evictions++;
+    }
+  }
+
+  private static long sizeOf(final FlatLemmaDictionary shard) {
+    return shard.ramBytesUsed() + shard.offHeapBytesUsed();
+  }
+
+  /*
+   * Returns the shard holding the lemma with the provided id, the last one
+   * starting at or before it, as empty shards start where the next one does.
+   */
+  private int shardOfLemma(final int id) {
+    int low = 0;
+    int high = names.length - 1;
+    while (low < high) {
+      final int mid = (low + high + 1) >>> 1;
+      if (bases[mid] <= id) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return low;
+  }
+
+  @Override
+  public Reader getReader() {
+    return new ShardedReader();
+  }
+
+  @Override
+  public int lemmaCount() {
+    return bases[names.length];
+  }
+
+  @Override
+  public String lemma(final int id) {
+    final int index = shardOfLemma(id);
+    return shard(index).lemma(id - bases[index]);
+  }
+
+  @Override
+  public int lemmaTag(final int id) {
+    final int index = shardOfLemma(id);
+    return shard(index).lemmaTag(id - bases[index]);
+  }
+
+  @Override
+  public void copyLemma(final int id, final CharTermAttribute termAtt) {
+    final int index = shardOfLemma(id);
+    shard(index).copyLemma(id - bases[index], termAtt);
+  }
+
+  @Override
+  public void copyBareLemma(final int id, final CharTermAttribute termAtt) {
+    final int index = shardOfLemma(id);
+    shard(index).copyBareLemma(id - bases[index], termAtt);
+  }
+
+  @Override
+  public void visitWords(final WordVisitor visitor) {
+    for (int i = 0; i < names.length; i++) {
+      final int base = bases[i];
+      shard(i).visitWords(new WordVisitor() {
+        private int[] ids = new int[4];
+
+        @Override
+        public void word(final char[] buffer, final int offset, final int length, final int[] lemmaIds,
+            final int count) {
+          ids = ArrayUtil.grow(ids, count);
+          for (int j = 0; j < count; j++) {
+            ids[j] = base + lemmaIds[j];
+          }
+          visitor.word(buffer, offset, length, ids, count);
+        }
+      });
+    }
+  }
+
+  /**
+   * Returns the heap retained by the manifest and the shards loaded on heap.
+   */
+  @Override
+  public long ramBytesUsed() {
+    long size = manifest.ramBytesUsed() + RamUsageEstimator.sizeOf(bases) + sizeOf(names);
+    for (int i = 0; i < names.length; i++) {
+      final FlatLemmaDictionary shard = shards.get(i);
+      if (shard != null) {
+        size += shard.ramBytesUsed();
+      }
+    }
+    return size;
+  }
+
+  /** Returns the direct memory of the shards loaded in direct memory. */
+  @Override
+  public long offHeapBytesUsed() {
+    long size = 0;
+    for (int i = 0; i < names.length; i++) {
+      final FlatLemmaDictionary shard = shards.get(i);
+      if (shard != null) {
+        size += shard.offHeapBytesUsed();
+      }
+    }
+    return size;
+  }
+
+  /** Looks words up in their shard, offsetting the ids of their lemmas. */
+  private final class ShardedReader extends Reader {
+    private int[] ids = new int[4];
+
+    @Override
+    public int lookup(final char[] buffer, final int offset, final int length) {
+      final int index = ShardedLemmaDictionary.shard(buffer, offset, length, names.length);
+      final FlatLemmaDictionary shard = shard(index);
+      final int word = shard.find(buffer, offset, length);
+      if (word < 0) {
+        return 0;
+      }
+      final int count = shard.lemmaSetSize(word);
+      if (ids.length < count) {
+        ids = ArrayUtil.grow(ids, count);
+      }
+      shard.copyLemmaIds(word, ids, bases[index]);
+      return count;
+    }
+
+    @Override
+    public int[] lemmaIds() {
+      return ids;
+    }
+  }
+
+}
@@ -0,0 +1,124 @@
+package org.apache.lucene.analysis.lemmatizer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of values computed from terms, safe to share across threads
+ * without locking.
+ * <p>
+ * The cache is direct mapped: a term has a single slot, given by its hash, and
+ * a new entry evicts the one holding its slot. Entries are immutable and
+ * published through an atomic array, so a reader sees either the old or the
+ * new entry of a slot, and a lookup costs one hash and one key comparison.
+ * </p>
+ */
+public final class TermCache<V> {
+
+  private final AtomicReferenceArray<Entry<V>> slots;
+  private final int mask;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  /**
+   * Creates a cache of at least the given number of entries, rounded up to a
+   * power of two.
+   */
+  public TermCache(final int size) {
+    if (size <= 0) {
+      throw new IllegalArgumentException("Cache size must be positive: " + size);
+    }
+    final int capacity = size >= 1 << 30 ? 1 << 30 : Integer.highestOneBit(size * 2 - 1);
+    slots = new AtomicReferenceArray<Entry<V>>(capacity);
+    mask = capacity - 1;
+  }
+
+  /**
+   * Returns the value cached for the given term, or null.
+   */
+  public V get(final char[] buffer, final int offset, final int length) {
+    final int hash = FlatLemmaDictionary.hash(buffer, offset, length);
+    final Entry<V> entry = slots.get(hash & mask);
+    if (entry != null && entry.hash == hash && entry.matches(buffer, offset, length)) {
+      hits.increment();
+      return entry.value;
+    }
+    misses.increment();
+    return null;
+  }
+
+  /**
+   * Caches a value for a term, evicting the entry holding its slot.
+   *
+   * @param term the term, owned by the cache from now on
+   * @param value the value
+   */
+  public void put(final char[] term, final V value) {
+    final int hash = FlatLemmaDictionary.hash(term, 0, term.length);
+    slots.set(hash & mask, new Entry<V>(term, hash, value));
+  }
+
+  /** Returns the number of entries the cache holds at most. */
+  public int capacity() {
+    return slots.length();
+  }
+
+  /** Returns the number of lookups that found a value. */
+  public long hits() {
+    return hits.sum();
+  }
+
+  /** Returns the number of lookups that did not find a value. */
+  public long misses() {
+    return misses.sum();
+  }
+
+  /** Returns the ratio of lookups that found a value, 0 before any lookup. */
+  public double hitRatio() {
+    final long hits = hits();
+    final long lookups = hits + misses();
+    return lookups == 0 ? 0 : (double) hits / lookups;
+  }
+
+  private static final class Entry<V> {
+    private final char[] term;
+    private final int hash;
+    private final V value;
+
+    Entry(final char[] term, final int hash, final V value) {
+      this.term = term;
+      this.hash = hash;
+      this.value = value;
+    }
+
+    boolean matches(final char[] buffer, final int offset, final int length) {
+      if (term.length != length) {
+        return false;
+      }
+      for (int i = 0; i < length; i++) {
+        if (term[i] != buffer[offset + i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+}
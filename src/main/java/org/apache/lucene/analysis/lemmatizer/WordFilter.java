@@ -0,0 +1,187 @@
+package org.apache.lucene.analysis.lemmatizer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.nio.LongBuffer;
+
+import org.apache.lucene.util.Accountable;
+
+/**
+ * Rejects, before any lookup, the words a {@link LemmaDictionary} cannot hold:
+ * words shorter or longer than all of its words and, optionally, words missing
+ * from a Bloom filter over its words. Words are checked folded, as they are
+ * stored.
+ * <p>
+ * A lookup in an off-heap or memory mapped dictionary reads pages that may not
+ * be in memory, and an FST walk costs one arc per char: most of the tokens of
+ * a text that are missing from the dictionary are rejected here by a length
+ * comparison and a few bit tests on heap. A filter never rejects a word of the
+ * dictionary.
+ * </p>
+ */
+public final class WordFilter implements Accountable {
+
+  /** Lets every word through, for dictionaries whose words are not known. */
+  public static final WordFilter ALL = new WordFilter(0, Integer.MAX_VALUE, 0, null);
+
+  private final int minLength;
+  private final int maxLength;
+  private final int hashCount;
+  // bits of the Bloom filter, or null
+  private final LongBuffer bits;
+  private final long bitCount;
+
+  WordFilter(final int minLength, final int maxLength, final int hashCount, final LongBuffer bits) {
+    this.minLength = minLength;
+    this.maxLength = maxLength;
+    this.hashCount = hashCount;
+    this.bits = bits;
+    this.bitCount = bits == null ? 0 : 64L * bits.capacity();
+  }
+
+  /**
+   * Returns whether the word held in
+   * <code>buffer[offset..offset+length)</code> may be a word of the
+   * dictionary, false if it certainly is not.
+   */
+  public boolean mayContain(final char[] buffer, final int offset, final int length) {
+    if (length < minLength || length > maxLength) {
+      return false;
+    }
+    if (bits == null) {
+      return true;
+    }
+    final long hash = hash(buffer, offset, length);
+    final long h1 = hash & 0xFFFFFFFFL;
+    final long h2 = hash >>> 32;
+    for (int i = 0; i < hashCount; i++) {
+      final long bit = (h1 + i * h2) % bitCount;
+      if ((bits.get((int) (bit >>> 6)) & 1L << bit) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Returns the length of the shortest word of the dictionary. */
+  public int getMinLength() {
+    return minLength;
+  }
+
+  /** Returns the length of the longest word of the dictionary. */
+  public int getMaxLength() {
+    return maxLength;
+  }
+
+  /** Returns the number of hash functions of the Bloom filter, 0 without any. */
+  int getHashCount() {
+    return hashCount;
+  }
+
+  /** Returns the bits of the Bloom filter, or null. */
+  LongBuffer getBits() {
+    return bits;
+  }
+
+  /** Returns the heap or off-heap bytes of the Bloom filter. */
+  @Override
+  public long ramBytesUsed() {
+    return bitCount / 8;
+  }
+
+  /** Hashes chars to 64 bits, the same way at build and lookup time. */
+  private static long hash(final char[] buffer, final int offset, final int length) {
+    long h = 0xcbf29ce484222325L;
+    for (int i = offset; i < offset + length; i++) {
+      h = (h ^ buffer[i]) * 0x100000001b3L;
+    }
+    // murmur3 finalizer, both halves are used
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  /**
+   * Collects the words of a dictionary while it is built.
+   */
+  static final class Builder {
+    private final int hashCount;
+    private final long[] bits;
+    private int minLength = Integer.MAX_VALUE;
+    private int maxLength = 0;
+
+    /**
+     * @param bitsPerWord bits of the Bloom filter per word, 0 to only record
+     *          the length range of the words
+     * @param wordCount number of words to be added
+     */
+    Builder(final int bitsPerWord, final int wordCount) {
+      if (bitsPerWord > 0) {
+        // the number of hashes minimizing false positives
+        hashCount = Math.max(1, (int) Math.round(bitsPerWord * Math.log(2)));
+        bits = new long[(int) Math.max(1, ((long) bitsPerWord * wordCount + 63) / 64)];
+      } else {
+        hashCount = 0;
+        bits = null;
+      }
+    }
+
+    /**
+     * Starts from the words of another filter, with the same parameters.
+     */
+    Builder(final WordFilter filter) {
+      hashCount = filter.hashCount;
+      if (filter.bits != null) {
+        bits = new long[filter.bits.capacity()];
+        filter.bits.duplicate().get(bits);
+      } else {
+        bits = null;
+      }
+      minLength = filter.minLength;
+      maxLength = filter.maxLength;
+    }
+
+    void add(final char[] buffer, final int offset, final int length) {
+      minLength = Math.min(minLength, length);
+      maxLength = Math.max(maxLength, length);
+      if (bits == null) {
+        return;
+      }
+      final long hash = hash(buffer, offset, length);
+      final long h1 = hash & 0xFFFFFFFFL;
+      final long h2 = hash >>> 32;
+      final long bitCount = 64L * bits.length;
+      for (int i = 0; i < hashCount; i++) {
+        final long bit = (h1 + i * h2) % bitCount;
+        bits[(int) (bit >>> 6)] |= 1L << bit;
+      }
+    }
+
+    void add(final String word) {
+      add(word.toCharArray(), 0, word.length());
+    }
+
+    WordFilter build() {
+      return new WordFilter(minLength, maxLength, hashCount, bits == null ? null : LongBuffer.wrap(bits));
+    }
+  }
+
+}
@@ -0,0 +1,168 @@
+package org.apache.lucene.analysis.lemmatizer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Map;
+
+import org.apache.lucene.analysis.miscellaneous.ASCIIFoldingFilter;
+import org.apache.lucene.util.ArrayUtil;
+
+/**
+ * How the words of a dictionary are folded, when it is built and when it is
+ * looked up, so that a word matches whatever its case or accents. Lemmas are
+ * not folded.
+ * <p>
+ * Case folding lower cases every code point, as
+ * {@link org.apache.lucene.analysis.core.LowerCaseFilter} does. Accent folding
+ * replaces the characters outside of the Basic Latin block with their ASCII
+ * equivalent, as {@link ASCIIFoldingFilter} does.
+ * </p>
+ */
+public final class WordFolding {
+
+  /** Words are looked up as they are. */
+  public static final WordFolding NONE = new WordFolding(false, false);
+
+  static final String CASE_INSENSITIVE = "caseInsensitive";
+  static final String FOLD_ACCENTS = "foldAccents";
+
+  private final boolean caseInsensitive;
+  private final boolean foldAccents;
+
+  private WordFolding(final boolean caseInsensitive, final boolean foldAccents) {
+    this.caseInsensitive = caseInsensitive;
+    this.foldAccents = foldAccents;
+  }
+
+  /**
+   * Returns the folding of the given kinds.
+   */
+  public static WordFolding of(final boolean caseInsensitive, final boolean foldAccents) {
+    return caseInsensitive || foldAccents ? new WordFolding(caseInsensitive, foldAccents) : NONE;
+  }
+
+  /*
+   * Returns the folding recorded in the metadata of a dictionary.
+   */
+  static WordFolding of(final Map<String, String> metadata) {
+    return of(Boolean.parseBoolean(metadata.get(CASE_INSENSITIVE)), Boolean.parseBoolean(metadata.get(FOLD_ACCENTS)));
+  }
+
+  /*
+   * Records this folding in the metadata of a dictionary.
+   */
+  void addTo(final Map<String, String> metadata) {
+    metadata.put(CASE_INSENSITIVE, Boolean.toString(caseInsensitive));
+    metadata.put(FOLD_ACCENTS, Boolean.toString(foldAccents));
+  }
+
+  /** Returns whether words are lower cased. */
+  public boolean isCaseInsensitive() {
+    return caseInsensitive;
+  }
+
+  /** Returns whether accents are removed from words. */
+  public boolean isFoldAccents() {
+    return foldAccents;
+  }
+
+  /** Returns whether words are looked up as they are. */
+  public boolean isNone() {
+    return !caseInsensitive && !foldAccents;
+  }
+
+  /**
+   * Returns a new folder, which folds words into a buffer of its own and must
+   * not be shared between threads.
+   */
+  public Folder newFolder() {
+    return new Folder();
+  }
+
+  @Override
+  public boolean equals(final Object obj) {
+    return obj instanceof WordFolding && ((WordFolding) obj).caseInsensitive == caseInsensitive
+        && ((WordFolding) obj).foldAccents == foldAccents;
+  }
+
+  @Override
+  public int hashCode() {
+    return (caseInsensitive ? 1 : 0) + (foldAccents ? 2 : 0);
+  }
+
+  @Override
+  public String toString() {
+    return CASE_INSENSITIVE + "=" + caseInsensitive + "," + FOLD_ACCENTS + "=" + foldAccents;
+  }
+
+  /**
+   * Folds words into a reused buffer, without allocating once the buffer is
+   * large enough.
+   */
+  public final class Folder {
+    private char[] buffer = new char[64];
+    private final char[] single = new char[1];
+
+    private Folder() {
+    }
+
+    /**
+     * Folds the word held in a term buffer, into {@link #buffer()}. The term
+     * buffer is not modified.
+     *
+     * @return the length of the folded word
+     */
+    public int fold(final char[] term, final int offset, final int length) {
+      // a char folds to 4 chars at most
+      if (buffer.length < 4 * length) {
+        buffer = new char[ArrayUtil.oversize(4 * length, Character.BYTES)];
+      }
+      final int limit = offset + length;
+      int pos = 0;
+      for (int i = offset; i < limit;) {
+        int codePoint = Character.codePointAt(term, i, limit);
+        i += Character.charCount(codePoint);
+        if (caseInsensitive) {
+          codePoint = Character.toLowerCase(codePoint);
+        }
+        if (codePoint < 0x80 || !foldAccents || Character.isSupplementaryCodePoint(codePoint)) {
+          pos += Character.toChars(codePoint, buffer, pos);
+        } else {
+          single[0] = (char) codePoint;
+          pos = ASCIIFoldingFilter.foldToASCII(single, 0, buffer, pos, 1);
+        }
+      }
+      return pos;
+    }
+
+    /** Folds a word. */
+    public String fold(final String word) {
+      final char[] chars = word.toCharArray();
+      return new String(buffer, 0, fold(chars, 0, chars.length));
+    }
+
+    /**
+     * Returns the buffer holding the last folded word, valid until the next
+     * call to {@link #fold}.
+     */
+    public char[] buffer() {
+      return buffer;
+    }
+  }
+
+}
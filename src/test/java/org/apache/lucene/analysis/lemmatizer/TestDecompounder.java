@@ -0,0 +1,138 @@
+package org.apache.lucene.analysis.lemmatizer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.BaseTokenStreamTestCase;
+import org.apache.lucene.analysis.MockTokenizer;
+import org.apache.lucene.analysis.Tokenizer;
+
+public class TestDecompounder extends BaseTokenStreamTestCase {
+
+  private static final String DICTIONARY = "Haus\tHäuser\nTür\tTüren\nArbeit\tArbeiten\nMarkt\tMärkte\n"
+      + "Katze\tKatzen\n";
+
+  public void testSplit() throws IOException {
+    final LemmaDictionary dictionary = newDictionary();
+    final Decompounder.Splitter splitter = new Decompounder(3, new String[0], 16).newSplitter(dictionary);
+    // parts are words or lemmas of the dictionary
+    assertArrayEquals(new String[] { "Haus", "Tür" }, split(dictionary, splitter, "Haustür"));
+    assertArrayEquals(new String[] { "Haus", "Tür" }, split(dictionary, splitter, "Häusertüren"));
+    assertArrayEquals(new String[] { "Katze", "Haus" }, split(dictionary, splitter, "katzenhaus"));
+    // too short, single part, unknown part
+    assertArrayEquals(new String[0], split(dictionary, splitter, "Haus"));
+    assertArrayEquals(new String[0], split(dictionary, splitter, "Häuser"));
+    assertArrayEquals(new String[0], split(dictionary, splitter, "Haushund"));
+    // no linking element
+    assertArrayEquals(new String[0], split(dictionary, splitter, "Arbeitsmarkt"));
+  }
+
+  public void testLinks() throws IOException {
+    final LemmaDictionary dictionary = newDictionary();
+    final Decompounder.Splitter splitter = new Decompounder(3, new String[] { "s" }, 16).newSplitter(dictionary);
+    assertArrayEquals(new String[] { "Arbeit", "Markt" }, split(dictionary, splitter, "Arbeitsmarkt"));
+    assertArrayEquals(new String[] { "Arbeit", "Markt" }, split(dictionary, splitter, "Arbeitsmärkte"));
+    // a link does not end a word
+    assertArrayEquals(new String[0], split(dictionary, splitter, "Arbeitsmarkts"));
+  }
+
+  public void testCache() throws IOException {
+    final LemmaDictionary dictionary = newDictionary();
+    final Decompounder decompounder = new Decompounder(3, new String[0], 16);
+    final Decompounder.Splitter splitter = decompounder.newSplitter(dictionary);
+    assertArrayEquals(new String[] { "Haus", "Tür" }, split(dictionary, splitter, "Haustür"));
+    assertArrayEquals(new String[0], split(dictionary, splitter, "Haushund"));
+    // folded words share the entry of their decomposition
+    assertArrayEquals(new String[] { "Haus", "Tür" }, split(dictionary, splitter, "HAUSTÜR"));
+    assertArrayEquals(new String[0], split(dictionary, splitter, "Haushund"));
+    assertEquals(2, decompounder.getCache().hits());
+    // a new dictionary drops the cache
+    final LemmaDictionary reloaded = newDictionary();
+    decompounder.newSplitter(reloaded);
+    assertEquals(0, decompounder.getCache().hits());
+  }
+
+  public void testOverlay() throws IOException {
+    final LemmaDictionary base = newDictionary();
+    final Decompounder decompounder = new Decompounder(3, new String[0], 16);
+    assertArrayEquals(new String[0], split(base, decompounder.newSplitter(base), "Haushund"));
+    // the lemmas of an overlay are parts as well, on top of those of its base
+    final LemmaDictionary overlay = new OverlayLemmaDictionary(base, Collections.singletonMap("Hunde",
+        new String[] { "Hund" }));
+    final Decompounder.Splitter splitter = decompounder.newSplitter(overlay);
+    assertArrayEquals(new String[] { "Haus", "Hund" }, split(overlay, splitter, "Haushund"));
+    assertArrayEquals(new String[] { "Haus", "Tür" }, split(overlay, splitter, "Haustür"));
+  }
+
+  public void testManySplitsOfNoCompound() throws IOException {
+    final LemmaDictionaryBuilder builder = new LemmaDictionaryBuilder(0, 1, -1, null, "UTF-8", null, 3, false,
+        WordFolding.NONE);
+    builder.add("dictionary.txt", new ByteArrayInputStream("aaa\taaaa\naaa\taaaaa\n".getBytes(
+        StandardCharsets.UTF_8)));
+    final LemmaDictionary dictionary = builder.buildHeap();
+    final Decompounder.Splitter splitter = new Decompounder(3, new String[0], 0).newSplitter(dictionary);
+    // every prefix splits in many ways, the last char in none: without
+    // remembering the failed positions the split would never end
+    final StringBuilder word = new StringBuilder();
+    for (int i = 0; i < 200; i++) {
+      word.append('a');
+    }
+    assertArrayEquals(new String[0], split(dictionary, splitter, word + "b"));
+    assertArrayEquals(new String[] { "aaa" }, split(dictionary, splitter, word.toString()));
+  }
+
+  public void testFilter() throws IOException {
+    final DictionaryHolder holder = new DictionaryHolder(newDictionary());
+    final Decompounder decompounder = new Decompounder(3, new String[] { "s" }, 16);
+    Analyzer a = new Analyzer() {
+      @Override
+      protected TokenStreamComponents createComponents(final String fieldName) {
+        Tokenizer source = new MockTokenizer(MockTokenizer.WHITESPACE, false);
+        return new TokenStreamComponents(source, new DictionaryLemmatizerFilter(source,
+            new DictionaryLemmatizerFilter.Language(holder, null, null, null, decompounder), null,
+            PosTagFormat.SUFFIX, null));
+      }
+    };
+    // the parts follow the compound, at its position
+    assertAnalyzesTo(a, "Katzen Arbeitsmarkt Hund", new String[] { "Katze", "Arbeitsmarkt", "Arbeit", "Markt",
+        "Hund" }, new int[] { 1, 1, 0, 0, 1 });
+  }
+
+  private static LemmaDictionary newDictionary() throws IOException {
+    final LemmaDictionaryBuilder builder = new LemmaDictionaryBuilder(0, 1, -1, null, "UTF-8", null, 3, false,
+        WordFolding.of(true, false));
+    builder.add("dictionary.txt", new ByteArrayInputStream(DICTIONARY.getBytes(StandardCharsets.UTF_8)));
+    return builder.buildHeap();
+  }
+
+  private static String[] split(final LemmaDictionary dictionary, final Decompounder.Splitter splitter,
+      final String word) {
+    final int count = splitter.split(word.toCharArray(), 0, word.length());
+    final String[] lemmas = new String[count];
+    for (int i = 0; i < count; i++) {
+      lemmas[i] = dictionary.lemma(splitter.lemmaIds()[i]);
+    }
+    return lemmas;
+  }
+
+}
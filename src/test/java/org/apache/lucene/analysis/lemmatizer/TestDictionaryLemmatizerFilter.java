@@ -17,7 +17,9 @@ package org.apache.lucene.analysis.lemmatizer;
  * limitations under the License.
  */
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -27,6 +29,7 @@ import org.apache.lucene.analysis.MockTokenizer;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.Tokenizer;
 import org.apache.lucene.analysis.core.KeywordTokenizer;
+import org.apache.lucene.analysis.en.EnglishMinimalStemmer;
 import org.apache.lucene.analysis.miscellaneous.SetKeywordMarkerFilter;
 import org.apache.lucene.analysis.util.CharArraySet;
 
@@ -37,7 +40,7 @@ public class TestDictionaryLemmatizerFilter extends BaseTokenStreamTestCase {
     protected TokenStreamComponents createComponents(final String fieldName) {
       Tokenizer source = new MockTokenizer(MockTokenizer.WHITESPACE, false);
       return new TokenStreamComponents(source, new DictionaryLemmatizerFilter(source,
-          getMockedWordlist(), null, null));
+          getMockedWordlist(), null));
     }
   };
 
@@ -49,7 +52,7 @@ public class TestDictionaryLemmatizerFilter extends BaseTokenStreamTestCase {
         Tokenizer source = new MockTokenizer(MockTokenizer.WHITESPACE, false);
         TokenStream sink = new SetKeywordMarkerFilter(source, exclusionSet);
         return new TokenStreamComponents(source, new DictionaryLemmatizerFilter(sink,
-            getMockedWordlist(), null, null));
+            getMockedWordlist(), null));
       }
     };
     checkOneTerm(a, "katze", "katze");
@@ -66,12 +69,120 @@ public class TestDictionaryLemmatizerFilter extends BaseTokenStreamTestCase {
       protected TokenStreamComponents createComponents(final String fieldName) {
         Tokenizer tokenizer = new KeywordTokenizer();
         return new TokenStreamComponents(tokenizer, new DictionaryLemmatizerFilter(tokenizer,
-            getMockedWordlist(), null, null));
+            getMockedWordlist(), null));
       }
     };
     checkOneTerm(a, "", "");
   }
 
+  @SuppressWarnings("deprecation")
+  public void testLuceneStemmerInstance() throws IOException {
+    Analyzer a = new Analyzer() {
+      @Override
+      protected TokenStreamComponents createComponents(final String fieldName) {
+        Tokenizer source = new MockTokenizer(MockTokenizer.WHITESPACE, false);
+        return new TokenStreamComponents(source, new DictionaryLemmatizerFilter(source, getMockedWordlist(),
+            new EnglishMinimalStemmer(), "EnglishMinimalStemmer"));
+      }
+    };
+    assertAnalyzesTo(a, "katzen dogs", new String[] { "katze", "dog" });
+  }
+
+  public void testLemmatizeFromBuffer() {
+    final DictionaryLemmatizer lemmatizer = new DictionaryLemmatizer(getMockedWordlist());
+    final char[] buffer = "xxkatzenxx".toCharArray();
+    assertArrayEquals(new String[] { "katze" }, lemmatizer.lemmatize(buffer, 2, 6));
+    assertNull(lemmatizer.lemmatize(buffer, 0, 6));
+  }
+
+  public void testSharedLemmaSets() {
+    final Map<String, String[]> wordList = new HashMap<String, String[]>();
+    wordList.put("katzen", new String[] { "katze" });
+    wordList.put("kätzchen", new String[] { "katze" });
+    final LemmaDictionary dictionary = HeapLemmaDictionary.copyOf(wordList);
+    assertEquals(1, dictionary.lemmaCount());
+    final LemmaDictionary.Reader reader1 = dictionary.getReader();
+    final LemmaDictionary.Reader reader2 = dictionary.getReader();
+    assertEquals(1, reader1.lookup("katzen".toCharArray(), 0, 6));
+    assertEquals(1, reader2.lookup("kätzchen".toCharArray(), 0, 8));
+    assertSame(reader1.lemmaIds(), reader2.lemmaIds());
+  }
+
+  public void testSeveralLemmas() throws IOException {
+    final Map<String, String[]> wordList = getMockedWordlist();
+    wordList.put("sykler", new String[] { "sykkel", "sykle" });
+    final LemmaDictionary dictionary = HeapLemmaDictionary.copyOf(wordList);
+    Analyzer a = new Analyzer() {
+      @Override
+      protected TokenStreamComponents createComponents(final String fieldName) {
+        Tokenizer source = new MockTokenizer(MockTokenizer.WHITESPACE, false);
+        return new TokenStreamComponents(source, filter(source, dictionary));
+      }
+    };
+    // the other lemmas take the attributes of their word, not of the previous one
+    assertAnalyzesTo(a, "sykler katzen sykler hunde", new String[] { "sykkel", "sykle", "katze", "sykkel", "sykle",
+        "hunde" }, new int[] { 0, 0, 7, 14, 14, 21 }, new int[] { 6, 6, 13, 20, 20, 26 }, new int[] { 1, 0, 1, 1, 0,
+        1 });
+  }
+
+  public void testFoldedLookup() throws IOException {
+    final LemmaDictionaryBuilder builder = new LemmaDictionaryBuilder(0, 1, -1, null, "UTF-8", null, 3, false,
+        WordFolding.of(true, true));
+    builder.add("dictionary.txt", new ByteArrayInputStream("buch\tBücher\nKatze\tkatzen\n".getBytes(
+        StandardCharsets.UTF_8)));
+    final LemmaDictionary dictionary = builder.buildHeap();
+    Analyzer a = new Analyzer() {
+      @Override
+      protected TokenStreamComponents createComponents(final String fieldName) {
+        Tokenizer source = new MockTokenizer(MockTokenizer.WHITESPACE, false);
+        return new TokenStreamComponents(source, filter(source, dictionary));
+      }
+    };
+    // lemmas are output as they are, missing words are left untouched
+    assertAnalyzesTo(a, "Bücher BUCHER Katzen Hunde", new String[] { "buch", "buch", "Katze", "Hunde" });
+  }
+
+  public void testMetrics() throws IOException {
+    final Map<String, String[]> wordList = getMockedWordlist();
+    wordList.put("sykler", new String[] { "sykkel", "sykle" });
+    final DictionaryHolder holder = new DictionaryHolder(HeapLemmaDictionary.copyOf(wordList));
+    final LemmatizerMetrics metrics = new LemmatizerMetrics("test");
+    metrics.bind(holder, null);
+    final CharArraySet exclusionSet = new CharArraySet(asSet("bücher"), false);
+    Analyzer a = new Analyzer() {
+      @Override
+      protected TokenStreamComponents createComponents(final String fieldName) {
+        Tokenizer source = new MockTokenizer(MockTokenizer.WHITESPACE, false);
+        TokenStream sink = new SetKeywordMarkerFilter(source, exclusionSet);
+        return new TokenStreamComponents(source, new DictionaryLemmatizerFilter(sink,
+            new DictionaryLemmatizerFilter.Language(holder, null, null, metrics, null), null, PosTagFormat.SUFFIX,
+            null));
+      }
+    };
+    try (TokenStream ts = a.tokenStream("field", "katzen bücher sykler hunde")) {
+      ts.reset();
+      while (ts.incrementToken()) {
+      }
+      // counts are added at the end of the document only
+      assertEquals(0, metrics.getTokens());
+      ts.end();
+    }
+    assertEquals(4, metrics.getTokens());
+    assertEquals(1, metrics.getKeywords());
+    assertEquals(2, metrics.getHits());
+    assertEquals(1, metrics.getMisses());
+    assertEquals(0, metrics.getStemmed());
+    assertEquals(1, metrics.getExtraLemmas());
+    assertEquals(2.0 / 3, metrics.getHitRatio(), 1e-9);
+    assertTrue(metrics.getDictionaryRamBytesUsed() > 0);
+    assertEquals(0, metrics.getDictionaryOffHeapBytesUsed());
+  }
+
+  private static DictionaryLemmatizerFilter filter(final TokenStream input, final LemmaDictionary dictionary) {
+    return new DictionaryLemmatizerFilter(input, new DictionaryLemmatizerFilter.Language(new DictionaryHolder(
+        dictionary), null, null, null, null), null, PosTagFormat.SUFFIX, null);
+  }
+
   private Map<String, String[]> getMockedWordlist() {
     final Map<String, String[]> wordList = new HashMap<String, String[]>();
     wordList.put("bücher", new String[] { "buch" });
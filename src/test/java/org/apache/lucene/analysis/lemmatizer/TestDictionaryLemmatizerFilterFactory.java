@@ -18,14 +18,23 @@ package org.apache.lucene.analysis.lemmatizer;
  */
 
 import java.io.Reader;
+import java.lang.management.ManagementFactory;
 import java.io.StringReader;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Supplier;
+
+import javax.management.ObjectName;
 
 import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.FlagsAttribute;
+import org.apache.lucene.analysis.tokenattributes.PayloadAttribute;
 import org.apache.lucene.analysis.util.BaseTokenStreamFactoryTestCase;
 import org.apache.lucene.analysis.util.ClasspathResourceLoader;
 import org.apache.lucene.analysis.util.ResourceLoader;
+import org.apache.lucene.util.BytesRef;
 
 public class TestDictionaryLemmatizerFilterFactory extends BaseTokenStreamFactoryTestCase {
 
@@ -154,6 +163,24 @@ public class TestDictionaryLemmatizerFilterFactory extends BaseTokenStreamFactor
 		assertTokenStreamContents(stream, new String[] { "sykkel$0", "sykle$1" }, new int[] { 1, 0 });
 	}
 
+	public void testDecompoundingUsingPOSTags() throws Exception {
+		Reader reader = new StringReader("sykkelbuch");
+		TokenStream stream = whitespaceMockTokenizer(reader);
+		Map<String, String> args = new HashMap<String, String>();
+		args.put("dictionaries", "dictionary.txt");
+		args.put("lemmaPos", "0");
+		args.put("wordPos", "1");
+		args.put("wordClassPos", "2");
+		args.put("storePosTag", "true");
+		args.put("wordClasses", "noun,verb");
+		args.put("decompound", "true");
+		DictionaryLemmatizerFilterFactory f = new DictionaryLemmatizerFilterFactory(args);
+		f.inform(new ClasspathResourceLoader());
+		stream = f.create(stream);
+		// both parts are lemmas only, matched without their tags
+		assertTokenStreamContents(stream, new String[] { "sykkelbuch", "sykkel$0", "buch$0" }, new int[] { 1, 0, 0 });
+	}
+
 	public void testLemmatizerUsingReduction() throws Exception {
 		Reader reader = new StringReader("sykler");
 		TokenStream stream = whitespaceMockTokenizer(reader);
@@ -171,6 +198,243 @@ public class TestDictionaryLemmatizerFilterFactory extends BaseTokenStreamFactor
 		assertTokenStreamContents(stream, new String[] { "sykkel" });
 	}
 
+	public void testLemmatizerWithMultipleLemmasInFST() throws Exception {
+		Reader reader = new StringReader("sykler bücher eldre");
+		TokenStream stream = whitespaceMockTokenizer(reader);
+		Map<String, String> args = new HashMap<String, String>();
+		args.put("dictionaries", "dictionary.txt");
+		args.put("lemmaPos", "0");
+		args.put("wordPos", "1");
+		args.put("fst", "true");
+		DictionaryLemmatizerFilterFactory f = new DictionaryLemmatizerFilterFactory(args);
+		ResourceLoader l = new ClasspathResourceLoader();
+		f.inform(l);
+		stream = f.create(stream);
+		assertTokenStreamContents(stream, new String[] { "sykle", "sykkel", "buch", "gammel" }, new int[] { 1, 0, 1, 1 });
+	}
+
+	public void testLemmatizerUsingPOSTagsInFST() throws Exception {
+		Reader reader = new StringReader("sykler");
+		TokenStream stream = whitespaceMockTokenizer(reader);
+		Map<String, String> args = new HashMap<String, String>();
+		args.put("dictionaries", "dictionary.txt");
+		args.put("lemmaPos", "0");
+		args.put("wordPos", "1");
+		args.put("wordClassPos", "2");
+		args.put("storePosTag", "true");
+		args.put("wordClasses", "noun,verb");
+		args.put("fst", "true");
+		DictionaryLemmatizerFilterFactory f = new DictionaryLemmatizerFilterFactory(args);
+		ResourceLoader l = new ClasspathResourceLoader();
+		f.inform(l);
+		stream = f.create(stream);
+		assertTokenStreamContents(stream, new String[] { "sykkel$0", "sykle$1" }, new int[] { 1, 0 });
+	}
+
+	public void testPosTagsAsTypes() throws Exception {
+		Reader reader = new StringReader("sykler");
+		TokenStream stream = whitespaceMockTokenizer(reader);
+		DictionaryLemmatizerFilterFactory f = new DictionaryLemmatizerFilterFactory(posTagArgs("type"));
+		f.inform(new ClasspathResourceLoader());
+		stream = f.create(stream);
+		assertTokenStreamContents(stream, new String[] { "sykkel", "sykle" }, null, null, new String[] { "noun", "verb" },
+				new int[] { 1, 0 });
+	}
+
+	public void testPosTagsAsPayloads() throws Exception {
+		Reader reader = new StringReader("sykler");
+		TokenStream stream = whitespaceMockTokenizer(reader);
+		DictionaryLemmatizerFilterFactory f = new DictionaryLemmatizerFilterFactory(posTagArgs("payload"));
+		f.inform(new ClasspathResourceLoader());
+		stream = f.create(stream);
+		CharTermAttribute termAtt = stream.getAttribute(CharTermAttribute.class);
+		PayloadAttribute payloadAtt = stream.getAttribute(PayloadAttribute.class);
+		stream.reset();
+		assertTrue(stream.incrementToken());
+		assertEquals("sykkel", termAtt.toString());
+		assertEquals(new BytesRef(new byte[] { 0 }), payloadAtt.getPayload());
+		assertTrue(stream.incrementToken());
+		assertEquals("sykle", termAtt.toString());
+		assertEquals(new BytesRef(new byte[] { 1 }), payloadAtt.getPayload());
+		assertFalse(stream.incrementToken());
+		stream.end();
+		stream.close();
+	}
+
+	public void testPosTagsAsFlags() throws Exception {
+		Reader reader = new StringReader("sykler");
+		TokenStream stream = whitespaceMockTokenizer(reader);
+		DictionaryLemmatizerFilterFactory f = new DictionaryLemmatizerFilterFactory(posTagArgs("flags"));
+		f.inform(new ClasspathResourceLoader());
+		stream = f.create(stream);
+		CharTermAttribute termAtt = stream.getAttribute(CharTermAttribute.class);
+		FlagsAttribute flagsAtt = stream.getAttribute(FlagsAttribute.class);
+		stream.reset();
+		assertTrue(stream.incrementToken());
+		assertEquals("sykkel", termAtt.toString());
+		assertEquals(1, flagsAtt.getFlags());
+		assertTrue(stream.incrementToken());
+		assertEquals("sykle", termAtt.toString());
+		assertEquals(2, flagsAtt.getFlags());
+		assertFalse(stream.incrementToken());
+		stream.end();
+		stream.close();
+	}
+
+	public void testPosTagFormatRequiresStorePosTag() throws Exception {
+		try {
+			Map<String, String> args = posTagArgs("payload");
+			args.remove("storePosTag");
+			new DictionaryLemmatizerFilterFactory(args);
+			fail();
+		} catch (IllegalArgumentException expected) {
+			assertTrue(expected.getMessage().contains("storePosTag"));
+		}
+	}
+
+	private static Map<String, String> posTagArgs(String posTagFormat) {
+		Map<String, String> args = new HashMap<String, String>();
+		args.put("dictionaries", "dictionary.txt");
+		args.put("lemmaPos", "0");
+		args.put("wordPos", "1");
+		args.put("wordClassPos", "2");
+		args.put("storePosTag", "true");
+		args.put("wordClasses", "noun,verb");
+		args.put("posTagFormat", posTagFormat);
+		return args;
+	}
+
+	public void testSkipTypes() throws Exception {
+		Reader reader = new StringReader("bücher eldre");
+		TokenStream stream = whitespaceMockTokenizer(reader);
+		Map<String, String> args = new HashMap<String, String>();
+		args.put("dictionaries", "dictionary.txt");
+		args.put("lemmaPos", "0");
+		args.put("wordPos", "1");
+		args.put("bloomFilterBits", "10");
+		// the mock tokenizer types every token as a word
+		args.put("skipTypes", "word,<NUM>");
+		DictionaryLemmatizerFilterFactory f = new DictionaryLemmatizerFilterFactory(args);
+		f.inform(new ClasspathResourceLoader());
+		stream = f.create(stream);
+		assertTokenStreamContents(stream, new String[] { "bücher", "eldre" });
+	}
+
+	public void testFSTAndDirectMemoryAreExclusive() throws Exception {
+		try {
+			Map<String, String> args = new HashMap<String, String>();
+			args.put("dictionaries", "dictionary.txt");
+			args.put("lemmaPos", "0");
+			args.put("wordPos", "1");
+			args.put("fst", "true");
+			args.put("directMemory", "true");
+			new DictionaryLemmatizerFilterFactory(args);
+			fail();
+		} catch (IllegalArgumentException expected) {
+			assertTrue(expected.getMessage().contains("mutually exclusive"));
+		}
+	}
+
+	public void testQueryExpansion() throws Exception {
+		Reader reader = new StringReader("sykkelen bil");
+		TokenStream stream = whitespaceMockTokenizer(reader);
+		Map<String, String> args = new HashMap<String, String>();
+		args.put("dictionaries", "dictionary.txt");
+		args.put("lemmaPos", "0");
+		args.put("wordPos", "1");
+		args.put("expand", "true");
+		DictionaryLemmatizerFilterFactory f = new DictionaryLemmatizerFilterFactory(args);
+		f.inform(new ClasspathResourceLoader());
+		stream = f.create(stream);
+		assertTokenStreamContents(stream, new String[] { "sykkelen", "sykkel", "sykler", "bil" }, new int[] { 1, 0,
+				0, 1 });
+	}
+
+	public void testQueryExpansionExcludesStemmer() throws Exception {
+		try {
+			Map<String, String> args = new HashMap<String, String>();
+			args.put("dictionaries", "dictionary.txt");
+			args.put("lemmaPos", "0");
+			args.put("wordPos", "1");
+			args.put("expand", "true");
+			args.put("fallBackStemmer", "EnglishMinimalStemmer");
+			new DictionaryLemmatizerFilterFactory(args);
+			fail();
+		} catch (IllegalArgumentException expected) {
+			assertTrue(expected.getMessage().contains("expand"));
+		}
+	}
+
+	public void testFallBackStemmerCache() throws Exception {
+		Map<String, String> args = new HashMap<String, String>();
+		args.put("dictionaries", "dictionary.txt");
+		args.put("lemmaPos", "0");
+		args.put("wordPos", "1");
+		args.put("fallBackStemmer", "EnglishMinimalStemmer");
+		args.put("stemmerCacheSize", "64");
+		DictionaryLemmatizerFilterFactory f = new DictionaryLemmatizerFilterFactory(args);
+		f.inform(new ClasspathResourceLoader());
+		TokenStream stream = f.create(whitespaceMockTokenizer(new StringReader("tables bücher tables")));
+		assertTokenStreamContents(stream, new String[] { "table", "buch", "table" });
+		assertEquals(1, f.getStemmerCache().hits());
+		assertEquals(1, f.getStemmerCache().misses());
+	}
+
+	public void testUnknownFallBackStemmer() throws Exception {
+		try {
+			Map<String, String> args = new HashMap<String, String>();
+			args.put("dictionaries", "dictionary.txt");
+			args.put("lemmaPos", "0");
+			args.put("wordPos", "1");
+			args.put("fallBackStemmer", "KlingonStemmer");
+			new DictionaryLemmatizerFilterFactory(args);
+			fail();
+		} catch (IllegalArgumentException expected) {
+			assertTrue(expected.getMessage().contains("Unknown stemmer"));
+		}
+	}
+
+	public void testFallBackStemmerPerFilter() throws Exception {
+		Supplier<FallbackStemmer> supplier = FallbackStemmers.forName("SnowballStemmer",
+				Collections.singletonMap("language", "English"));
+		assertNotSame(supplier.get(), supplier.get());
+	}
+
+	public void testMetricsUnregisteredOnRelease() throws Exception {
+		Map<String, String> args = new HashMap<String, String>();
+		args.put("dictionaries", "dictionary.txt");
+		args.put("lemmaPos", "0");
+		args.put("wordPos", "1");
+		args.put("metricsName", "text_released");
+		DictionaryLemmatizerFilterFactory index = new DictionaryLemmatizerFilterFactory(new HashMap<String, String>(args));
+		DictionaryLemmatizerFilterFactory query = new DictionaryLemmatizerFilterFactory(args);
+		// registered once informed only
+		assertFalse(LemmatizerMetrics.isRegistered("text_released"));
+		index.inform(new ClasspathResourceLoader());
+		query.inform(new ClasspathResourceLoader());
+		assertSame(index.getMetrics(), query.getMetrics());
+		ObjectName name = index.getMetrics().getObjectName();
+		assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+
+		// unregistered with the last factory using them
+		index.release();
+		assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+		query.release();
+		assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+		assertFalse(LemmatizerMetrics.isRegistered("text_released"));
+	}
+
+	public void testMetricsOfUnnamedFactoriesAreNotShared() throws Exception {
+		Map<String, String> args = new HashMap<String, String>();
+		args.put("dictionaries", "dictionary.txt");
+		args.put("lemmaPos", "0");
+		args.put("wordPos", "1");
+		DictionaryLemmatizerFilterFactory f = new DictionaryLemmatizerFilterFactory(new HashMap<String, String>(args));
+		DictionaryLemmatizerFilterFactory other = new DictionaryLemmatizerFilterFactory(args);
+		assertNotSame(f.getMetrics(), other.getMetrics());
+		assertFalse(LemmatizerMetrics.isRegistered("dictionary.txt"));
+	}
+
 	/** Test that bogus arguments result in exception */
 	public void testBogusArguments() throws Exception {
 		try {
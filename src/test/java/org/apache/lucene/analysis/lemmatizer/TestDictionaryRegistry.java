@@ -0,0 +1,136 @@
+package org.apache.lucene.analysis.lemmatizer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.lucene.analysis.util.BaseTokenStreamFactoryTestCase;
+import org.apache.lucene.analysis.util.ClasspathResourceLoader;
+
+public class TestDictionaryRegistry extends BaseTokenStreamFactoryTestCase {
+
+  public void testFactoriesShareDictionary() throws Exception {
+    final DictionaryLemmatizerFilterFactory first = newFactory("3");
+    final DictionaryLemmatizerFilterFactory second = newFactory("3");
+    final DictionaryLemmatizerFilterFactory other = newFactory("4");
+    assertSame(first.getDictionary(), second.getDictionary());
+    assertNotSame(first.getDictionary(), other.getDictionary());
+    first.release();
+    second.release();
+    other.release();
+  }
+
+  public void testReferenceCounting() throws Exception {
+    final DictionaryRegistry registry = new DictionaryRegistry();
+    final AtomicInteger loads = new AtomicInteger();
+    final Object first = new Object();
+    final Object second = new Object();
+    final LemmaDictionary dictionary = registry.acquire("key", first, () -> {
+      loads.incrementAndGet();
+      return HeapLemmaDictionary.copyOf(new HashMap<String, String[]>());
+    });
+    assertSame(dictionary, registry.acquire("key", second, () -> {
+      throw new AssertionError();
+    }));
+    assertEquals(1, loads.get());
+    assertEquals(2, registry.references("key"));
+
+    registry.release("key", first);
+    assertEquals(1, registry.references("key"));
+    registry.release("key", second);
+    assertEquals(0, registry.references("key"));
+    assertEquals(0, registry.size());
+  }
+
+  public void testReleaseDuringLoad() throws Exception {
+    final DictionaryRegistry registry = new DictionaryRegistry();
+    final AtomicInteger loads = new AtomicInteger();
+    final CountDownLatch loading = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final Object first = new Object();
+    final Object second = new Object();
+    final AtomicReference<LemmaDictionary> loaded = new AtomicReference<LemmaDictionary>();
+    final Thread loader = new Thread(() -> {
+      try {
+        loaded.set(registry.acquire("key", first, () -> {
+          loads.incrementAndGet();
+          loading.countDown();
+          release.await();
+          return HeapLemmaDictionary.copyOf(new HashMap<String, String[]>());
+        }));
+      } catch (IOException e) {
+        throw new AssertionError(e);
+      }
+    });
+    loader.start();
+    loading.await();
+    // the only reference ends while the dictionary is loaded
+    registry.release("key", first);
+    final AtomicReference<LemmaDictionary> shared = new AtomicReference<LemmaDictionary>();
+    final Thread waiter = new Thread(() -> {
+      try {
+        shared.set(registry.acquire("key", second, () -> {
+          loads.incrementAndGet();
+          return HeapLemmaDictionary.copyOf(new HashMap<String, String[]>());
+        }));
+      } catch (IOException e) {
+        throw new AssertionError(e);
+      }
+    });
+    waiter.start();
+    release.countDown();
+    loader.join();
+    waiter.join();
+    // the second caller waited for the load in progress
+    assertEquals(1, loads.get());
+    assertSame(loaded.get(), shared.get());
+    assertEquals(1, registry.references("key"));
+    registry.release("key", second);
+    assertEquals(0, registry.size());
+  }
+
+  public void testFailedLoadIsNotRegistered() throws Exception {
+    final DictionaryRegistry registry = new DictionaryRegistry();
+    try {
+      registry.acquire("key", new Object(), () -> {
+        throw new IOException("missing");
+      });
+      fail();
+    } catch (IOException expected) {
+      assertEquals("missing", expected.getMessage());
+    }
+    assertEquals(0, registry.size());
+  }
+
+  private DictionaryLemmatizerFilterFactory newFactory(final String minLength) throws Exception {
+    Map<String, String> args = new HashMap<String, String>();
+    args.put("dictionaries", "dictionary.txt");
+    args.put("lemmaPos", "0");
+    args.put("wordPos", "1");
+    args.put("minLength", minLength);
+    DictionaryLemmatizerFilterFactory f = new DictionaryLemmatizerFilterFactory(args);
+    f.inform(new ClasspathResourceLoader());
+    return f;
+  }
+
+}
@@ -0,0 +1,294 @@
+package org.apache.lucene.analysis.lemmatizer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.util.BaseTokenStreamFactoryTestCase;
+import org.apache.lucene.analysis.util.ClasspathResourceLoader;
+import org.apache.lucene.analysis.util.FilesystemResourceLoader;
+import org.apache.lucene.analysis.util.ResourceLoader;
+
+public class TestDictionaryReload extends BaseTokenStreamFactoryTestCase {
+
+  public void testReloadChangedDictionary() throws Exception {
+    final Path dir = createTempDir();
+    final Path file = dir.resolve("reloaded.txt");
+    Files.write(file, "sykkel\tsykler\nbok\tbøker\n".getBytes(StandardCharsets.UTF_8));
+    final ResourceLoader loader = new FilesystemResourceLoader(dir, new ClasspathResourceLoader());
+
+    Map<String, String> args = new HashMap<String, String>();
+    args.put("dictionaries", "reloaded.txt");
+    args.put("lemmaPos", "0");
+    args.put("wordPos", "1");
+    args.put("reloadInterval", "3600");
+    DictionaryLemmatizerFilterFactory f = new DictionaryLemmatizerFilterFactory(args);
+    f.inform(loader);
+    try {
+      Tokenizer tokenizer = whitespaceMockTokenizer(new StringReader("sykler bøker"));
+      TokenStream stream = f.create(tokenizer);
+      assertTokenStreamContents(stream, new String[] { "sykkel", "bok" });
+      assertFalse(f.refresh(loader));
+
+      Files.write(file, "sykle\tsykler\nbok\tbøker\n".getBytes(StandardCharsets.UTF_8));
+      assertTrue(f.refresh(loader));
+
+      // the filter created before the reload picks the new dictionary up
+      tokenizer.setReader(new StringReader("sykler bøker"));
+      assertTokenStreamContents(stream, new String[] { "sykle", "bok" });
+    } finally {
+      f.release();
+    }
+  }
+
+  public void testUnchangedFilesAreNotRead() throws Exception {
+    final Path file = createTempDir().resolve("reloaded.txt");
+    Files.write(file, "sykkel\tsykler\n".getBytes(StandardCharsets.UTF_8));
+    Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - 20000));
+    final CountingResourceLoader loader = new CountingResourceLoader();
+
+    Map<String, String> args = new HashMap<String, String>();
+    args.put("dictionaries", file.toString());
+    args.put("lemmaPos", "0");
+    args.put("wordPos", "1");
+    DictionaryLemmatizerFilterFactory f = new DictionaryLemmatizerFilterFactory(args);
+    f.inform(loader);
+    try {
+      assertEquals(1, loader.opened);
+      // same size and modification time, the file is not read
+      assertFalse(f.refresh(loader));
+      assertEquals(1, loader.opened);
+
+      Files.write(file, "sykle\tsykler\n".getBytes(StandardCharsets.UTF_8));
+      Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - 10000));
+      assertTrue(f.refresh(loader));
+      assertEquals(2, loader.opened);
+
+      // just modified, it may change again with the same size and
+      // modification time, so it is read until it settles
+      Files.write(file, "sykla\tsykler\n".getBytes(StandardCharsets.UTF_8));
+      assertTrue(f.refresh(loader));
+      assertEquals(3, loader.opened);
+      assertFalse(f.refresh(loader));
+      assertEquals(4, loader.opened);
+    } finally {
+      f.release();
+    }
+  }
+
+  public void testAsyncLoadFallback() throws Exception {
+    final CountDownLatch latch = new CountDownLatch(1);
+    DictionaryLemmatizerFilterFactory f = new DictionaryLemmatizerFilterFactory(asyncArgs("fallback"));
+    f.inform(new LatchedResourceLoader(latch));
+    try {
+      assertFalse(f.isReady());
+      // words are left untouched until the dictionary is loaded
+      Tokenizer tokenizer = whitespaceMockTokenizer(new StringReader("bücher eldre"));
+      TokenStream stream = f.create(tokenizer);
+      assertTokenStreamContents(stream, new String[] { "bücher", "eldre" });
+
+      latch.countDown();
+      awaitReady(f);
+      tokenizer.setReader(new StringReader("bücher eldre"));
+      assertTokenStreamContents(stream, new String[] { "buch", "gammel" });
+      assertNull(f.getLoadError());
+    } finally {
+      f.release();
+    }
+  }
+
+  public void testAsyncLoadBlock() throws Exception {
+    final CountDownLatch latch = new CountDownLatch(1);
+    Map<String, String> args = asyncArgs("block");
+    args.put("asyncLoadTimeout", "10");
+    DictionaryLemmatizerFilterFactory f = new DictionaryLemmatizerFilterFactory(args);
+    f.inform(new LatchedResourceLoader(latch));
+    try {
+      TokenStream stream = f.create(whitespaceMockTokenizer(new StringReader("bücher")));
+      try {
+        stream.reset();
+        fail();
+      } catch (IOException expected) {
+        assertTrue(expected.getMessage().contains("not loaded"));
+      }
+
+      latch.countDown();
+      awaitReady(f);
+      stream = f.create(whitespaceMockTokenizer(new StringReader("bücher")));
+      assertTokenStreamContents(stream, new String[] { "buch" });
+    } finally {
+      f.release();
+    }
+  }
+
+  public void testBlockUntilPublished() throws Exception {
+    final DictionaryHolder holder = new DictionaryHolder(null, DictionaryHolder.Policy.BLOCK, 60000);
+    final LemmaDictionary dictionary = new LemmaDictionaryBuilder(0, 1, -1, null, "UTF-8", null, 3, false,
+        WordFolding.NONE).buildHeap();
+    final Thread loader = new Thread(() -> holder.set(dictionary));
+    loader.start();
+    assertSame(dictionary, holder.acquire());
+    loader.join();
+    assertTrue(holder.isReady());
+  }
+
+  public void testAsyncLoadFailure() throws Exception {
+    Map<String, String> args = asyncArgs("block");
+    args.put("dictionaries", "missing.txt");
+    DictionaryLemmatizerFilterFactory f = new DictionaryLemmatizerFilterFactory(args);
+    f.inform(new ClasspathResourceLoader());
+    try {
+      TokenStream stream = f.create(whitespaceMockTokenizer(new StringReader("bücher")));
+      // filters fail at once, without waiting for the timeout
+      try {
+        stream.reset();
+        fail();
+      } catch (IOException expected) {
+        assertTrue(expected.getMessage().contains("failed to load"));
+      }
+      assertFalse(f.isReady());
+      assertNotNull(f.getLoadError());
+    } finally {
+      f.release();
+    }
+  }
+
+  public void testAsyncLoadError() throws Exception {
+    DictionaryLemmatizerFilterFactory f = new DictionaryLemmatizerFilterFactory(asyncArgs("block"));
+    final ResourceLoader classpath = new ClasspathResourceLoader();
+    f.inform(new ResourceLoader() {
+      @Override
+      public InputStream openResource(final String resource) throws IOException {
+        throw new OutOfMemoryError("Java heap space");
+      }
+
+      @Override
+      public <T> Class<? extends T> findClass(final String cname, final Class<T> expectedType) {
+        return classpath.findClass(cname, expectedType);
+      }
+
+      @Override
+      public <T> T newInstance(final String cname, final Class<T> expectedType) {
+        return classpath.newInstance(cname, expectedType);
+      }
+    });
+    try {
+      for (int i = 0; i < 1000 && f.getLoadError() == null; i++) {
+        Thread.sleep(10);
+      }
+      // recorded, so that filters fail at once instead of waiting
+      assertTrue(f.getLoadError() instanceof OutOfMemoryError);
+      assertFalse(f.isReady());
+    } finally {
+      f.release();
+    }
+  }
+
+  public void testAsyncLoadPolicyRequiresAsyncLoad() throws Exception {
+    Map<String, String> args = asyncArgs("fallback");
+    args.remove("asyncLoad");
+    try {
+      new DictionaryLemmatizerFilterFactory(args);
+      fail();
+    } catch (IllegalArgumentException expected) {
+      assertTrue(expected.getMessage().contains("asyncLoad"));
+    }
+  }
+
+  private static Map<String, String> asyncArgs(final String policy) {
+    Map<String, String> args = new HashMap<String, String>();
+    args.put("dictionaries", "dictionary.txt");
+    args.put("lemmaPos", "0");
+    args.put("wordPos", "1");
+    args.put("asyncLoad", "true");
+    args.put("asyncLoadPolicy", policy);
+    return args;
+  }
+
+  private static void awaitReady(final DictionaryLemmatizerFilterFactory f) throws InterruptedException {
+    for (int i = 0; i < 1000 && !f.isReady(); i++) {
+      Thread.sleep(10);
+    }
+    assertTrue(f.isReady());
+  }
+
+  /** Opens files, counting the resources opened. */
+  private static final class CountingResourceLoader implements ResourceLoader {
+    private final ResourceLoader delegate = new ClasspathResourceLoader();
+    private int opened;
+
+    @Override
+    public InputStream openResource(final String resource) throws IOException {
+      opened++;
+      return Files.newInputStream(Paths.get(resource));
+    }
+
+    @Override
+    public <T> Class<? extends T> findClass(final String cname, final Class<T> expectedType) {
+      return delegate.findClass(cname, expectedType);
+    }
+
+    @Override
+    public <T> T newInstance(final String cname, final Class<T> expectedType) {
+      return delegate.newInstance(cname, expectedType);
+    }
+  }
+
+  /** Opens the resources of the classpath once a latch is released. */
+  private static final class LatchedResourceLoader implements ResourceLoader {
+    private final ResourceLoader delegate = new ClasspathResourceLoader();
+    private final CountDownLatch latch;
+
+    LatchedResourceLoader(final CountDownLatch latch) {
+      this.latch = latch;
+    }
+
+    @Override
+    public InputStream openResource(final String resource) throws IOException {
+      try {
+        latch.await();
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      }
+      return delegate.openResource(resource);
+    }
+
+    @Override
+    public <T> Class<? extends T> findClass(final String cname, final Class<T> expectedType) {
+      return delegate.findClass(cname, expectedType);
+    }
+
+    @Override
+    public <T> T newInstance(final String cname, final Class<T> expectedType) {
+      return delegate.newInstance(cname, expectedType);
+    }
+  }
+
+}
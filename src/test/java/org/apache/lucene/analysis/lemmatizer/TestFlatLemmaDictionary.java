@@ -0,0 +1,125 @@
+package org.apache.lucene.analysis.lemmatizer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.util.BaseTokenStreamFactoryTestCase;
+import org.apache.lucene.analysis.util.ClasspathResourceLoader;
+import org.apache.lucene.analysis.util.FilesystemResourceLoader;
+
+public class TestFlatLemmaDictionary extends BaseTokenStreamFactoryTestCase {
+
+  public void testCompiledDictionary() throws Exception {
+    final Path dir = createTempDir();
+    final LemmaDictionaryBuilder builder = newBuilder();
+    Files.write(dir.resolve("dictionary.lemdict"), toBytes(builder.buildFlat(builder.metadata())));
+
+    Map<String, String> args = new HashMap<String, String>();
+    args.put("dictionaries", "dictionary.lemdict");
+    DictionaryLemmatizerFilterFactory f = new DictionaryLemmatizerFilterFactory(args);
+    f.inform(new FilesystemResourceLoader(dir, new ClasspathResourceLoader()));
+    TokenStream stream = f.create(whitespaceMockTokenizer(new StringReader("sykler bücher tables")));
+    assertTokenStreamContents(stream, new String[] { "sykle", "sykkel", "buch", "tables" }, new int[] { 1, 0, 1, 1 });
+  }
+
+  public void testMappedDictionary() throws Exception {
+    final Path file = createTempDir().resolve("dictionary.lemdict");
+    final LemmaDictionaryBuilder builder = newBuilder();
+    Files.write(file, toBytes(builder.buildFlat(builder.metadata())));
+
+    Map<String, String> args = new HashMap<String, String>();
+    args.put("dictionaries", file.toAbsolutePath().toString());
+    DictionaryLemmatizerFilterFactory f = new DictionaryLemmatizerFilterFactory(args);
+    f.inform(new ClasspathResourceLoader());
+    TokenStream stream = f.create(whitespaceMockTokenizer(new StringReader("sykler bücher tables")));
+    assertTokenStreamContents(stream, new String[] { "sykle", "sykkel", "buch", "tables" }, new int[] { 1, 0, 1, 1 });
+  }
+
+  public void testDirectDictionary() throws Exception {
+    final FlatLemmaDictionary dictionary = newBuilder().buildDirect();
+    assertArrayEquals(new String[] { "sykle", "sykkel" }, dictionary.lookup("sykler"));
+    assertNull(dictionary.lookup("tables"));
+  }
+
+  public void testMetadata() throws Exception {
+    final LemmaDictionaryBuilder builder = newBuilder();
+    final FlatLemmaDictionary dictionary = FlatLemmaDictionary.open(builder.buildFlat(builder.metadata()));
+    assertEquals("0", dictionary.getMetadata().get("lemmaPos"));
+    assertEquals("1", dictionary.getMetadata().get("wordPos"));
+  }
+
+  public void testFoldedDictionary() throws Exception {
+    final LemmaDictionaryBuilder builder = new LemmaDictionaryBuilder(0, 1, -1, null, "UTF-8", null, 3, false,
+        WordFolding.of(true, true));
+    try (InputStream inputStream = new ClasspathResourceLoader().openResource("dictionary.txt")) {
+      builder.add("dictionary.txt", inputStream);
+    }
+    // the folding is recorded with the dictionary
+    final FlatLemmaDictionary dictionary = FlatLemmaDictionary.open(builder.buildFlat(builder.metadata()));
+    assertEquals(WordFolding.of(true, true), dictionary.getFolding());
+    assertArrayEquals(new String[] { "buch" }, dictionary.lookup("BÜCHER"));
+    assertArrayEquals(new String[] { "buch" }, dictionary.lookup("bucher"));
+  }
+
+  public void testCorruptedDictionary() throws Exception {
+    final LemmaDictionaryBuilder builder = newBuilder();
+    final ByteBuffer buffer = builder.buildFlat(builder.metadata());
+    buffer.put(buffer.limit() / 2, (byte) (buffer.get(buffer.limit() / 2) + 1));
+    try {
+      FlatLemmaDictionary.open(buffer);
+      fail();
+    } catch (IOException expected) {
+      assertTrue(expected.getMessage().contains("Checksum mismatch"));
+    }
+  }
+
+  public void testSingleCompiledDictionary() throws Exception {
+    try {
+      Map<String, String> args = new HashMap<String, String>();
+      args.put("dictionaries", "dictionary.lemdict,dictionary.txt");
+      new DictionaryLemmatizerFilterFactory(args);
+      fail();
+    } catch (IllegalArgumentException expected) {
+      assertTrue(expected.getMessage().contains("single compiled dictionary"));
+    }
+  }
+
+  private LemmaDictionaryBuilder newBuilder() throws IOException {
+    final LemmaDictionaryBuilder builder = new LemmaDictionaryBuilder(0, 1, -1, null, "UTF-8", null, 3, false);
+    try (InputStream inputStream = new ClasspathResourceLoader().openResource("dictionary.txt")) {
+      builder.add("dictionary.txt", inputStream);
+    }
+    return builder;
+  }
+
+  private static byte[] toBytes(final ByteBuffer buffer) {
+    final byte[] bytes = new byte[buffer.remaining()];
+    buffer.get(bytes);
+    return bytes;
+  }
+
+}
@@ -0,0 +1,122 @@
+package org.apache.lucene.analysis.lemmatizer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.MockTokenizer;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.util.BaseTokenStreamFactoryTestCase;
+import org.apache.lucene.analysis.util.ClasspathResourceLoader;
+import org.apache.lucene.analysis.util.FilesystemResourceLoader;
+import org.apache.lucene.analysis.util.ResourceLoader;
+
+public class TestLanguages extends BaseTokenStreamFactoryTestCase {
+
+  public void testRouting() throws Exception {
+    final DictionaryLemmatizerFilterFactory f = new DictionaryLemmatizerFilterFactory(languageArgs());
+    f.inform(newResourceLoader());
+    try {
+      Analyzer a = new Analyzer() {
+        @Override
+        protected TokenStreamComponents createComponents(final String fieldName) {
+          Tokenizer source = new MockTokenizer(MockTokenizer.WHITESPACE, false);
+          return new TokenStreamComponents(source, f.create(new LanguageMarkerFilter(source,
+              LanguageMarkerFilter.DEFAULT_PREFIX)));
+        }
+      };
+      // the marker is dropped, the first word takes its position
+      assertAnalyzesTo(a, "__lang_de bücher sykler", new String[] { "buch", "sykler" }, new int[] { 1, 1 });
+      // the default language, for no marker or a language not configured
+      assertAnalyzesTo(a, "bücher sykler", new String[] { "bücher", "sykkel" });
+      assertAnalyzesTo(a, "__lang_fr bücher sykler", new String[] { "bücher", "sykkel" });
+      // the same filter switches back and forth
+      assertAnalyzesTo(a, "__lang_de bücher sykler", new String[] { "buch", "sykler" });
+      a.close();
+    } finally {
+      f.release();
+    }
+  }
+
+  public void testSharedDictionaries() throws Exception {
+    final ResourceLoader loader = newResourceLoader();
+    final DictionaryLemmatizerFilterFactory f = new DictionaryLemmatizerFilterFactory(languageArgs());
+    f.inform(loader);
+    Map<String, String> args = new HashMap<String, String>();
+    args.put("dictionaries", "de.txt");
+    args.put("lemmaPos", "0");
+    args.put("wordPos", "1");
+    final DictionaryLemmatizerFilterFactory german = new DictionaryLemmatizerFilterFactory(args);
+    german.inform(loader);
+    try {
+      assertNotNull(f.getLanguage("de"));
+      assertNull(f.getLanguage("fr"));
+      assertSame(german.getDictionary(), f.getLanguage("de").getDictionary());
+      assertNotSame(f.getDictionary(), f.getLanguage("de").getDictionary());
+      assertTrue(f.isReady());
+    } finally {
+      german.release();
+      f.release();
+    }
+  }
+
+  public void testLanguageRequiresDictionaries() throws Exception {
+    Map<String, String> args = languageArgs();
+    args.remove("dictionaries.de");
+    try {
+      new DictionaryLemmatizerFilterFactory(args);
+      fail();
+    } catch (IllegalArgumentException expected) {
+      assertTrue(expected.getMessage().contains("dictionaries.de"));
+    }
+  }
+
+  public void testMarkerFilterFactory() throws Exception {
+    Map<String, String> args = new HashMap<String, String>();
+    args.put("prefix", "");
+    try {
+      new LanguageMarkerFilterFactory(args);
+      fail();
+    } catch (IllegalArgumentException expected) {
+      assertTrue(expected.getMessage().contains("prefix"));
+    }
+  }
+
+  private static Map<String, String> languageArgs() {
+    Map<String, String> args = new HashMap<String, String>();
+    args.put("dictionaries", "no.txt");
+    args.put("lemmaPos", "0");
+    args.put("wordPos", "1");
+    args.put("languages", "de");
+    args.put("dictionaries.de", "de.txt");
+    return args;
+  }
+
+  private ResourceLoader newResourceLoader() throws Exception {
+    final Path dir = createTempDir();
+    Files.write(dir.resolve("no.txt"), "sykkel\tsykler\n".getBytes(StandardCharsets.UTF_8));
+    Files.write(dir.resolve("de.txt"), "buch\tbücher\n".getBytes(StandardCharsets.UTF_8));
+    return new FilesystemResourceLoader(dir, new ClasspathResourceLoader());
+  }
+
+}
@@ -0,0 +1,179 @@
+package org.apache.lucene.analysis.lemmatizer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttributeImpl;
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestLemmaDictionaryBuilder extends LuceneTestCase {
+
+  private static final String[] WORD_CLASSES = { "verb", "subst" };
+
+  private static final String FIRST = "sykle\tsykler\tverb\nsykkel\tsykler\tsubst\nfrage\tfragen\tsubst\n";
+  private static final String SECOND = "fragen\tfragen\tverb\nbuch\tbücher\tsubst\n";
+  private static final String THIRD = "sykkel\tsyklene\tsubst\nsykle\tsykler\tverb\nbok\tbøker\tsubst\n";
+  private static final String FOURTH = "frag\tfragen\tverb\nbuchen\tbücher\tverb\n";
+
+  public void testParallelLoadMatchesSequentialLoad() throws Exception {
+    for (String[] reduceTo : new String[][] { null, { "subst" }, { "verb", "subst" } }) {
+      final LemmaDictionaryBuilder sequential = newBuilder(reduceTo);
+      final LemmaDictionaryBuilder parallel = newBuilder(reduceTo);
+      final List<String> names = Arrays.asList("first.zip", "third.txt.gz", "fourth.txt");
+      sequential.add(names, sources(), 1);
+      parallel.add(names, sources(), 3);
+      final HeapLemmaDictionary expected = sequential.buildHeap();
+      final HeapLemmaDictionary actual = parallel.buildHeap();
+      assertEquals(expected.lemmaCount(), actual.lemmaCount());
+      for (String word : new String[] { "sykler", "syklene", "fragen", "bücher", "bøker", "tables" }) {
+        assertArrayEquals(word, expected.lookup(word), actual.lookup(word));
+      }
+    }
+  }
+
+  public void testLoadReport() throws Exception {
+    final String dictionary = "# comment\n" // comment
+        + "sykle\tsykler\tverb\n" // accepted
+        + "sykkel\tsykler\tsubst\n" // accepted
+        + "bil\tbil\tsubst\n" // too short
+        + "el-bil\tel-biler\tsubst\n" // hyphen
+        + "rask\traskere\tadj\n" // word class
+        + "bok\tbøker\n"; // missing word class
+    final LemmaDictionaryBuilder builder = newBuilder(null);
+    builder.add(Arrays.asList("first.zip", "third.txt.gz", "fourth.txt"), sources(), 2);
+    builder.add("norsk.txt", new ByteArrayInputStream(dictionary.getBytes(StandardCharsets.UTF_8)));
+    builder.buildHeap();
+
+    final DictionaryLoadReport report = builder.report();
+    final List<DictionaryLoadReport.Source> sources = report.getSources();
+    assertEquals(5, sources.size());
+    assertEquals("first.zip!first.txt", sources.get(0).getName());
+    assertEquals("first.zip!second.txt", sources.get(1).getName());
+    assertEquals("third.txt.gz", sources.get(2).getName());
+    assertEquals(THIRD.getBytes(StandardCharsets.UTF_8).length, sources.get(2).getBytes());
+    final DictionaryLoadReport.Source source = sources.get(4);
+    assertEquals("norsk.txt", source.getName());
+    assertEquals(7, source.getLines());
+    assertEquals(2, source.getAccepted());
+    assertEquals(1, source.getRejected(DictionaryLoadReport.Rejection.COMMENT));
+    assertEquals(1, source.getRejected(DictionaryLoadReport.Rejection.MIN_LENGTH));
+    assertEquals(1, source.getRejected(DictionaryLoadReport.Rejection.SPACE_OR_HYPHEN));
+    assertEquals(1, source.getRejected(DictionaryLoadReport.Rejection.WORD_CLASS));
+    assertEquals(1, source.getRejected(DictionaryLoadReport.Rejection.MISSING_COLUMN));
+    // sykler, syklene, fragen, bücher, bøker
+    assertEquals(5, report.getParsedWords());
+    assertEquals(5, report.getWords());
+    assertTrue(report.getLemmas() > 0);
+    assertTrue(report.toString(), report.toString().contains("source=norsk.txt"));
+  }
+
+  /** Loads a dictionary of a million lines, reduced and with tagged lemmas. */
+  public void testLargeDictionaryLoad() throws Exception {
+    final int words = 250000;
+    final StringBuilder dictionary = new StringBuilder();
+    for (int i = 0; i < words; i++) {
+      dictionary.append('l').append(i % 1000).append("\tword").append(i).append("er\tsubst\n");
+      dictionary.append('v').append(i % 777).append("\tword").append(i).append("er\tverb\n");
+      dictionary.append("word").append(i).append("er\tword").append(i).append("er\tverb\n");
+      dictionary.append('a').append(i % 333).append("\tword").append(i).append("er\tadj\n");
+    }
+    final byte[] content = dictionary.toString().getBytes(StandardCharsets.UTF_8);
+
+    final LemmaDictionaryBuilder builder = newBuilder(new String[] { "subst" });
+    builder.add("large.txt", new ByteArrayInputStream(content));
+    final HeapLemmaDictionary reduced = builder.buildHeap();
+    final LemmaDictionaryBuilder posTagBuilder = new LemmaDictionaryBuilder(0, 1, 2, WORD_CLASSES, "UTF-8",
+        null, 3, true);
+    posTagBuilder.add("large.txt", new ByteArrayInputStream(content));
+    final HeapLemmaDictionary tagged = posTagBuilder.buildHeap();
+
+    assertEquals(1000, reduced.lemmaCount());
+    for (int i = 0; i < words; i += 997) {
+      assertArrayEquals(new String[] { "l" + i % 1000 }, reduced.lookup("word" + i + "er"));
+      assertArrayEquals(new String[] { "l" + i % 1000 + "$1", "v" + i % 777 + "$0", "word" + i + "er$0" },
+          tagged.lookup("word" + i + "er"));
+    }
+  }
+
+  public void testPosTags() throws Exception {
+    final LemmaDictionaryBuilder heapBuilder = newPosTagBuilder();
+    final LemmaDictionaryBuilder flatBuilder = newPosTagBuilder();
+    final CharTermAttribute termAtt = new CharTermAttributeImpl();
+    for (LemmaDictionary dictionary : new LemmaDictionary[] { heapBuilder.buildHeap(), flatBuilder.buildDirect() }) {
+      assertArrayEquals(WORD_CLASSES, dictionary.getWordClasses());
+      final LemmaDictionary.Reader reader = dictionary.getReader();
+      assertEquals(2, reader.lookup("sykler".toCharArray(), 0, 6));
+      for (int i = 0; i < 2; i++) {
+        // tags are kept apart from the lemma, and appended to it on demand
+        final int id = reader.lemmaIds()[i];
+        final int tag = dictionary.lemmaTag(id);
+        final String lemma = tag == 0 ? "sykle" : "sykkel";
+        assertEquals(lemma + "$" + tag, dictionary.lemma(id));
+        dictionary.copyLemma(id, termAtt);
+        assertEquals(lemma + "$" + tag, termAtt.toString());
+        dictionary.copyBareLemma(id, termAtt);
+        assertEquals(lemma, termAtt.toString());
+      }
+      // same lemma, other word class
+      assertEquals(1, reader.lookup("fragen".toCharArray(), 0, 6));
+      assertEquals("frage$1", dictionary.lemma(reader.lemmaIds()[0]));
+    }
+  }
+
+  private static LemmaDictionaryBuilder newPosTagBuilder() throws IOException {
+    final LemmaDictionaryBuilder builder = new LemmaDictionaryBuilder(0, 1, 2, WORD_CLASSES, "UTF-8", null, 3, true);
+    builder.add("first.txt", new ByteArrayInputStream(FIRST.getBytes(StandardCharsets.UTF_8)));
+    return builder;
+  }
+
+  private static LemmaDictionaryBuilder newBuilder(final String[] reduceTo) {
+    return new LemmaDictionaryBuilder(0, 1, 2, WORD_CLASSES, "UTF-8", reduceTo, 3, false);
+  }
+
+  private static List<InputStream> sources() throws IOException {
+    final ByteArrayOutputStream zip = new ByteArrayOutputStream();
+    try (ZipOutputStream zipOutputStream = new ZipOutputStream(zip)) {
+      zipOutputStream.putNextEntry(new ZipEntry("first.txt"));
+      zipOutputStream.write(FIRST.getBytes(StandardCharsets.UTF_8));
+      zipOutputStream.putNextEntry(new ZipEntry("second.txt"));
+      zipOutputStream.write(SECOND.getBytes(StandardCharsets.UTF_8));
+    }
+    final ByteArrayOutputStream gz = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(gz)) {
+      gzipOutputStream.write(THIRD.getBytes(StandardCharsets.UTF_8));
+    }
+    final List<InputStream> sources = new ArrayList<InputStream>();
+    sources.add(new ByteArrayInputStream(zip.toByteArray()));
+    sources.add(new ByteArrayInputStream(gz.toByteArray()));
+    sources.add(new ByteArrayInputStream(FOURTH.getBytes(StandardCharsets.UTF_8)));
+    return sources;
+  }
+
+}
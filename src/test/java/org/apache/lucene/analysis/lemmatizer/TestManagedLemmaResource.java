@@ -0,0 +1,111 @@
+package org.apache.lucene.analysis.lemmatizer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.solr.core.SolrResourceLoader;
+import org.apache.solr.rest.ManagedResourceObserver;
+import org.apache.solr.rest.ManagedResourceStorage;
+
+public class TestManagedLemmaResource extends LuceneTestCase {
+
+  public void testPublishedOnceStored() throws Exception {
+    final FailingStorageIO storageIO = new FailingStorageIO();
+    final ManagedLemmaResource resource = newResource(storageIO);
+    final AtomicReference<Map<String, String[]>> published = new AtomicReference<Map<String, String[]>>();
+    resource.addListener(published::set);
+    assertTrue(published.get().isEmpty());
+
+    resource.storeManagedData(resource.applyUpdatesToManagedData(entry("sykler", "sykkel", "sykle")));
+    assertArrayEquals(new String[] { "sykkel", "sykle" }, published.get().get("sykler"));
+
+    // a failed store leaves the published entries as they were
+    storageIO.failing = true;
+    try {
+      resource.storeManagedData(resource.applyUpdatesToManagedData(entry("biler", "bil")));
+      fail();
+    } catch (RuntimeException expected) {
+      // reported to the client by Solr
+    }
+    assertNull(published.get().get("biler"));
+    assertArrayEquals(new String[] { "sykkel", "sykle" }, published.get().get("sykler"));
+  }
+
+  public void testUnchangedEntriesAreNotStored() throws Exception {
+    final ManagedLemmaResource resource = newResource(new FailingStorageIO());
+    resource.storeManagedData(resource.applyUpdatesToManagedData(entry("sykler", "sykkel")));
+    assertNull(resource.applyUpdatesToManagedData(entry("sykler", "sykkel")));
+  }
+
+  public void testDeleteChild() throws Exception {
+    final FailingStorageIO storageIO = new FailingStorageIO();
+    final ManagedLemmaResource resource = newResource(storageIO);
+    final AtomicReference<Map<String, String[]>> published = new AtomicReference<Map<String, String[]>>();
+    resource.addListener(published::set);
+    resource.storeManagedData(resource.applyUpdatesToManagedData(entry("sykler", "sykkel")));
+
+    storageIO.failing = true;
+    try {
+      resource.doDeleteChild(null, "sykler");
+      fail();
+    } catch (RuntimeException expected) {
+      // reported to the client by Solr
+    }
+    assertNotNull(published.get().get("sykler"));
+
+    storageIO.failing = false;
+    resource.doDeleteChild(null, "sykler");
+    assertNull(published.get().get("sykler"));
+  }
+
+  private ManagedLemmaResource newResource(final ManagedResourceStorage.StorageIO storageIO) throws Exception {
+    final ManagedLemmaResource resource = new ManagedLemmaResource(
+        DictionaryLemmatizerFilterFactory.MANAGED_RESOURCE_PATH + "test", new SolrResourceLoader(createTempDir()),
+        storageIO);
+    resource.loadManagedDataAndNotify(Collections.<ManagedResourceObserver> emptyList());
+    return resource;
+  }
+
+  private static Map<String, Object> entry(final String word, final String... lemmas) {
+    final Map<String, Object> json = new HashMap<String, Object>();
+    json.put(word, Arrays.asList(lemmas));
+    return json;
+  }
+
+  /** Stores in memory, unless told to fail. */
+  private static final class FailingStorageIO extends ManagedResourceStorage.InMemoryStorageIO {
+    private boolean failing;
+
+    @Override
+    public OutputStream openOutputStream(final String storedResourceId) throws IOException {
+      if (failing) {
+        throw new IOException("Disk full");
+      }
+      return super.openOutputStream(storedResourceId);
+    }
+  }
+
+}
@@ -0,0 +1,92 @@
+package org.apache.lucene.analysis.lemmatizer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.lucene.analysis.util.BaseTokenStreamFactoryTestCase;
+import org.apache.lucene.analysis.util.ClasspathResourceLoader;
+
+public class TestOverlayLemmaDictionary extends BaseTokenStreamFactoryTestCase {
+
+  public void testOverlay() {
+    final Map<String, String[]> wordlist = new HashMap<String, String[]>();
+    wordlist.put("sykler", new String[] { "sykle", "sykkel" });
+    wordlist.put("bøker", new String[] { "bok" });
+    final LemmaDictionary base = HeapLemmaDictionary.copyOf(wordlist);
+
+    final Map<String, String[]> overlay = new HashMap<String, String[]>();
+    overlay.put("sykler", new String[] { "sykkel" });
+    overlay.put("bøker", new String[0]);
+    overlay.put("katzen", new String[] { "katze" });
+    final OverlayLemmaDictionary dictionary = new OverlayLemmaDictionary(base, overlay);
+
+    assertArrayEquals(new String[] { "sykkel" }, dictionary.lookup("sykler"));
+    assertNull(dictionary.lookup("bøker"));
+    assertArrayEquals(new String[] { "katze" }, dictionary.lookup("katzen"));
+    assertEquals(base.lemmaCount() + 2, dictionary.lemmaCount());
+  }
+
+  public void testCompactManagedEntries() throws Exception {
+    Map<String, String> args = new HashMap<String, String>();
+    args.put("dictionaries", "dictionary.txt");
+    args.put("lemmaPos", "0");
+    args.put("wordPos", "1");
+    DictionaryLemmatizerFilterFactory f = new DictionaryLemmatizerFilterFactory(args);
+    f.inform(new ClasspathResourceLoader());
+    try {
+      final Map<String, String[]> entries = new TreeMap<String, String[]>();
+      entries.put("sykler", new String[] { "sykkel" });
+      entries.put("tables", new String[] { "table" });
+      f.setOverlay(entries);
+      assertTrue(f.getDictionary() instanceof OverlayLemmaDictionary);
+      assertArrayEquals(new String[] { "sykkel" }, f.getDictionary().lookup("sykler"));
+
+      // built in, looked up once
+      f.compact();
+      assertTrue(f.getDictionary() instanceof CompactedLemmaDictionary);
+      assertArrayEquals(new String[] { "sykkel" }, f.getDictionary().lookup("sykler"));
+      assertArrayEquals(new String[] { "table" }, f.getDictionary().lookup("tables"));
+
+      // removing a built in entry restores the lemmas of the dictionary
+      final Map<String, String[]> remaining = new TreeMap<String, String[]>();
+      remaining.put("tables", new String[] { "table" });
+      f.setOverlay(remaining);
+      assertArrayEquals(new String[] { "sykle", "sykkel" }, f.getDictionary().lookup("sykler"));
+      assertArrayEquals(new String[] { "table" }, f.getDictionary().lookup("tables"));
+    } finally {
+      f.release();
+    }
+  }
+
+  public void testCompactBeforeInform() throws Exception {
+    Map<String, String> args = new HashMap<String, String>();
+    args.put("dictionaries", "dictionary.txt");
+    args.put("lemmaPos", "0");
+    args.put("wordPos", "1");
+    try {
+      new DictionaryLemmatizerFilterFactory(args).compact();
+      fail();
+    } catch (IllegalStateException expected) {
+      assertTrue(expected.getMessage().contains("inform"));
+    }
+  }
+
+}
@@ -0,0 +1,199 @@
+package org.apache.lucene.analysis.lemmatizer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.apache.lucene.analysis.util.BaseTokenStreamFactoryTestCase;
+import org.apache.lucene.analysis.util.ClasspathResourceLoader;
+import org.apache.lucene.analysis.util.FilesystemResourceLoader;
+import org.apache.lucene.analysis.util.ResourceLoader;
+
+public class TestPersistentDictionary extends BaseTokenStreamFactoryTestCase {
+
+  public void testReusedUntilChanged() throws Exception {
+    final Path dir = createTempDir();
+    final Path store = dir.resolve("store");
+    Files.write(dir.resolve("no.txt"), "sykkel\tsykler\n".getBytes(StandardCharsets.UTF_8));
+    final ResourceLoader loader = new FilesystemResourceLoader(dir, new ClasspathResourceLoader());
+
+    assertEquals("persisted", inform(loader, store));
+    final Path file;
+    try (Stream<Path> files = Files.list(store)) {
+      file = files.filter(path -> path.toString().endsWith(FlatLemmaDictionary.EXTENSION)).findFirst().get();
+    }
+    final FileTime persisted = Files.getLastModifiedTime(file);
+
+    // nothing changed, the store is mapped as it is
+    assertEquals("stored", inform(loader, store));
+    assertEquals(persisted, Files.getLastModifiedTime(file));
+
+    // the resources changed, the store is rebuilt in place
+    Files.write(dir.resolve("no.txt"), "sykkel\tsykler\nbil\tbiler\n".getBytes(StandardCharsets.UTF_8));
+    final DictionaryLemmatizerFilterFactory f = newFactory(store);
+    f.inform(loader);
+    try {
+      assertEquals("persisted", f.getLoadReport().getBackend());
+      assertTrue(f.getDictionary() instanceof FlatLemmaDictionary);
+      final DictionaryLemmatizer lemmatizer = new DictionaryLemmatizer(f.getDictionary());
+      assertArrayEquals(new String[] { "bil" }, lemmatizer.lemmatize("biler"));
+      assertArrayEquals(new String[] { "sykkel" }, lemmatizer.lemmatize("sykler"));
+    } finally {
+      f.release();
+    }
+    try (Stream<Path> files = Files.list(store)) {
+      assertEquals(1, files.count());
+    }
+  }
+
+  public void testCorruptedStoreIsRebuilt() throws Exception {
+    final Path dir = createTempDir();
+    final Path store = dir.resolve("store");
+    Files.write(dir.resolve("no.txt"), "sykkel\tsykler\n".getBytes(StandardCharsets.UTF_8));
+    final ResourceLoader loader = new FilesystemResourceLoader(dir, new ClasspathResourceLoader());
+    assertEquals("persisted", inform(loader, store));
+    try (Stream<Path> files = Files.list(store)) {
+      Files.write(files.findFirst().get(), new byte[] { 1, 2, 3 });
+    }
+    assertEquals("persisted", inform(loader, store));
+    assertEquals("stored", inform(loader, store));
+  }
+
+  public void testUnchangedStoreIsNotRead() throws Exception {
+    final Path dir = createTempDir();
+    final Path store = dir.resolve("store");
+    final Path file = dir.resolve("no.txt");
+    Files.write(file, "sykkel\tsykler\n".getBytes(StandardCharsets.UTF_8));
+    // modified long enough ago for its size and modification time to tell
+    Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - 20000));
+    final CountingResourceLoader loader = new CountingResourceLoader();
+
+    assertEquals("persisted", inform(loader, store, file.toString()));
+    assertEquals(1, loader.opened);
+    // same size and modification time, the store is mapped without reading the resources
+    assertEquals("stored", inform(loader, store, file.toString()));
+    assertEquals(1, loader.opened);
+
+    Files.write(file, "sykkel\tsykler\nbil\tbiler\n".getBytes(StandardCharsets.UTF_8));
+    Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - 10000));
+    assertEquals("persisted", inform(loader, store, file.toString()));
+    assertEquals(2, loader.opened);
+    assertEquals("stored", inform(loader, store, file.toString()));
+    assertEquals(2, loader.opened);
+
+    // a damaged store fails its checksum, the resources are read to rebuild it
+    final Path stored;
+    try (Stream<Path> files = Files.list(store)) {
+      stored = files.findFirst().get();
+    }
+    final byte[] bytes = Files.readAllBytes(stored);
+    bytes[bytes.length - 1] ^= 1;
+    Files.write(stored, bytes);
+    assertEquals("persisted", inform(loader, store, file.toString()));
+    assertEquals(3, loader.opened);
+    assertEquals("stored", inform(loader, store, file.toString()));
+    assertEquals(3, loader.opened);
+  }
+
+  public void testPersistentRequiresParsing() throws Exception {
+    Map<String, String> args = new HashMap<String, String>();
+    args.put("dictionaries", "dictionary.lemdict");
+    args.put("persistent", "true");
+    try {
+      new DictionaryLemmatizerFilterFactory(args);
+      fail();
+    } catch (IllegalArgumentException expected) {
+      assertTrue(expected.getMessage().contains("persistent"));
+    }
+    args.put("dictionaries", "dictionary.txt");
+    args.put("lemmaPos", "0");
+    args.put("wordPos", "1");
+    args.put("persistent", "false");
+    args.put("persistDir", "lemmatizer");
+    try {
+      new DictionaryLemmatizerFilterFactory(args);
+      fail();
+    } catch (IllegalArgumentException expected) {
+      assertTrue(expected.getMessage().contains("persistent"));
+    }
+  }
+
+  /** Loads the dictionary with a factory of its own, and returns the backend it was loaded with. */
+  private static String inform(final ResourceLoader loader, final Path store) throws Exception {
+    return inform(loader, store, "no.txt");
+  }
+
+  private static String inform(final ResourceLoader loader, final Path store, final String dictionaries)
+      throws Exception {
+    final DictionaryLemmatizerFilterFactory f = newFactory(store, dictionaries);
+    f.inform(loader);
+    try {
+      assertArrayEquals(new String[] { "sykkel" }, new DictionaryLemmatizer(f.getDictionary()).lemmatize("sykler"));
+      return f.getLoadReport().getBackend();
+    } finally {
+      // the last reference, the next factory loads the dictionary again
+      f.release();
+    }
+  }
+
+  private static DictionaryLemmatizerFilterFactory newFactory(final Path store) {
+    return newFactory(store, "no.txt");
+  }
+
+  private static DictionaryLemmatizerFilterFactory newFactory(final Path store, final String dictionaries) {
+    Map<String, String> args = new HashMap<String, String>();
+    args.put("dictionaries", dictionaries);
+    args.put("lemmaPos", "0");
+    args.put("wordPos", "1");
+    args.put("persistent", "true");
+    args.put("persistDir", store.toString());
+    return new DictionaryLemmatizerFilterFactory(args);
+  }
+
+  /** Opens files, counting the resources opened. */
+  private static final class CountingResourceLoader implements ResourceLoader {
+    private final ResourceLoader delegate = new ClasspathResourceLoader();
+    private int opened;
+
+    @Override
+    public InputStream openResource(final String resource) throws IOException {
+      opened++;
+      return Files.newInputStream(Paths.get(resource));
+    }
+
+    @Override
+    public <T> Class<? extends T> findClass(final String cname, final Class<T> expectedType) {
+      return delegate.findClass(cname, expectedType);
+    }
+
+    @Override
+    public <T> T newInstance(final String cname, final Class<T> expectedType) {
+      return delegate.newInstance(cname, expectedType);
+    }
+  }
+
+}
@@ -0,0 +1,111 @@
+package org.apache.lucene.analysis.lemmatizer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.BaseTokenStreamTestCase;
+import org.apache.lucene.analysis.MockTokenizer;
+import org.apache.lucene.analysis.Tokenizer;
+
+public class TestReverseLemmaIndex extends BaseTokenStreamTestCase {
+
+  private static final String DICTIONARY = "sykkel\tsykler\nsykle\tsykler\nsykkel\tsyklene\nsykkel\tsykkelen\n"
+      + "sykle\tsyklet\nsykle\tsykle\n";
+
+  public void testExpand() throws IOException {
+    for (LemmaDictionary dictionary : dictionaries(WordFolding.NONE)) {
+      final ReverseLemmaIndex.Expander expander = dictionary.getReverseIndex().newExpander();
+      // forms of both lemmas, the word itself excluded
+      assertEquals(asSet("sykkel", "syklene", "sykkelen", "sykle", "syklet"), expand(dictionary, expander,
+          "sykler"));
+      // lemmas are found although they are not words of the dictionary
+      assertEquals(asSet("sykler", "syklene", "sykkelen"), expand(dictionary, expander, "sykkel"));
+      assertEquals(asSet("sykler", "syklet"), expand(dictionary, expander, "sykle"));
+      assertEquals(Collections.emptySet(), expand(dictionary, expander, "bil"));
+    }
+  }
+
+  public void testFoldedForms() throws IOException {
+    for (LemmaDictionary dictionary : dictionaries(WordFolding.of(true, false))) {
+      final ReverseLemmaIndex.Expander expander = dictionary.getReverseIndex().newExpander();
+      assertEquals(asSet("sykkel", "sykler", "syklene", "sykkelen"), expand(dictionary, expander, "SYKKEL"));
+    }
+  }
+
+  public void testOverlay() throws IOException {
+    final Map<String, String[]> entries = new HashMap<String, String[]>();
+    entries.put("sykler", new String[] { "sykle" });
+    entries.put("syklene", new String[0]);
+    entries.put("sykkelsete", new String[] { "sykkel" });
+    final LemmaDictionary dictionary = new OverlayLemmaDictionary(dictionaries(WordFolding.NONE)[0], entries);
+    final ReverseLemmaIndex.Expander expander = dictionary.getReverseIndex().newExpander();
+    assertEquals(asSet("sykkelen", "sykkelsete"), expand(dictionary, expander, "sykkel"));
+    assertEquals(asSet("sykle", "syklet"), expand(dictionary, expander, "sykler"));
+  }
+
+  public void testFilter() throws IOException {
+    final LemmaDictionary dictionary = dictionaries(WordFolding.NONE)[0];
+    Analyzer a = new Analyzer() {
+      @Override
+      protected TokenStreamComponents createComponents(final String fieldName) {
+        Tokenizer source = new MockTokenizer(MockTokenizer.WHITESPACE, false);
+        return new TokenStreamComponents(source, new LemmaExpansionFilter(source, dictionary));
+      }
+    };
+    // the word first, then the other forms at its position
+    assertAnalyzesTo(a, "bil syklet", new String[] { "bil", "syklet", "sykle", "sykler" }, new int[] { 1, 1, 0,
+        0 });
+  }
+
+  /** Returns the dictionary on heap and flat. */
+  private static LemmaDictionary[] dictionaries(final WordFolding folding) throws IOException {
+    return new LemmaDictionary[] { newBuilder(folding).buildHeap(), newBuilder(folding).buildDirect() };
+  }
+
+  private static LemmaDictionaryBuilder newBuilder(final WordFolding folding) throws IOException {
+    final LemmaDictionaryBuilder builder = new LemmaDictionaryBuilder(0, 1, -1, null, "UTF-8", null, 3, false,
+        folding);
+    builder.add("dictionary.txt", new ByteArrayInputStream(DICTIONARY.getBytes(StandardCharsets.UTF_8)));
+    return builder;
+  }
+
+  private static Set<String> expand(final LemmaDictionary dictionary, final ReverseLemmaIndex.Expander expander,
+      final String word) {
+    final int count = expander.expand(word.toCharArray(), 0, word.length());
+    final Set<String> forms = new HashSet<String>();
+    for (int i = 0; i < count; i++) {
+      assertTrue(forms.add(dictionary.getReverseIndex().form(expander.formIds()[i])));
+    }
+    return forms;
+  }
+
+  private static Set<String> asSet(final String... forms) {
+    return new HashSet<String>(Arrays.asList(forms));
+  }
+
+}
@@ -0,0 +1,221 @@
+package org.apache.lucene.analysis.lemmatizer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.util.BaseTokenStreamFactoryTestCase;
+import org.apache.lucene.analysis.util.ClasspathResourceLoader;
+import org.apache.lucene.analysis.util.FilesystemResourceLoader;
+
+public class TestShardedLemmaDictionary extends BaseTokenStreamFactoryTestCase {
+
+  private static final String[] WORDS = { "sykler", "sykkelen", "syklet", "fragen", "fragte", "fragt", "bücher",
+      "eldre", "tables" };
+
+  public void testSameLemmas() throws Exception {
+    final LemmaDictionary heap = newBuilder(0).buildHeap();
+    for (int shardCount : new int[] { 1, 3, 16 }) {
+      final ShardedLemmaDictionary sharded = open(newBuilder(0).buildSharded("dictionary.lemshards", shardCount,
+          new HashMap<String, String>()), 0);
+      assertEquals(shardCount, sharded.shardCount());
+      final DictionaryLemmatizer expected = new DictionaryLemmatizer(heap);
+      final DictionaryLemmatizer actual = new DictionaryLemmatizer(sharded);
+      for (String word : WORDS) {
+        assertArrayEquals(expected.lemmatize(word), actual.lemmatize(word));
+      }
+      assertEquals(words(heap), words(sharded));
+    }
+  }
+
+  public void testColdShards() throws Exception {
+    final ShardedLemmaDictionary sharded = open(newBuilder(10).buildSharded("dictionary.lemshards", 4,
+        new HashMap<String, String>()), 0);
+    final DictionaryLemmatizer lemmatizer = new DictionaryLemmatizer(sharded);
+    // rejected by the filter of the manifest, no shard is loaded
+    assertNull(lemmatizer.lemmatize("no"));
+    assertNull(lemmatizer.lemmatize("a-word-longer-than-any-word-of-the-dictionary"));
+    assertEquals(0, sharded.loadedShardCount());
+    assertArrayEquals(new String[] { "buch" }, lemmatizer.lemmatize("bücher"));
+    assertEquals(1, sharded.loadedShardCount());
+    assertEquals(1, sharded.getShardLoads());
+  }
+
+  public void testEviction() throws Exception {
+    // a budget of a byte keeps the last loaded shard only
+    final ShardedLemmaDictionary sharded = open(newBuilder(0).buildSharded("dictionary.lemshards", 8,
+        new HashMap<String, String>()), 1);
+    final DictionaryLemmatizer lemmatizer = new DictionaryLemmatizer(sharded);
+    final DictionaryLemmatizer expected = new DictionaryLemmatizer(newBuilder(0).buildHeap());
+    for (int i = 0; i < 3; i++) {
+      for (String word : WORDS) {
+        assertArrayEquals(expected.lemmatize(word), lemmatizer.lemmatize(word));
+        assertTrue(sharded.loadedShardCount() <= 1);
+      }
+    }
+    assertTrue(sharded.getShardEvictions() > 0);
+    assertEquals(sharded.getShardLoads() - sharded.getShardEvictions(), sharded.loadedShardCount());
+  }
+
+  public void testLoadsOfOtherShardsGoOn() throws Exception {
+    final Map<String, ByteBuffer> files = newBuilder(0).buildSharded("dictionary.lemshards", 16,
+        new HashMap<String, String>());
+    final CountDownLatch loading = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicBoolean first = new AtomicBoolean(true);
+    final ShardedLemmaDictionary sharded = ShardedLemmaDictionary.open(files.get("dictionary.lemshards"), name -> {
+      if (first.getAndSet(false)) {
+        loading.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          throw new IOException(e);
+        }
+      }
+      return FlatLemmaDictionary.open(files.get(name).duplicate());
+    }, 0);
+    final Thread slow = new Thread(() -> new DictionaryLemmatizer(sharded).lemmatize("sykler"));
+    slow.start();
+    try {
+      loading.await();
+      // a word of another shard is looked up while the first one is read
+      final Thread other = new Thread(() -> assertArrayEquals(new String[] { "buch" }, new DictionaryLemmatizer(
+          sharded).lemmatize("bücher")));
+      assertTrue(shard("sykler") != shard("bücher"));
+      other.start();
+      other.join(10000);
+      assertFalse(other.isAlive());
+      assertEquals(1, sharded.loadedShardCount());
+    } finally {
+      release.countDown();
+      slow.join();
+    }
+    assertEquals(2, sharded.loadedShardCount());
+  }
+
+  public void testShardLoadFailure() throws Exception {
+    final ShardedLemmaDictionary sharded = ShardedLemmaDictionary.open(newBuilder(0).buildSharded(
+        "dictionary.lemshards", 4, new HashMap<String, String>()).get("dictionary.lemshards"), name -> {
+          throw new IOException("Unreadable shard " + name);
+        }, 0);
+    final TokenStream stream = new DictionaryLemmatizerFilter(whitespaceMockTokenizer(new StringReader("sykler")),
+        new DictionaryLemmatizerFilter.Language(new DictionaryHolder(sharded), null, null, null, null), null,
+        PosTagFormat.SUFFIX, null);
+    stream.reset();
+    try {
+      stream.incrementToken();
+      fail();
+    } catch (IOException expected) {
+      // thrown as it is by the filter, not wrapped in an unchecked exception
+      assertTrue(expected.getMessage().contains("Unreadable shard"));
+    } finally {
+      stream.close();
+    }
+  }
+
+  public void testShardedDictionary() throws Exception {
+    final Path dir = createTempDir();
+    final LemmaDictionaryBuilder builder = newBuilder(0);
+    for (Map.Entry<String, ByteBuffer> file : builder.buildSharded("dictionary.lemshards", 4, builder.metadata())
+        .entrySet()) {
+      Files.write(dir.resolve(file.getKey()), toBytes(file.getValue()));
+    }
+
+    Map<String, String> args = new HashMap<String, String>();
+    args.put("dictionaries", "dictionary.lemshards");
+    args.put("maxShardMemoryMB", "1");
+    DictionaryLemmatizerFilterFactory f = new DictionaryLemmatizerFilterFactory(args);
+    f.inform(new FilesystemResourceLoader(dir, new ClasspathResourceLoader()));
+    try {
+      assertTrue(f.getDictionary() instanceof ShardedLemmaDictionary);
+      TokenStream stream = f.create(whitespaceMockTokenizer(new StringReader("sykler bücher tables")));
+      assertTokenStreamContents(stream, new String[] { "sykle", "sykkel", "buch", "tables" }, new int[] { 1, 0, 1,
+          1 });
+    } finally {
+      f.release();
+    }
+  }
+
+  public void testMaxShardMemoryRequiresShards() throws Exception {
+    try {
+      Map<String, String> args = new HashMap<String, String>();
+      args.put("dictionaries", "dictionary.lemdict");
+      args.put("maxShardMemoryMB", "64");
+      new DictionaryLemmatizerFilterFactory(args);
+      fail();
+    } catch (IllegalArgumentException expected) {
+      assertTrue(expected.getMessage().contains("sharded"));
+    }
+  }
+
+  private static int shard(final String word) {
+    return ShardedLemmaDictionary.shard(word.toCharArray(), 0, word.length(), 16);
+  }
+
+  /** Opens a sharded dictionary from the built files, held in memory. */
+  private static ShardedLemmaDictionary open(final Map<String, ByteBuffer> files, final long maxBytes)
+      throws IOException {
+    return ShardedLemmaDictionary.open(files.get("dictionary.lemshards"), name -> FlatLemmaDictionary.open(files
+        .get(name).duplicate()), maxBytes);
+  }
+
+  private static LemmaDictionaryBuilder newBuilder(final int bloomFilterBits) throws IOException {
+    final LemmaDictionaryBuilder builder = new LemmaDictionaryBuilder(0, 1, -1, null, "UTF-8", null, 3, false);
+    builder.setBloomFilterBits(bloomFilterBits);
+    try (InputStream inputStream = new ClasspathResourceLoader().openResource("dictionary.txt")) {
+      builder.add("dictionary.txt", inputStream);
+    }
+    return builder;
+  }
+
+  /** Returns the words of a dictionary with their lemmas. */
+  private static Set<String> words(final LemmaDictionary dictionary) {
+    final Set<String> words = new HashSet<String>();
+    dictionary.visitWords(new LemmaDictionary.WordVisitor() {
+      @Override
+      public void word(final char[] buffer, final int offset, final int length, final int[] lemmaIds,
+          final int count) {
+        final StringBuilder word = new StringBuilder().append(buffer, offset, length);
+        for (int i = 0; i < count; i++) {
+          word.append('\t').append(dictionary.lemma(lemmaIds[i]));
+        }
+        words.add(word.toString());
+      }
+    });
+    return words;
+  }
+
+  private static byte[] toBytes(final ByteBuffer buffer) {
+    final byte[] bytes = new byte[buffer.remaining()];
+    buffer.get(bytes);
+    return bytes;
+  }
+
+}
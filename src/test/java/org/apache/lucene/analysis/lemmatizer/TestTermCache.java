@@ -0,0 +1,54 @@
+package org.apache.lucene.analysis.lemmatizer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestTermCache extends LuceneTestCase {
+
+  public void testGetAndPut() {
+    final TermCache<String> cache = new TermCache<String>(16);
+    final char[] buffer = "xxtablesxx".toCharArray();
+    assertNull(cache.get(buffer, 2, 6));
+    cache.put("tables".toCharArray(), "tabl");
+    assertEquals("tabl", cache.get(buffer, 2, 6));
+    assertNull(cache.get(buffer, 2, 5));
+    assertEquals(1, cache.hits());
+    assertEquals(2, cache.misses());
+    assertEquals(1 / 3d, cache.hitRatio(), 1e-9);
+  }
+
+  public void testBounded() {
+    final TermCache<String> cache = new TermCache<String>(100);
+    assertEquals(128, cache.capacity());
+    for (int i = 0; i < 10000; i++) {
+      cache.put(Integer.toString(i).toCharArray(), Integer.toString(i));
+    }
+    int cached = 0;
+    for (int i = 0; i < 10000; i++) {
+      final char[] term = Integer.toString(i).toCharArray();
+      final String value = cache.get(term, 0, term.length);
+      if (value != null) {
+        assertEquals(Integer.toString(i), value);
+        cached++;
+      }
+    }
+    assertTrue(cached <= cache.capacity());
+  }
+
+}
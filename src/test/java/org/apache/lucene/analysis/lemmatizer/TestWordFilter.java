@@ -0,0 +1,94 @@
+package org.apache.lucene.analysis.lemmatizer;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestWordFilter extends LuceneTestCase {
+
+  public void testLengthRange() throws IOException {
+    final LemmaDictionary dictionary = newBuilder(0, 100).buildHeap();
+    final WordFilter filter = dictionary.getWordFilter();
+    assertEquals("word0er".length(), filter.getMinLength());
+    assertEquals("word99er".length(), filter.getMaxLength());
+    assertFalse(mayContain(filter, "word"));
+    assertFalse(mayContain(filter, "word1000er"));
+    // without a Bloom filter, any word of the range gets through
+    assertTrue(mayContain(filter, "missing"));
+    assertEquals(0, filter.ramBytesUsed());
+  }
+
+  public void testBloomFilter() throws IOException {
+    final int words = 10000;
+    for (LemmaDictionary dictionary : new LemmaDictionary[] { newBuilder(10, words).buildHeap(), newBuilder(10,
+        words).buildDirect() }) {
+      final WordFilter filter = dictionary.getWordFilter();
+      for (int i = 0; i < words; i++) {
+        assertTrue(mayContain(filter, "word" + i + "er"));
+      }
+      int falsePositives = 0;
+      for (int i = words; i < 2 * words; i++) {
+        if (mayContain(filter, "word" + i + "er")) {
+          falsePositives++;
+        }
+      }
+      // about 1% expected
+      assertTrue("false positives: " + falsePositives, falsePositives < words / 20);
+      // rejected words are not looked up, they are missing
+      assertNull(new DictionaryLemmatizer(dictionary).lemmatize("word" + (2 * words) + "er"));
+      assertArrayEquals(new String[] { "l7" }, new DictionaryLemmatizer(dictionary).lemmatize("word7er"));
+    }
+  }
+
+  public void testOverlay() throws IOException {
+    final LemmaDictionary base = newBuilder(10, 100).buildHeap();
+    final Map<String, String[]> entries = new HashMap<String, String[]>();
+    entries.put("overlaid", new String[] { "overlay" });
+    entries.put("wordiestwordever", new String[] { "word" });
+    final LemmaDictionary overlay = new OverlayLemmaDictionary(base, entries);
+    final WordFilter filter = overlay.getWordFilter();
+    assertTrue(mayContain(filter, "overlaid"));
+    assertTrue(mayContain(filter, "wordiestwordever"));
+    assertTrue(mayContain(filter, "word42er"));
+    assertEquals("wordiestwordever".length(), filter.getMaxLength());
+    // the base is left as it is
+    assertEquals("word99er".length(), base.getWordFilter().getMaxLength());
+  }
+
+  private static LemmaDictionaryBuilder newBuilder(final int bloomFilterBits, final int words) throws IOException {
+    final StringBuilder dictionary = new StringBuilder();
+    for (int i = 0; i < words; i++) {
+      dictionary.append('l').append(i).append("\tword").append(i).append("er\n");
+    }
+    final LemmaDictionaryBuilder builder = new LemmaDictionaryBuilder(0, 1, -1, null, "UTF-8", null, 3, false);
+    builder.setBloomFilterBits(bloomFilterBits);
+    builder.add("dictionary.txt", new ByteArrayInputStream(dictionary.toString().getBytes(StandardCharsets.UTF_8)));
+    return builder;
+  }
+
+  private static boolean mayContain(final WordFilter filter, final String word) {
+    return filter.mayContain(word.toCharArray(), 0, word.length());
+  }
+
+}